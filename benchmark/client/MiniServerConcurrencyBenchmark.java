@@ -0,0 +1,108 @@
+package client;
+
+import interfaces.Codec;
+import messages.WireFormat;
+import storage.User;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Starts a MiniServer in each threading mode and connects a growing number of concurrent downloaders to it.
+// Every downloader keeps its connection open, downloads a small file a few times with a pause in between
+// (the way a peer is idle between pieces) and records how long each request waited for its answer.
+// Run with: java -cp <classes> client.MiniServerConcurrencyBenchmark [maxDownloaders] [thinkMillis]
+public class MiniServerConcurrencyBenchmark {
+    private static final String HOST = "localhost";
+    private static final int BASE_PORT = 7920;
+    private static final int REQUESTS_PER_DOWNLOADER = 3;
+    private static final int FILE_SIZE = 64 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        int maxDownloaders = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long thinkMillis = args.length > 1 ? Long.parseLong(args[1]) : 100;
+        Codec codec = WireFormat.BINARY.codec();
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Path directory = Files.createTempDirectory("concurrency-benchmark");
+        byte[] content = new byte[FILE_SIZE];
+        ThreadLocalRandom.current().nextBytes(content);
+        Path source = Files.write(directory.resolve("source.bin"), content);
+
+        console.printf("%-8s %12s %10s %12s %12s %12s%n", "mode", "downloaders", "failed", "wall ms", "p50 ms", "p99 ms");
+        int port = BASE_PORT;
+        for (MiniServer.ThreadingMode mode : MiniServer.ThreadingMode.values()) {
+            for (int downloaders = 10; downloaders <= maxDownloaders; downloaders *= 10) {
+                MiniServer server = new MiniServer(HOST, port, codec, mode, Integer.MAX_VALUE);
+                server.sharedFiles().share(List.of(source.toString()));
+                Thread serverThread = new Thread(server);
+                serverThread.start();
+                Thread.sleep(200);
+                run(console, mode, new User("benchmark", HOST, port), codec, downloaders, thinkMillis, source, directory);
+                server.stop();
+                serverThread.join();
+                port++;
+            }
+        }
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static void run(PrintStream console, MiniServer.ThreadingMode mode, User peer, Codec codec, int downloaders,
+                            long thinkMillis, Path source, Path directory) throws Exception {
+        long[] latencies = new long[downloaders * REQUESTS_PER_DOWNLOADER];
+        AtomicInteger recorded = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < downloaders; i++) {
+                Path destination = directory.resolve("destination-" + i);
+                futures.add(clients.submit(() -> {
+                    try (PeerConnection connection = new PeerConnection(peer.getHost(), peer.getPort(), codec)) {
+                        for (int request = 0; request < REQUESTS_PER_DOWNLOADER; request++) {
+                            long requestStart = System.nanoTime();
+                            connection.download(peer, source.toString(), destination.toString());
+                            latencies[recorded.getAndIncrement()] = System.nanoTime() - requestStart;
+                            Thread.sleep(thinkMillis);
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        failed.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        long wall = System.nanoTime() - start;
+
+        long[] measured = Arrays.copyOf(latencies, recorded.get());
+        Arrays.sort(measured);
+        console.printf("%-8s %12d %10d %12.1f %12.2f %12.2f%n", mode, downloaders, failed.get(), wall / 1e6,
+                percentile(measured, 0.50) / 1e6, percentile(measured, 0.99) / 1e6);
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,59 @@
+package client;
+
+import interfaces.UserInterface;
+import messages.ResponseStatus;
+import messages.WireFormat;
+import storage.User;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+// Downloads/sec of many small files from one peer, with a new connection per download and with pooled
+// keep-alive connections.
+// Run with: java -cp <classes> client.PeerConnectionPoolBenchmark [downloads] [fileSize]
+public class PeerConnectionPoolBenchmark {
+    private static final UserInterface PEER = new User("peer", "localhost", 7940);
+
+    public static void main(String[] args) throws Exception {
+        int downloads = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int fileSize = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+
+        Path directory = Files.createTempDirectory("pool-benchmark");
+        byte[] content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+        String source = Files.write(directory.resolve("source.bin"), content).toString();
+
+        MiniServer peer = new MiniServer(PEER.getHost(), PEER.getPort(), WireFormat.BINARY.codec());
+        peer.sharedFiles().share(List.of(source));
+        Thread server = new Thread(peer);
+        server.setDaemon(true);
+        server.start();
+        Thread.sleep(200);
+        Path destination = directory.resolve("destination.bin");
+
+        SwarmDownloader cold = new SwarmDownloader(WireFormat.BINARY.codec(), SwarmDownloader.DEFAULT_PIECE_SIZE);
+        try (PeerConnectionPool pool = new PeerConnectionPool(WireFormat.BINARY.codec())) {
+            SwarmDownloader pooled = new SwarmDownloader(pool, SwarmDownloader.DEFAULT_PIECE_SIZE);
+            // warm-up of both paths
+            for (int round = 0; round < 2; round++) {
+                long coldNanos = time(cold, downloads, source, destination);
+                long pooledNanos = time(pooled, downloads, source, destination);
+                System.out.printf("new connections: %8.0f downloads/sec   pooled: %8.0f downloads/sec (%d opened, %d reused)%n",
+                        downloads / (coldNanos / 1e9), downloads / (pooledNanos / 1e9),
+                        pool.createdConnections(), pool.reusedConnections());
+            }
+        }
+    }
+
+    private static long time(SwarmDownloader downloader, int downloads, String source, Path destination) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < downloads; i++) {
+            if (downloader.download(List.of(PEER), source, destination).status() != ResponseStatus.OK) {
+                throw new IllegalStateException("Download " + i + " failed");
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,65 @@
+package client;
+
+import command.Command;
+import command.CommandCreator;
+import interfaces.Codec;
+import messages.WireFormat;
+import server.Server;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+// Commands/sec of one tracker connection sending the same commands one at a time and as pipelined batches.
+// Run with: java -cp <classes> client.PipeliningBenchmark [commands] [batchSize]
+public class PipeliningBenchmark {
+    private static final InetSocketAddress TRACKER = new InetSocketAddress("localhost", 7930);
+    private static final Codec CODEC = WireFormat.BINARY.codec();
+
+    public static void main(String[] args) throws Exception {
+        int commandsCount = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        Server server = new Server(TRACKER.getPort(), 1, CODEC);
+        Thread serverThread = new Thread(server::start, "acceptor");
+        serverThread.start();
+        Thread.sleep(200);
+
+        List<Command> commands = new ArrayList<>(commandsCount);
+        for (int i = 0; i < commandsCount; i++) {
+            commands.add(i % 2 == 0
+                    ? CommandCreator.newCommand("register peer" + i % 500 + "-127.0.0.1:" + (20000 + i % 500) + " /home/peer/file" + i + ".txt")
+                    : CommandCreator.newCommand("who-has /home/peer/file" + (i - 1) + ".txt"));
+        }
+
+        try (TrackerConnection tracker = TrackerConnection.open(TRACKER, CODEC, events -> { })) {
+            // warm-up of both paths
+            for (int round = 0; round < 2; round++) {
+                long sequential = time(() -> {
+                    for (Command command : commands) {
+                        tracker.send(command);
+                    }
+                });
+                long pipelined = time(() -> {
+                    for (int from = 0; from < commands.size(); from += batchSize) {
+                        tracker.batch(commands.subList(from, Math.min(commands.size(), from + batchSize)));
+                    }
+                });
+                System.out.printf("one at a time: %10.0f commands/sec   batches of %d: %10.0f commands/sec%n",
+                        commandsCount / (sequential / 1e9), batchSize, commandsCount / (pipelined / 1e9));
+            }
+        }
+        server.stop();
+        serverThread.join();
+    }
+
+    private interface Run {
+        void run() throws Exception;
+    }
+
+    private static long time(Run run) throws Exception {
+        long start = System.nanoTime();
+        run.run();
+        return System.nanoTime() - start;
+    }
+}
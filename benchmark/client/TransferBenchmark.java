@@ -0,0 +1,76 @@
+package client;
+
+import interfaces.Codec;
+import messages.Response;
+import messages.ResponseStatus;
+import messages.WireFormat;
+import storage.User;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Loopback MB/s of a MiniServer download for files from 1 KB up to maxSize (default 4 GB).
+// Run with: java -cp <classes> client.TransferBenchmark [maxSizeInMB] [repetitions]
+public class TransferBenchmark {
+    private static final String HOST = "localhost";
+    private static final int PORT = 7900;
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        long maxSize = (args.length > 0 ? Long.parseLong(args[0]) : 4096) * 1024 * 1024;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        Codec codec = WireFormat.BINARY.codec();
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        MiniServer server = new MiniServer(HOST, PORT, codec);
+        Thread serverThread = new Thread(server);
+        serverThread.start();
+        Thread.sleep(200);
+
+        Path directory = Files.createTempDirectory("transfer-benchmark");
+        User user = new User("benchmark", HOST, PORT);
+        console.printf("%15s %12s %10s%n", "size (bytes)", "best ms", "MB/s");
+        for (long size = 1024; size <= maxSize; size *= 4) {
+            Path source = createFile(directory.resolve("source-" + size), size);
+            server.sharedFiles().share(List.of(source.toString()));
+            Path destination = directory.resolve("destination-" + size);
+            long best = Long.MAX_VALUE;
+            try (PeerConnection peer = new PeerConnection(HOST, PORT, codec)) {
+                for (int i = 0; i < repetitions; i++) {
+                    long start = System.nanoTime();
+                    Response response = peer.download(user, source.toString(), destination.toString());
+                    best = Math.min(best, System.nanoTime() - start);
+                    if (response.status() != ResponseStatus.OK || Files.size(destination) != size) {
+                        throw new IllegalStateException("Transfer of " + size + " bytes failed: " + response);
+                    }
+                }
+            }
+            console.printf("%15d %12.3f %10.1f%n", size, best / 1e6, size / (best / 1e9) / (1024 * 1024));
+            Files.delete(source);
+            Files.delete(destination);
+        }
+        Files.delete(directory);
+        server.stop();
+    }
+
+    private static Path createFile(Path path, long size) throws IOException {
+        byte[] block = new byte[BLOCK_SIZE];
+        ThreadLocalRandom.current().nextBytes(block);
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            for (long written = 0; written < size; ) {
+                ByteBuffer chunk = ByteBuffer.wrap(block, 0, (int) Math.min(BLOCK_SIZE, size - written));
+                written += file.write(chunk);
+            }
+        }
+        return path;
+    }
+}
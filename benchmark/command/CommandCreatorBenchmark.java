@@ -0,0 +1,34 @@
+package command;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandCreatorBenchmark {
+    @Param({
+            "list-users",
+            "register Pesho123-127.0.0.1:2713 /home/pesho/music/song.mp3 /home/pesho/books/book.pdf",
+            "who-has \"/home/pesho/my movies/film.mkv\""
+    })
+    public String input;
+
+    @Benchmark
+    public Command newCommand() {
+        return CommandCreator.newCommand(input);
+    }
+}
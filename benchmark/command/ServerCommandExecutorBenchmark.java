@@ -0,0 +1,123 @@
+package command;
+
+import messages.Request;
+import messages.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import storage.FileStorage;
+import storage.SessionStorage;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+// One benchmark per command against a registry of registrySize users with 10 files each.
+// Mutating commands are measured in pairs that leave the registry as they found it.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ServerCommandExecutorBenchmark {
+    private static final int FILES_PER_USER = 10;
+
+    @Param({"1000", "100000"})
+    public int registrySize;
+
+    private ServerCommandExecutor executor;
+    private SocketChannel session;
+    private Command register;
+    private Command unregister;
+    private Command disconnect;
+    private Command listFilesPage;
+    private Command listFilesPrefix;
+    private Command listUsersPage;
+    private Command whoHasPath;
+    private Command whoHasName;
+    private Command listUsersSince;
+
+    @Setup
+    public void setUp() throws IOException {
+        executor = new ServerCommandExecutor(new FileStorage(), new SessionStorage());
+        for (int i = 0; i < registrySize; i++) {
+            executor.execute(new Request(null, CommandCreator.newCommand(registerLine("peer" + i, 2000 + i % 60000))));
+        }
+        // only used as the key of the benchmark's own session
+        session = SocketChannel.open();
+        register = CommandCreator.newCommand(registerLine("bench", 1999));
+        unregister = CommandCreator.newCommand(registerLine("bench", 1999).replaceFirst("register", "unregister"));
+        disconnect = CommandCreator.newCommand("disconnect");
+        listFilesPage = CommandCreator.newCommand("list-files limit=100 cursor=peer500-127.0.0.1:2500");
+        listFilesPrefix = CommandCreator.newCommand("list-files /home/peer42/ limit=100");
+        listUsersPage = CommandCreator.newCommand("list-users limit=100 cursor=peer500-127.0.0.1:2500");
+        whoHasPath = CommandCreator.newCommand("who-has /home/peer42/music/track3.mp3");
+        whoHasName = CommandCreator.newCommand("who-has track3.mp3");
+        listUsersSince = CommandCreator.newCommand("list-users-since " + (registrySize - 10));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        session.close();
+    }
+
+    private static String registerLine(String name, int port) {
+        StringBuilder line = new StringBuilder("register ").append(name).append("-127.0.0.1:").append(port);
+        for (int j = 0; j < FILES_PER_USER; j++) {
+            line.append(" /home/").append(name).append("/music/track").append(j).append(".mp3");
+        }
+        return line.toString();
+    }
+
+    @Benchmark
+    public Response registerThenUnregister() {
+        executor.execute(new Request(session, register));
+        return executor.execute(new Request(session, unregister));
+    }
+
+    @Benchmark
+    public Response registerThenDisconnect() {
+        executor.execute(new Request(session, register));
+        return executor.execute(new Request(session, disconnect));
+    }
+
+    @Benchmark
+    public Response listFilesPage() {
+        return executor.execute(new Request(null, listFilesPage));
+    }
+
+    @Benchmark
+    public Response listFilesPrefix() {
+        return executor.execute(new Request(null, listFilesPrefix));
+    }
+
+    @Benchmark
+    public Response listUsersPage() {
+        return executor.execute(new Request(null, listUsersPage));
+    }
+
+    @Benchmark
+    public Response whoHasPath() {
+        return executor.execute(new Request(null, whoHasPath));
+    }
+
+    @Benchmark
+    public Response whoHasName() {
+        return executor.execute(new Request(null, whoHasName));
+    }
+
+    @Benchmark
+    public Response listUsersSince() {
+        return executor.execute(new Request(null, listUsersSince));
+    }
+}
@@ -0,0 +1,79 @@
+package command;
+
+import messages.SerializationCodec;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Bytes allocated per parsed command line, read from the thread allocation counter of HotSpot.
+// Run with: java -cp <classes> command.TokenizerAllocationBenchmark [iterations]
+public class TokenizerAllocationBenchmark {
+    private static final String INPUT = "register Pesho123-127.0.0.1:2713 /home/pesho/music/song.mp3 "
+            + "\"/home/pesho/my movies/film.mkv\" /home/pesho/books/book.pdf";
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        byte[] utf8 = INPUT.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.wrap(utf8);
+        CommandTokenizer tokenizer = new CommandTokenizer();
+        SerializationCodec codec = new SerializationCodec();
+
+        System.out.printf("%-34s %12s %12s%n", "parser", "bytes/op", "ns/op");
+        run(threads, "char[] + StringBuilder (before)", iterations, () -> sink += legacyCommand(INPUT).arguments().length);
+        run(threads, "CommandCreator.newCommand", iterations, () -> sink += CommandCreator.newCommand(INPUT).arguments().length);
+        run(threads, "tokenizer views only", iterations, () -> {
+            tokenizer.reset(INPUT);
+            sink += tokenizer.view(tokenizer.argumentCount()).charAt(1);
+        });
+        run(threads, "text frame, String first (before)", iterations, () -> {
+            payload.rewind();
+            sink += legacyCommand(StandardCharsets.UTF_8.decode(payload).toString()).arguments().length;
+        });
+        run(threads, "text frame, tokenized in place", iterations, () -> {
+            payload.rewind();
+            sink += codec.decodeCommand(payload).arguments().length;
+        });
+        System.out.println(sink == 42 ? "" : "done");
+    }
+
+    private static void run(com.sun.management.ThreadMXBean threads, String name, int iterations, Runnable parse) {
+        for (int i = 0; i < iterations; i++) {
+            parse.run();
+        }
+        long threadId = Thread.currentThread().threadId();
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            parse.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+        System.out.printf("%-34s %12.1f %12.1f%n", name, (double) allocated / iterations, (double) elapsed / iterations);
+    }
+
+    // The parser CommandCreator used before the tokenizer
+    private static Command legacyCommand(String input) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean insideQuote = false;
+        for (char c : input.toCharArray()) {
+            if (c == '"') {
+                insideQuote = !insideQuote;
+            }
+            if (c == ' ' && !insideQuote) {
+                tokens.add(sb.toString().replace("\"", ""));
+                sb.delete(0, sb.length());
+            } else {
+                sb.append(c);
+            }
+        }
+        tokens.add(sb.toString().replace("\"", ""));
+        return new Command(tokens.get(0), tokens.subList(1, tokens.size()).toArray(new String[0]));
+    }
+}
@@ -0,0 +1,29 @@
+package jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the JMH benchmarks with the GC profiler (allocation rate and bytes/op next to every score) and
+// writes the results as JSON, so two runs can be compared with any JMH result viewer.
+// Needs jmh-core on the classpath and jmh-generator-annprocess as annotation processor when compiling:
+//   javac -cp <classes>:jmh-core.jar -processorpath jmh-generator-annprocess.jar:jmh-core.jar -d <bench> <sources>
+//   java -cp <classes>:<bench>:jmh-core.jar:<jmh dependencies> jmh.TrackerBenchmarks [regex] [result.json]
+public class TrackerBenchmarks {
+    private static final String ALL = "(command|storage|utils|messages)\\..*Benchmark";
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : ALL;
+        String result = args.length > 1 ? args[1] : "jmh-result.json";
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,99 @@
+package messages;
+
+import command.Command;
+import command.CommandCreator;
+import interfaces.Codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// Compares the wire formats: bytes per frame and encode/decode ns/op.
+// Run with: java -cp <classes> messages.CodecBenchmark [iterations]
+public class CodecBenchmark {
+    private static final int WARMUP_ITERATIONS = 200_000;
+
+    private static long sink;
+
+    private static Response largeListing() {
+        StringBuilder listing = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            listing.append("Peer").append(i).append("-127.0.0.1:").append(2000 + i)
+                    .append(" : [/home/peer").append(i).append("/music/track.mp3]").append(System.lineSeparator());
+        }
+        return new Response(ResponseStatus.OK, listing.toString());
+    }
+
+    public static void main(String[] args) throws IOException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        List<Response> responses = List.of(
+                new Response(ResponseStatus.OK, "OK"),
+                new Response(ResponseStatus.OK, "Files are successfully registered for downloading for user: Pesho123-127.0.0.1:2713"),
+                largeListing());
+        Command command = CommandCreator.newCommand("register Pesho123-127.0.0.1:2713 /home/hmmm/hi.txt /home/hmmm/hello.txt");
+
+        System.out.printf("%-14s %-10s %10s %14s %14s%n", "format", "message", "bytes", "encode ns/op", "decode ns/op");
+        for (WireFormat format : WireFormat.values()) {
+            Codec codec = format.codec();
+            for (int i = 0; i < responses.size(); i++) {
+                Response response = responses.get(i);
+                int messageIterations = i == responses.size() - 1 ? iterations / 100 : iterations;
+                report(format, "response#" + i, codec.encode(response).remaining(),
+                        measureEncode(codec, response, messageIterations), measureDecode(codec, response, messageIterations));
+            }
+            report(format, "command", codec.encode(command).remaining(),
+                    measureEncode(codec, command, iterations), measureDecode(codec, command, iterations));
+        }
+        System.out.println(sink == 42 ? "" : "done");
+    }
+
+    private static void report(WireFormat format, String message, int bytes, double encodeNs, double decodeNs) {
+        System.out.printf("%-14s %-10s %10d %14.1f %14.1f%n", format, message, bytes, encodeNs, decodeNs);
+    }
+
+    private static double measureEncode(Codec codec, Response response, int iterations) {
+        for (int i = 0; i < WARMUP_ITERATIONS / 10; i++) {
+            sink += codec.encode(response).remaining();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += codec.encode(response).remaining();
+        }
+        return (System.nanoTime() - start) / (double) iterations;
+    }
+
+    private static double measureEncode(Codec codec, Command command, int iterations) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += codec.encode(command).remaining();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += codec.encode(command).remaining();
+        }
+        return (System.nanoTime() - start) / (double) iterations;
+    }
+
+    private static double measureDecode(Codec codec, Response response, int iterations) throws IOException {
+        ByteBuffer payload = codec.encode(response).position(Frames.HEADER_SIZE).slice();
+        for (int i = 0; i < WARMUP_ITERATIONS / 10; i++) {
+            sink += codec.decodeResponse(payload.duplicate()).message().length();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += codec.decodeResponse(payload.duplicate()).message().length();
+        }
+        return (System.nanoTime() - start) / (double) iterations;
+    }
+
+    private static double measureDecode(Codec codec, Command command, int iterations) throws IOException {
+        ByteBuffer payload = codec.encode(command).position(Frames.HEADER_SIZE).slice();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += codec.decodeCommand(payload.duplicate()).arguments().length;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += codec.decodeCommand(payload.duplicate()).arguments().length;
+        }
+        return (System.nanoTime() - start) / (double) iterations;
+    }
+}
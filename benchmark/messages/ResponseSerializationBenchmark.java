@@ -0,0 +1,64 @@
+package messages;
+
+import interfaces.Codec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Response frames through both wire formats, a short status line and a 200 line listing.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseSerializationBenchmark {
+    @Param({"BINARY", "SERIALIZATION"})
+    public WireFormat format;
+
+    @Param({"1", "200"})
+    public int lines;
+
+    private Codec codec;
+    private Response response;
+    private ByteBuffer frame;
+
+    @Setup
+    public void setUp() {
+        codec = format.codec();
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            if (i > 0) {
+                message.append(System.lineSeparator());
+            }
+            message.append("Peer").append(i).append("-127.0.0.1:").append(2000 + i)
+                    .append(" : [/home/peer").append(i).append("/music/track.mp3]");
+        }
+        response = new Response(ResponseStatus.OK, message.toString());
+        frame = codec.encode(response);
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        return codec.encode(response);
+    }
+
+    @Benchmark
+    public Response decode() throws IOException {
+        ByteBuffer payload = frame.duplicate();
+        payload.position(Frames.HEADER_SIZE);
+        return codec.decodeResponse(payload);
+    }
+}
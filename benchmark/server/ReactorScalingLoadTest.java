@@ -0,0 +1,93 @@
+package server;
+
+import command.CommandCreator;
+import interfaces.Codec;
+import messages.Frames;
+import messages.WireFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+// Measures commands/sec of a local Server while the number of reactors grows from 1 to N.
+// Run with: java -cp <classes> server.ReactorScalingLoadTest [maxReactors] [clients] [seconds]
+public class ReactorScalingLoadTest {
+    private static final int BASE_PORT = 7800;
+    private static final Codec CODEC = WireFormat.BINARY.codec();
+
+    public static void main(String[] args) throws Exception {
+        int maxReactors = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        PrintStream console = System.out;
+        // the server logs every command, which would measure the console instead of the reactors
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        console.printf("%-10s %-10s %15s%n", "reactors", "clients", "commands/sec");
+        for (int reactors = 1; reactors <= maxReactors; reactors = nextStep(reactors, maxReactors)) {
+            double throughput = run(BASE_PORT + reactors, reactors, clients, seconds);
+            console.printf("%-10d %-10d %15.0f%n", reactors, clients, throughput);
+        }
+    }
+
+    private static int nextStep(int reactors, int maxReactors) {
+        if (reactors == maxReactors) {
+            return maxReactors + 1;
+        }
+        return Math.min(reactors * 2, maxReactors);
+    }
+
+    private static double run(int port, int reactors, int clients, int seconds) throws Exception {
+        Server server = new Server(port, reactors, CODEC);
+        Thread serverThread = new Thread(server::start, "acceptor");
+        serverThread.start();
+        Thread.sleep(200);
+
+        LongAdder completed = new LongAdder();
+        CountDownLatch ready = new CountDownLatch(clients);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            int clientId = i;
+            Thread worker = new Thread(() -> drive(port, clientId, deadline, ready, completed));
+            workers.add(worker);
+            worker.start();
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        server.stop();
+        serverThread.join();
+        return completed.sum() / elapsedSeconds;
+    }
+
+    private static void drive(int port, int clientId, long deadline, CountDownLatch ready, LongAdder completed) {
+        String user = "peer" + clientId + "-127.0.0.1:" + (20000 + clientId);
+        ByteBuffer register = CODEC.encode(CommandCreator.newCommand("register " + user + " /home/peer" + clientId + "/file.txt"));
+        ByteBuffer listUsers = CODEC.encode(CommandCreator.newCommand("list-users"));
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", port))) {
+            ready.countDown();
+            ready.await();
+            long i = 0;
+            while (System.nanoTime() < deadline) {
+                ByteBuffer request = (i++ % 4 == 0 ? register : listUsers).duplicate();
+                Frames.write(channel, request);
+                Frames.read(channel);
+                completed.increment();
+            }
+        } catch (IOException | InterruptedException e) {
+            throw new RuntimeException("Load test client " + clientId + " failed", e);
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package server;
+
+import command.CommandCreator;
+import interfaces.Codec;
+import messages.Frames;
+import messages.Response;
+import messages.ResponseStatus;
+import messages.WireFormat;
+import metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+// Drives a tracker with thousands of simulated peers over loopback, one virtual thread and one blocking
+// SocketChannel per peer, each looping over a weighted mix of commands without think time unless asked.
+// Peers register a skewed number of files (most a few dozen, some thousands) under their own directories
+// plus popular shared paths, so the owner index sees both unique and widely owned files. disconnect ends
+// the session gracefully and reconnects, drop closes the socket without a word, which the server has to
+// notice on its own; once the run ends every peer drops and the registry should be empty again.
+// Reports throughput and p50/p99/p999 latency per command, plus the connection churn.
+// Run with: java -cp <classes> server.TrackerLoadGenerator [peers=2000] [seconds=30] [warmup=5]
+//           [mix=register:20,unregister:10,list-files:15,list-users:40,disconnect:10,drop:5]
+//           [files=40] [maxFiles=2000] [page=100] [think=0] [host=localhost] [port=7850]
+//           [embedded=true] [reactors=<cpus>]
+public class TrackerLoadGenerator {
+    private static final Codec CODEC = WireFormat.BINARY.codec();
+    private static final String DEFAULT_MIX = "register:20,unregister:10,list-files:15,list-users:40,disconnect:10,drop:5";
+    private static final String[] COMMANDS = {"register", "unregister", "list-files", "list-users", "disconnect", "drop"};
+    private static final String CONNECT = "connect";
+    private static final int SHARED_PATHS = 10_000;
+    // the server accept backlog is small, so connection bursts are limited to this many in flight
+    private static final int CONCURRENT_CONNECTS = 64;
+
+    private final Options options;
+    private final int[] weights = new int[COMMANDS.length];
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+    private final Map<String, LongAdder> errors = new HashMap<>();
+    private final Semaphore connects = new Semaphore(CONCURRENT_CONNECTS);
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder failedConnections = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+    private final LongAdder drops = new LongAdder();
+    private final LongAdder failedPeers = new LongAdder();
+    private volatile long measureFrom;
+    private volatile long deadline;
+
+    private TrackerLoadGenerator(Options options) {
+        this.options = options;
+        for (String entry : options.get("mix", DEFAULT_MIX).split(",")) {
+            String[] weight = entry.split(":");
+            int index = List.of(COMMANDS).indexOf(weight[0]);
+            if (weight.length != 2 || index < 0) {
+                throw new IllegalArgumentException("Mix entries are <command>:<weight> with commands " + List.of(COMMANDS));
+            }
+            weights[index] = Integer.parseInt(weight[1]);
+        }
+        latencies.put(CONNECT, new LatencyHistogram());
+        errors.put(CONNECT, new LongAdder());
+        for (String command : COMMANDS) {
+            latencies.put(command, new LatencyHistogram());
+            errors.put(command, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options(args);
+        boolean embedded = options.get("embedded", true);
+        String host = options.get("host", "localhost");
+        int port = options.get("port", 7850);
+
+        PrintStream console = System.out;
+        Server server = null;
+        Thread serverThread = null;
+        if (embedded) {
+            // the server logs every command, which would measure the console instead of the tracker
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            server = new Server(port, options.get("reactors", Runtime.getRuntime().availableProcessors()), CODEC);
+            serverThread = new Thread(server::start, "acceptor");
+            serverThread.start();
+            Thread.sleep(200);
+        }
+
+        try {
+            new TrackerLoadGenerator(options).run(new InetSocketAddress(host, port), console);
+            if (server != null) {
+                console.printf("%nserver stats:%n%s%n", server.metrics().dump());
+            }
+        } finally {
+            if (server != null) {
+                server.stop();
+                serverThread.join();
+            }
+        }
+    }
+
+    private void run(InetSocketAddress address, PrintStream console) throws Exception {
+        int peers = options.get("peers", 2000);
+        int seconds = options.get("seconds", 30);
+        int warmup = options.get("warmup", 5);
+        console.printf("%d peers against %s for %ds after %ds of warm-up%n", peers, address, seconds, warmup);
+
+        long start = System.nanoTime();
+        measureFrom = start + warmup * 1_000_000_000L;
+        deadline = measureFrom + seconds * 1_000_000_000L;
+        List<Thread> threads = new ArrayList<>(peers);
+        for (int i = 0; i < peers; i++) {
+            Peer peer = new Peer(i, address);
+            threads.add(Thread.ofVirtual().name("peer-" + i).start(peer::run));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - Math.max(start, measureFrom)) / 1e9;
+
+        report(console, elapsedSeconds);
+        // like the latencies, churn is only counted after the warm-up
+        console.printf("%nchurn: %d connections opened (%.0f/s), %d failed, %d graceful disconnects, %d drops, %d peers aborted%n",
+                connections.sum(), connections.sum() / elapsedSeconds, failedConnections.sum(),
+                disconnects.sum(), drops.sum(), failedPeers.sum());
+        console.printf("users still registered after every peer dropped: %d%n", remainingUsers(address));
+    }
+
+    private void report(PrintStream console, double elapsedSeconds) {
+        console.printf("%n%-12s %10s %10s %8s %10s %10s %10s %10s%n",
+                "command", "count", "ops/sec", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        LatencyHistogram total = new LatencyHistogram();
+        long totalErrors = 0;
+        for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            long commandErrors = errors.get(entry.getKey()).sum();
+            if (histogram.count() == 0 && commandErrors == 0) {
+                continue;
+            }
+            print(console, entry.getKey(), histogram, commandErrors, elapsedSeconds);
+            if (!entry.getKey().equals(CONNECT)) {
+                total.add(histogram);
+                totalErrors += commandErrors;
+            }
+        }
+        print(console, "all", total, totalErrors, elapsedSeconds);
+    }
+
+    private static void print(PrintStream console, String command, LatencyHistogram histogram, long errors, double elapsedSeconds) {
+        console.printf("%-12s %10d %10.0f %8d %10.3f %10.3f %10.3f %10.3f%n", command, histogram.count(),
+                histogram.count() / elapsedSeconds, errors, histogram.percentile(50) / 1e6,
+                histogram.percentile(99) / 1e6, histogram.percentile(99.9) / 1e6, histogram.max() / 1e6);
+    }
+
+    // Waits for the reactors to process the last drops, then counts the users left behind
+    private long remainingUsers(InetSocketAddress address) throws IOException, InterruptedException {
+        long remaining = -1;
+        for (int attempt = 0; attempt < 50 && remaining != 0; attempt++) {
+            Thread.sleep(100);
+            try (SocketChannel channel = SocketChannel.open(address)) {
+                Response response = send(channel, "list-users");
+                remaining = response.message().isEmpty() ? 0 : response.message().lines().count();
+            }
+        }
+        return remaining;
+    }
+
+    private static Response send(SocketChannel channel, String line) throws IOException {
+        Frames.write(channel, CODEC.encode(CommandCreator.newCommand(line)));
+        return CODEC.decodeResponse(Frames.read(channel));
+    }
+
+    private class Peer {
+        private final int id;
+        private final InetSocketAddress address;
+        private final String user;
+        private final SplittableRandom random;
+        private final List<String> files = new ArrayList<>();
+        private final int page;
+        private final int think;
+        private SocketChannel channel;
+        private int nextFile;
+
+        Peer(int id, InetSocketAddress address) {
+            this.id = id;
+            this.address = address;
+            this.user = "peer" + id + "-127.0.0.1:" + (20000 + id);
+            this.random = new SplittableRandom(id);
+            this.page = options.get("page", 100);
+            this.think = options.get("think", 0);
+        }
+
+        void run() {
+            try {
+                connect();
+                registerInitialFiles();
+                while (System.nanoTime() < deadline) {
+                    execute(pick());
+                    if (think > 0) {
+                        Thread.sleep((long) (-think * Math.log(1 - random.nextDouble())));
+                    }
+                }
+            } catch (IOException e) {
+                failedPeers.increment();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        private String pick() {
+            int total = 0;
+            for (int weight : weights) {
+                total += weight;
+            }
+            int choice = random.nextInt(total);
+            for (int i = 0; i < COMMANDS.length; i++) {
+                choice -= weights[i];
+                if (choice < 0) {
+                    return COMMANDS[i];
+                }
+            }
+            throw new IllegalStateException();
+        }
+
+        private void execute(String command) throws IOException, InterruptedException {
+            switch (command) {
+                case "register" -> request(command, registerLine(1 + random.nextInt(5)));
+                case "unregister" -> {
+                    if (files.isEmpty()) {
+                        request("register", registerLine(1 + random.nextInt(5)));
+                    } else {
+                        request(command, unregisterLine(1 + random.nextInt(Math.min(5, files.size()))));
+                    }
+                }
+                case "list-files" -> request(command, page > 0 ? "list-files limit=" + page : "list-files");
+                case "list-users" -> request(command, page > 0 ? "list-users limit=" + page : "list-users");
+                case "disconnect" -> {
+                    request(command, "disconnect");
+                    count(disconnects);
+                    reconnect();
+                }
+                case "drop" -> {
+                    long started = System.nanoTime();
+                    close();
+                    record(command, started, true);
+                    count(drops);
+                    reconnect();
+                }
+                default -> throw new IllegalArgumentException(command);
+            }
+        }
+
+        private void reconnect() throws IOException, InterruptedException {
+            close();
+            files.clear();
+            connect();
+            registerInitialFiles();
+        }
+
+        private void connect() throws IOException, InterruptedException {
+            connects.acquire();
+            long started = System.nanoTime();
+            try {
+                channel = SocketChannel.open(address);
+                count(connections);
+                record(CONNECT, started, true);
+            } catch (IOException e) {
+                count(failedConnections);
+                record(CONNECT, started, false);
+                throw e;
+            } finally {
+                connects.release();
+            }
+        }
+
+        private void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // the socket is gone either way
+                }
+                channel = null;
+            }
+        }
+
+        private void registerInitialFiles() throws IOException {
+            int mean = options.get("files", 40);
+            int max = options.get("maxFiles", 2000);
+            // exponentially distributed, so a few peers share far more than the rest
+            int count = (int) Math.min(max, Math.max(1, Math.round(-mean * Math.log(1 - random.nextDouble()))));
+            request("register", registerLine(count));
+        }
+
+        private void request(String command, String line) throws IOException {
+            long started = System.nanoTime();
+            Response response = send(channel, line);
+            record(command, started, response.status() == ResponseStatus.OK);
+        }
+
+        private void record(String command, long started, boolean ok) {
+            long finished = System.nanoTime();
+            if (started < measureFrom) {
+                return;
+            }
+            latencies.get(command).record(finished - started);
+            if (!ok) {
+                errors.get(command).increment();
+            }
+        }
+
+        private void count(LongAdder counter) {
+            if (System.nanoTime() >= measureFrom) {
+                counter.increment();
+            }
+        }
+
+        private String registerLine(int count) {
+            StringBuilder line = new StringBuilder("register ").append(user);
+            for (int i = 0; i < count; i++) {
+                String file = newFile();
+                files.add(file);
+                line.append(' ').append(file);
+            }
+            return line.toString();
+        }
+
+        private String unregisterLine(int count) {
+            StringBuilder line = new StringBuilder("unregister ").append(user);
+            for (int i = 0; i < count; i++) {
+                line.append(' ').append(files.remove(random.nextInt(files.size())));
+            }
+            return line.toString();
+        }
+
+        // Three in ten files are popular shared releases, skewed towards the low numbers
+        private String newFile() {
+            if (random.nextInt(10) < 3) {
+                int popularity = (int) (SHARED_PATHS * Math.pow(random.nextDouble(), 3));
+                return "/media/releases/release-" + popularity + ".iso";
+            }
+            int file = nextFile++;
+            return "/home/peer" + id + "/dir" + (file % 8) + "/file" + file + ".dat";
+        }
+    }
+
+    private static class Options {
+        private final Map<String, String> values = new HashMap<>();
+
+        Options(String[] args) {
+            for (String arg : args) {
+                int separator = arg.indexOf('=');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Arguments are <name>=<value>, got " + arg);
+                }
+                values.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+
+        String get(String name, String fallback) {
+            return values.getOrDefault(name, fallback);
+        }
+
+        int get(String name, int fallback) {
+            String value = values.get(name);
+            return value == null ? fallback : Integer.parseInt(value);
+        }
+
+        boolean get(String name, boolean fallback) {
+            String value = values.get(name);
+            return value == null ? fallback : Boolean.parseBoolean(value);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package storage;
+
+import interfaces.UserInterface;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FileStorageBenchmark {
+    private static final int FILES_PER_USER = 10;
+
+    @Param({"1000", "10000", "100000"})
+    public int registrySize;
+
+    private FileStorage storage;
+    private UserInterface user;
+    private UserInterface lookup;
+    private Set<String> added;
+
+    @Setup
+    public void setUp() {
+        storage = new FileStorage();
+        for (int i = 0; i < registrySize; i++) {
+            storage.addValues(new User("peer" + i, "127.0.0.1", 2000 + i % 60000), files("peer" + i));
+        }
+        user = new User("peer" + registrySize / 2, "127.0.0.1", 2000 + (registrySize / 2) % 60000);
+        // an equal instance, as built from a command, not the stored key
+        lookup = new User(user.getUsername(), user.getHost(), user.getPort());
+        added = Set.of("/home/bench/new/file.bin");
+    }
+
+    private static Set<String> files(String name) {
+        Set<String> files = new HashSet<>();
+        for (int j = 0; j < FILES_PER_USER; j++) {
+            files.add("/home/" + name + "/music/track" + j + ".mp3");
+        }
+        return files;
+    }
+
+    @Benchmark
+    public void addThenRemoveFile() {
+        storage.addValues(user, added);
+        storage.removeValues(user, added);
+    }
+
+    @Benchmark
+    public void listFiles(Blackhole blackhole) {
+        for (String file : storage.listValues(lookup)) {
+            blackhole.consume(file);
+        }
+    }
+
+    @Benchmark
+    public void listUsersPage(Blackhole blackhole) {
+        int count = 0;
+        for (UserInterface next : storage.getKeysAfter(lookup)) {
+            blackhole.consume(next);
+            if (++count == 100) {
+                break;
+            }
+        }
+    }
+
+    @Benchmark
+    public Set<String> removeThenAddUser() {
+        Set<String> removed = storage.remove(lookup);
+        storage.addValues(user, removed);
+        return removed;
+    }
+}
@@ -0,0 +1,78 @@
+package storage;
+
+import interfaces.UserInterface;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Updates of different users from several threads on one registry, as the reactors make them: a path
+// already in the trie (another user's file) and a path only the updating user has.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class FileStorageContentionBenchmark {
+    private static final int REGISTRY_SIZE = 100_000;
+    private static final int FILES_PER_USER = 10;
+
+    @State(Scope.Benchmark)
+    public static class Registry {
+        FileStorage storage;
+        final AtomicInteger threads = new AtomicInteger();
+
+        @Setup
+        public void setUp() {
+            storage = new FileStorage();
+            for (int i = 0; i < REGISTRY_SIZE; i++) {
+                Set<String> files = new HashSet<>();
+                for (int j = 0; j < FILES_PER_USER; j++) {
+                    files.add("/home/peer" + i + "/music/track" + j + ".mp3");
+                }
+                storage.addValues(new User("peer" + i, "127.0.0.1", 2000 + i % 60000), files);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Updater {
+        UserInterface user;
+        Set<String> shared;
+        Set<String> own;
+
+        @Setup
+        public void setUp(Registry registry) {
+            int thread = registry.threads.getAndIncrement();
+            int peer = thread * 1000;
+            user = new User("peer" + peer, "127.0.0.1", 2000 + peer);
+            shared = Set.of("/home/peer" + (peer + 1) + "/music/track1.mp3");
+            own = Set.of("/home/bench" + thread + "/new/file.bin");
+        }
+    }
+
+    @Benchmark
+    public void addThenRemoveSharedPath(Registry registry, Updater updater) {
+        registry.storage.addValues(updater.user, updater.shared);
+        registry.storage.removeValues(updater.user, updater.shared);
+    }
+
+    @Benchmark
+    public void addThenRemoveNewPath(Registry registry, Updater updater) {
+        registry.storage.addValues(updater.user, updater.own);
+        registry.storage.removeValues(updater.user, updater.own);
+    }
+}
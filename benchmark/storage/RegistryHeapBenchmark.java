@@ -0,0 +1,95 @@
+package storage;
+
+import interfaces.Storage;
+import interfaces.UserInterface;
+import utils.UserUtils;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Retained heap of a synthetic registry: the trie-backed FileStorage and FileOwnerIndex sharing one
+// PathTrie, against the per-user sets of path strings and path -> owners map they replaced.
+// Run with: java -Xmx4g -cp <classes> storage.RegistryHeapBenchmark [users] [files per user]
+public class RegistryHeapBenchmark {
+
+    public static void main(String[] args) {
+        int usersCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int filesPerUser = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        long paths = (long) usersCount * filesPerUser;
+
+        long strings = measure(usersCount, filesPerUser, new StringRegistry());
+        PathTrie trie = new PathTrie();
+        long trieBacked = measure(usersCount, filesPerUser,
+                new TrieRegistry(new FileStorage(trie), new FileOwnerIndex(new UserTable(), trie)));
+
+        System.out.printf("%d users x %d files = %d paths%n", usersCount, filesPerUser, paths);
+        System.out.printf("%-14s %12s %14s%n", "layout", "MB", "bytes/path");
+        System.out.printf("%-14s %12.1f %14.1f%n", "strings", strings / 1e6, (double) strings / paths);
+        System.out.printf("%-14s %12.1f %14.1f%n", "path trie", trieBacked / 1e6, (double) trieBacked / paths);
+        System.out.printf("saved %.1f%%%n", 100.0 * (strings - trieBacked) / strings);
+    }
+
+    private interface Registry {
+        void register(UserInterface user, Set<String> files);
+    }
+
+    // Every user shares a deep project tree; half of each user's files are mirrors of the same shared paths.
+    private static long measure(int usersCount, int filesPerUser, Registry registry) {
+        long before = usedHeap();
+        for (int i = 0; i < usersCount; i++) {
+            UserInterface user = new User("peer" + i, "10.0." + (i / 250) + "." + (i % 250), 6000 + i);
+            Set<String> files = new HashSet<>();
+            for (int j = 0; j < filesPerUser; j++) {
+                if (j % 2 == 0) {
+                    files.add("/srv/mirror/releases/linux/distributions/2024/iso/image-" + j + ".iso");
+                } else {
+                    files.add("/home/peer" + i + "/projects/torrent-server/src/main/java/module" + (j % 20)
+                            + "/package" + (j % 7) + "/File" + j + ".java");
+                }
+            }
+            registry.register(user, files);
+        }
+        long retained = usedHeap() - before;
+        System.out.println(registry.hashCode() == 42 ? "" : "registered");
+        return retained;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private record TrieRegistry(Storage<UserInterface, Set<String>> files, Storage<String, Set<UserInterface>> owners)
+            implements Registry {
+        @Override
+        public void register(UserInterface user, Set<String> userFiles) {
+            files.addValues(user, userFiles);
+            Set<UserInterface> owner = Set.of(user);
+            for (String file : userFiles) {
+                owners.addValues(file, owner);
+            }
+        }
+    }
+
+    private static class StringRegistry implements Registry {
+        private final Map<UserInterface, Set<String>> files = new ConcurrentSkipListMap<>(UserUtils.USER_ORDER);
+        private final Map<String, Set<UserInterface>> owners = new ConcurrentHashMap<>();
+
+        @Override
+        public void register(UserInterface user, Set<String> userFiles) {
+            Set<String> stored = files.computeIfAbsent(user, key -> ConcurrentHashMap.newKeySet());
+            for (String file : userFiles) {
+                // the registry keeps the first instance of a path, like the string-keyed index did
+                Set<UserInterface> pathOwners = owners.computeIfAbsent(file, key -> ConcurrentHashMap.newKeySet());
+                pathOwners.add(user);
+                stored.add(file);
+            }
+        }
+    }
+}
@@ -2,37 +2,45 @@ package client;
 
 import command.Command;
 import command.CommandCreator;
+import interfaces.Codec;
+import interfaces.DownloadListener;
 import interfaces.UserInterface;
 import messages.Response;
 import messages.ResponseStatus;
+import messages.WireFormat;
 import utils.UserUtils;
 
 import java.io.*;
 import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.nio.ByteBuffer;
-import java.nio.channels.*;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
-
-// NIO, blocking
+// Console front end of TorrentClient
 public class Client {
 
     private static final int SERVER_PORT = 7777;
     private static final String SERVER_HOST = "localhost";
-    private static final int BUFFER_SIZE = 512;
-    private static ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
-    private static Set<UserInterface> users; // Still wondering why we need it ??!?
+    private static final Codec CODEC = WireFormat.fromSystemProperty().codec();
+    // downloads run in the background, the console lists them and cancels them by destination
+    private static final Map<String, Download> downloads = new ConcurrentHashMap<>();
+    private static final PeerDirectory peers = new PeerDirectory(); // Still wondering why we need it ??!?
     private static UserInterface currentUser = null;
+    private static MiniServer clientServer = null;
     private static final String INVALID_ARGS_COUNT_MESSAGE_FORMAT =
             "Invalid count of arguments: \"%s\" expects exactly %d arguments.";
     private static final String DOWNLOAD = "download";
+    private static final String SWARM_DOWNLOAD = "swarm-download";
+    private static final String BATCH = "batch";
+    private static final String DOWNLOADS = "downloads";
+    private static final String CANCEL = "cancel";
 
     private static final ScheduledExecutorService SCHEDULER
             = Executors.newSingleThreadScheduledExecutor(r -> {
@@ -62,66 +70,144 @@ public class Client {
         }
     }
 
-    private static Response processInput(SocketChannel socketChannel, String input) throws IOException, ClassNotFoundException {
-        buffer.clear(); // switch to writing mode
-        buffer.put(input.getBytes()); // buffer fill
-        buffer.flip(); // switch to reading mode
-        socketChannel.write(buffer); // buffer drain
-
-        buffer.clear(); // switch to writing mode
-        socketChannel.read(buffer);
-        buffer.flip();
-
-        byte[] byteArray = new byte[buffer.remaining()];
-        buffer.get(byteArray);
-        ObjectInputStream oos = new ObjectInputStream(new ByteArrayInputStream(byteArray));
-        Response response = (Response) oos.readObject();
-        oos.close();
-        return response;
+    // after subscribe the tracker pushes registry changes ahead of the answers, the connection applies them
+    private static Response processInput(TorrentClient client, String input) throws IOException {
+        try {
+            return client.send(CommandCreator.newCommand(input)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the tracker");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException cause ? cause : new IOException(e.getCause());
+        }
     }
 
-    private static void startScheduledFetchingUsers(SocketChannel socketChannel) {
-        SCHEDULER.schedule(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    String listUsers = "list-users";
-                    Response response = processInput(socketChannel, listUsers);
-                    String[] usersString = ((String)response.message()).split(System.lineSeparator());
-                    Set<UserInterface> updatedUsers = new HashSet<>();
-                    for (String user : usersString) {
-                        updatedUsers.add(UserUtils.processUser(user.split("-")));
-                    }
-                    users = updatedUsers;
-                }catch (IOException | ClassNotFoundException e) {
-                    throw new RuntimeException(e);
+    // batch <path_to_file> sends the commands in the file, one per line, pipelined on the tracker connection
+    private static String batch(TorrentClient client, String... arguments) {
+        if (arguments.length != 1) {
+            return new Response(ResponseStatus.ERROR, String.format(INVALID_ARGS_COUNT_MESSAGE_FORMAT, BATCH, 1)).toString();
+        }
+        try {
+            List<Command> commands = new ArrayList<>();
+            for (String line : Files.readAllLines(Paths.get(arguments[0]))) {
+                if (!line.isBlank()) {
+                    commands.add(CommandCreator.newCommand(line.strip()));
+                }
+            }
+            StringBuilder responses = new StringBuilder();
+            for (Response response : client.batch(commands).join()) {
+                if (!responses.isEmpty()) {
+                    responses.append(System.lineSeparator());
                 }
+                responses.append(response);
+            }
+            return responses.toString();
+        } catch (IOException | CompletionException e) {
+            return new Response(ResponseStatus.ERROR, "There is a problem with the batch: " + e.getMessage()).toString();
+        }
+    }
+
+    // swarm-download <path_to_file> <path_to_save> [low|normal|high] fetches the file in pieces from every peer
+    // registered with that path, once the scheduler has room for it
+    private static Response swarmDownload(TorrentClient client, String... arguments) {
+        if (arguments.length != 2 && arguments.length != 3) {
+            return new Response(ResponseStatus.ERROR, String.format(INVALID_ARGS_COUNT_MESSAGE_FORMAT, SWARM_DOWNLOAD, 2));
+        }
+        if (currentUser == null) {
+            return new Response(ResponseStatus.ERROR, "Download is not available for guest users!");
+        }
+        DownloadPriority priority;
+        try {
+            priority = arguments.length == 3 ? DownloadPriority.valueOf(arguments[2].toUpperCase()) : DownloadPriority.NORMAL;
+        } catch (IllegalArgumentException e) {
+            return new Response(ResponseStatus.ERROR, "Priority should be one of " + Arrays.toString(DownloadPriority.values()));
+        }
+        track(client.swarmDownload(currentUser, arguments[0], Paths.get(arguments[1]), priority, DownloadListener.NONE));
+        return new Response(ResponseStatus.OK, "Queued " + arguments[0] + ", see " + DOWNLOADS + " for its progress");
+    }
+
+    // Prints the outcome once the download is over, the console stays free in the meantime
+    private static void track(Download download) {
+        downloads.put(download.destination().toString(), download);
+        download.result().whenComplete((response, failure) -> {
+            downloads.remove(download.destination().toString(), download);
+            if (failure instanceof CancellationException) {
+                System.out.println("Download of " + download.source() + " was cancelled, repeat it to resume.");
+            } else if (failure != null) {
+                Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                System.out.println(new Response(ResponseStatus.ERROR, "There is a problem with the network communication: " + cause.getMessage()));
+            } else {
+                System.out.println(response);
+            }
+        });
+    }
+
+    private static Response listDownloads() {
+        StringBuilder list = new StringBuilder();
+        for (Download download : downloads.values()) {
+            if (!list.isEmpty()) {
+                list.append(System.lineSeparator());
+            }
+            list.append(download.source()).append(" -> ").append(download.destination()).append(" : ");
+            if (download.isQueued()) {
+                list.append("queued, ").append(download.priority().name().toLowerCase()).append(" priority");
+            } else {
+                list.append(download.verifiedPieces()).append('/').append(download.totalPieces()).append(" pieces");
             }
-        }, 30, TimeUnit.SECONDS);
+        }
+        return new Response(ResponseStatus.OK, list.isEmpty() ? "No downloads in progress" : list.toString());
+    }
+
+    // cancel <path_to_save> stops the download into that destination, its verified pieces are kept
+    private static Response cancel(String... arguments) {
+        if (arguments.length != 1) {
+            return new Response(ResponseStatus.ERROR, String.format(INVALID_ARGS_COUNT_MESSAGE_FORMAT, CANCEL, 1));
+        }
+        Download download = downloads.get(arguments[0]);
+        if (download == null || !download.cancel()) {
+            return new Response(ResponseStatus.ERROR, "No download into " + arguments[0] + " is in progress");
+        }
+        return new Response(ResponseStatus.OK, "Cancelling the download into " + arguments[0]);
+    }
+
+    // The files of a register or unregister command, after the user
+    private static List<String> files(Command cmd) {
+        return Arrays.asList(cmd.arguments()).subList(1, cmd.arguments().length);
+    }
+
+    // The poll also renews the session lease, well within the tracker's default of two minutes
+    private static void startScheduledFetchingUsers(TorrentClient client) {
+        peers.pollEvery(SCHEDULER, version -> processInput(client, "list-users-since " + version), 30, TimeUnit.SECONDS);
     }
 
 
     public static void main(String[] args) {
 
-        try (SocketChannel socketChannel = SocketChannel.open();
+        try (TorrentClient client = TorrentClient.connect(new InetSocketAddress(SERVER_HOST, SERVER_PORT), CODEC, peers::applyEvents);
              Scanner scanner = new Scanner(System.in)) {
 
-            socketChannel.connect(new InetSocketAddress(SERVER_HOST, SERVER_PORT));
-
             System.out.println("Connected to the server.");
 
+            startScheduledFetchingUsers(client);
             while (true) {
-                startScheduledFetchingUsers(socketChannel);
                 System.out.print("Enter message: " + System.lineSeparator());
                 String message = scanner.nextLine(); // read a line from the console
-                Response response = processInput(socketChannel, message);
                 Command cmd = CommandCreator.newCommand(message);
-                if ("register".equals(cmd.command()) && response.status() != ResponseStatus.ERROR) {
-                    if (currentUser == null) {
-                        currentUser = UserUtils.processUser(cmd.arguments()[0].split("-"));
-                        MiniServer clientServer = new MiniServer(currentUser.getHost(), currentUser.getPort());
-                        new Thread(clientServer).start();
-                    }
+                if (SWARM_DOWNLOAD.equals(cmd.command())) {
+                    System.out.println(swarmDownload(client, cmd.arguments()));
+                    continue;
+                }
+                if (BATCH.equals(cmd.command())) {
+                    System.out.println(batch(client, cmd.arguments()));
+                    continue;
+                }
+                if (DOWNLOADS.equals(cmd.command())) {
+                    System.out.println(listDownloads());
+                    continue;
+                }
+                if (CANCEL.equals(cmd.command())) {
+                    System.out.println(cancel(cmd.arguments()));
+                    continue;
                 }
                 if ("download".equals(cmd.command())) {
                     try {
@@ -134,36 +220,36 @@ public class Client {
                         continue;
                     }
                     UserInterface user = UserUtils.processUser(cmd.arguments()[0].split("-"));
-                    try (Socket downloadSocket = new Socket(user.getHost(),user.getPort());
-                        ObjectInputStream in = new ObjectInputStream(downloadSocket.getInputStream());
-                        PrintWriter writer = new PrintWriter(downloadSocket.getOutputStream())) {
-                        Set<String> sourceFiles = extractFiles(cmd.arguments()[1]);
-                        Set<String> destinationFiles = extractFiles(cmd.arguments()[2]);
-                        Iterator<String> sourceIter = sourceFiles.iterator();
-                        Iterator<String> destinationIter = destinationFiles.iterator();
-                        while (sourceIter.hasNext() && destinationIter.hasNext()) {
-                            String source = sourceIter.next();
-                            String destination = destinationIter.next();
-                            writer.println("download " + user + " " + source + " " + destination);
-                            writer.flush();
-                            response = (Response) in.readObject();
-                            if (response.status() == ResponseStatus.SENDING_FILE) {
-                                Files.copy(new FileInputStream((File) in.readObject()), Paths.get(destination), REPLACE_EXISTING);
-                                response = (Response) in.readObject();
-                            }
-                            System.out.println(response);
-                        }
-                        writer.println("quit");
-                        writer.flush();
-                        response = new Response(ResponseStatus.OK, "All files downloaded successfully.");
-                    } catch (IOException e) {
-                        throw new RuntimeException("There is a problem with the network communication", e);
+                    // each file goes through the verified, resumable piece download with this single peer, as many
+                    // at once as the scheduler allows; a failed file keeps its progress and the others are still attempted
+                    Iterator<String> sourceIter = extractFiles(cmd.arguments()[1]).iterator();
+                    Iterator<String> destinationIter = extractFiles(cmd.arguments()[2]).iterator();
+                    while (sourceIter.hasNext() && destinationIter.hasNext()) {
+                        track(client.download(List.of(user), sourceIter.next(), Paths.get(destinationIter.next()), DownloadListener.NONE));
                     }
+                    System.out.println(new Response(ResponseStatus.OK, "Queued the downloads, see " + DOWNLOADS + " for their progress"));
+                    continue;
+                }
+                Response response = processInput(client, message);
+                if ("register".equals(cmd.command()) && response.status() != ResponseStatus.ERROR) {
+                    if (currentUser == null) {
+                        currentUser = UserUtils.processUser(cmd.arguments()[0].split("-"));
+                        clientServer = new MiniServer(currentUser.getHost(), currentUser.getPort());
+                        new Thread(clientServer).start();
+                    }
+                    // the peers may fetch only what this user registered
+                    if (currentUser.equals(UserUtils.processUser(cmd.arguments()[0].split("-")))) {
+                        clientServer.sharedFiles().share(files(cmd));
+                    }
+                }
+                if ("unregister".equals(cmd.command()) && response.status() != ResponseStatus.ERROR && clientServer != null
+                        && currentUser.equals(UserUtils.processUser(cmd.arguments()[0].split("-")))) {
+                    clientServer.sharedFiles().unshare(files(cmd));
                 }
                 System.out.println(response);
             }
 
-        } catch (IOException | ClassNotFoundException e) {
+        } catch (IOException e) {
             throw new RuntimeException("There is a problem with the network communication", e);
         }
     }
@@ -1,77 +1,210 @@
 package client;
 
 import command.Command;
-import command.CommandCreator;
+import interfaces.Codec;
+import messages.Frames;
 import messages.Response;
 import messages.ResponseStatus;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import utils.Log;
 
-import java.io.*;
-import java.net.Socket;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
 
+// Peer protocol: command frames in, response frames out. A download or piece request is answered
+// with SENDING_FILE, the byte count as a long, the raw file bytes and a closing OK frame. The file bytes
+// are sent at the pace the UploadThrottle allows for this connection's host. Requests for files the user
+// did not register are refused.
 public class ClientRequestHandler implements Runnable {
-    private Socket socket;
+    private final SocketChannel socket;
+    private final Codec codec;
+    private final SharedFiles sharedFiles;
+    private final PieceHashes pieceHashes;
+    private final Metrics metrics;
+    private final UploadThrottle throttle;
+    private final LongAdder bytesSent;
+    private final LongAdder transfers;
+    private final LatencyHistogram transferRates;
     private static final String INVALID_ARGS_COUNT_MESSAGE_FORMAT =
             "Invalid count of arguments: \"%s\" expects exactly %d arguments.";
     private static final String DOWNLOAD = "download";
+    private static final String QUIT = "quit";
+    private static final String SIZE = "size";
+    private static final String PIECE = "piece";
+    private static final String HASHES = "hashes";
+    private static final String STATS = "stats";
 
-    public ClientRequestHandler(Socket socket) {
+    // Only the files in sharedFiles are sent, whatever path the peer asks for
+    public ClientRequestHandler(SocketChannel socket, Codec codec, SharedFiles sharedFiles) {
+        this(socket, codec, sharedFiles, new PieceHashes());
+    }
+
+    public ClientRequestHandler(SocketChannel socket, Codec codec, SharedFiles sharedFiles, PieceHashes pieceHashes) {
+        this(socket, codec, sharedFiles, pieceHashes, new Metrics());
+    }
+
+    public ClientRequestHandler(SocketChannel socket, Codec codec, SharedFiles sharedFiles, PieceHashes pieceHashes,
+                                Metrics metrics) {
+        this(socket, codec, sharedFiles, pieceHashes, metrics, UploadThrottle.UNLIMITED);
+    }
+
+    public ClientRequestHandler(SocketChannel socket, Codec codec, SharedFiles sharedFiles, PieceHashes pieceHashes,
+                                Metrics metrics, UploadThrottle throttle) {
         this.socket = socket;
+        this.codec = codec;
+        this.sharedFiles = sharedFiles;
+        this.pieceHashes = pieceHashes;
+        this.metrics = metrics;
+        this.throttle = throttle;
+        this.bytesSent = metrics.counter("upload.bytes");
+        this.transfers = metrics.counter("upload.transfers");
+        this.transferRates = metrics.histogram("upload.bytes-per-second");
     }
 
-    private static void validateDownload(String... arguments) throws FileNotFoundException {
+    private Path validateDownload(String... arguments) throws FileNotFoundException {
         if (arguments.length != 3) {
             throw new IllegalArgumentException(String.format(INVALID_ARGS_COUNT_MESSAGE_FORMAT,DOWNLOAD,3,"download <user_to_download_from> <path_to_file> <path_to_file>}"));
         }
-        String sourceFile = arguments[1];
-        Path path = Paths.get(sourceFile);
-        if (!Files.exists(path)) {
-            throw new FileNotFoundException("File " + path + " does not exist!");
+        return sharedFile(arguments[1]);
+    }
+
+    private Path sharedFile(String source) throws FileNotFoundException {
+        Path path = sharedFiles.resolve(source);
+        if (!Files.isRegularFile(path)) {
+            throw new FileNotFoundException("File " + source + " does not exist!");
         }
+        return path;
     }
 
     @Override
     public void run() {
-        try (ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream()); // autoflush on
-             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
-
+        try (socket; UploadThrottle.Lease lease = throttle.lease(((InetSocketAddress) socket.getRemoteAddress()).getAddress())) {
+            // responses are small and followed by a read, Nagle would delay every one of them
+            socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
             while (true) {
-                String clientInput = in.readLine();
-
-                Command cmd = CommandCreator.newCommand(clientInput);
-                Response response = null;
-                if ("quit".equals(cmd.command())) {
+                Command cmd = codec.decodeCommand(Frames.read(socket));
+                if (QUIT.equals(cmd.command())) {
                     break;
                 }
-                if (DOWNLOAD.equals(cmd.command())) {
-                    try {
-                        validateDownload(cmd.arguments());
-                        String source = cmd.arguments()[1];
-                        System.out.println("File " + source + " was requested...");
-                        out.writeObject(new Response(ResponseStatus.SENDING_FILE, "Sending file " + source + "..."));
-                        out.flush();
-                        out.writeObject(new File(source));
-                        out.flush();
-                        System.out.println("File sending finished successfully.");
-                        response = new Response(ResponseStatus.OK, "File " + source + " downloaded successfully");
-                    } catch (Exception e) {
-                        response = new Response(ResponseStatus.ERROR, e.getMessage());
-                    }
-                    out.writeObject(response);
-                    out.flush();
-                }
+                Response response;
+                response = switch (cmd.command()) {
+                    case DOWNLOAD -> download(cmd.arguments(), lease);
+                    case SIZE -> size(cmd.arguments());
+                    case PIECE -> piece(cmd.arguments(), lease);
+                    case HASHES -> hashes(cmd.arguments());
+                    case STATS -> new Response(ResponseStatus.OK, metrics.dump());
+                    default -> new Response(ResponseStatus.ERROR, "Unknown command");
+                };
+                Frames.write(socket, codec.encode(response));
             }
+        } catch (EOFException e) {
+            // the peer closed the connection without quit
         } catch (IOException e) {
-            System.out.println(e.getMessage());
-        } finally {
-            try {
-                socket.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+            Log.error(e.getMessage());
+        }
+    }
+
+    private Response download(String[] arguments, UploadThrottle.Lease lease) throws IOException {
+        FileChannel file;
+        try {
+            file = FileChannel.open(validateDownload(arguments), StandardOpenOption.READ);
+        } catch (IllegalArgumentException | IOException e) {
+            return new Response(ResponseStatus.ERROR, e.getMessage());
+        }
+
+        String source = arguments[1];
+        try (file) {
+            Log.debug("File " + source + " was requested...");
+            send(file, source, 0, file.size(), lease);
+            Log.debug("File sending finished successfully.");
+            return new Response(ResponseStatus.OK, "File " + source + " downloaded successfully");
+        }
+    }
+
+    private Response size(String[] arguments) {
+        try {
+            if (arguments.length != 1) {
+                throw new IllegalArgumentException(String.format(INVALID_ARGS_COUNT_MESSAGE_FORMAT, SIZE, 1));
+            }
+            return new Response(ResponseStatus.OK, Long.toString(Files.size(sharedFile(arguments[0]))));
+        } catch (IllegalArgumentException | IOException e) {
+            return new Response(ResponseStatus.ERROR, e.getMessage());
+        }
+    }
+
+    private Response hashes(String[] arguments) {
+        try {
+            if (arguments.length != 2) {
+                throw new IllegalArgumentException(String.format(INVALID_ARGS_COUNT_MESSAGE_FORMAT, HASHES, 2));
+            }
+            int pieceSize = Integer.parseInt(arguments[1]);
+            PieceHashes.checkPieceSize(pieceSize);
+            return new Response(ResponseStatus.OK, pieceHashes.encoded(sharedFile(arguments[0]), pieceSize));
+        } catch (IllegalArgumentException | IOException e) {
+            return new Response(ResponseStatus.ERROR, e.getMessage());
+        }
+    }
+
+    private Response piece(String[] arguments, UploadThrottle.Lease lease) throws IOException {
+        FileChannel file;
+        long offset;
+        long length;
+        try {
+            if (arguments.length != 3) {
+                throw new IllegalArgumentException(String.format(INVALID_ARGS_COUNT_MESSAGE_FORMAT, PIECE, 3));
             }
+            offset = Long.parseLong(arguments[1]);
+            length = Long.parseLong(arguments[2]);
+            file = FileChannel.open(sharedFile(arguments[0]), StandardOpenOption.READ);
+        } catch (IllegalArgumentException | IOException e) {
+            return new Response(ResponseStatus.ERROR, e.getMessage());
         }
 
+        try (file) {
+            if (offset < 0 || length < 0 || offset > file.size() || length > file.size() - offset) {
+                return new Response(ResponseStatus.ERROR, "Piece is outside of file " + arguments[0]);
+            }
+            send(file, arguments[0], offset, length, lease);
+            return new Response(ResponseStatus.OK, "Piece of " + arguments[0] + " sent successfully");
+        }
+    }
+
+    private void send(FileChannel file, String source, long offset, long length, UploadThrottle.Lease lease)
+            throws IOException {
+        ByteBuffer announcement = codec.encode(new Response(ResponseStatus.SENDING_FILE, "Sending file " + source + "..."));
+        Frames.write(socket, ByteBuffer.allocate(announcement.remaining() + Long.BYTES).put(announcement).putLong(length).flip());
+        // once the size is announced the stream can only be recovered by sending all of it,
+        // so failures from here on close the connection
+        long started = System.nanoTime();
+        long sent = 0;
+        try {
+            while (sent < length) {
+                long chunkEnd = sent + lease.acquire(length - sent);
+                while (sent < chunkEnd) {
+                    long transferred = file.transferTo(offset + sent, chunkEnd - sent, socket);
+                    // the socket blocks, so nothing sent means the file was truncated under the transfer
+                    if (transferred == 0) {
+                        throw new IOException("File " + source + " ended before the piece was sent");
+                    }
+                    sent += transferred;
+                    bytesSent.add(transferred);
+                }
+            }
+        } finally {
+            long elapsed = Math.max(1, System.nanoTime() - started);
+            transfers.increment();
+            transferRates.record((long) (sent * 1e9 / elapsed));
+        }
     }
 }
@@ -0,0 +1,102 @@
+package client;
+
+import interfaces.DownloadListener;
+import messages.Response;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+// A download queued by TorrentClient. The result completes with the final Response, or exceptionally when
+// the peers could not be reached; cancel() drops it from the queue or interrupts the thread running the
+// transfer, which keeps the verified pieces for a resume.
+public class Download implements DownloadListener {
+    private final String source;
+    private final Path destination;
+    private final DownloadListener listener;
+    private final DownloadPriority priority;
+    private final CompletableFuture<Response> result = new CompletableFuture<>();
+    private Thread runner;
+    private boolean started;
+    private volatile int verifiedPieces;
+    private volatile int totalPieces;
+
+    Download(String source, Path destination, DownloadPriority priority, DownloadListener listener) {
+        this.source = source;
+        this.destination = destination;
+        this.priority = priority;
+        this.listener = listener;
+    }
+
+    public String source() {
+        return source;
+    }
+
+    public Path destination() {
+        return destination;
+    }
+
+    public DownloadPriority priority() {
+        return priority;
+    }
+
+    public CompletableFuture<Response> result() {
+        return result;
+    }
+
+    public boolean isDone() {
+        return result.isDone();
+    }
+
+    // Waiting for a free slot in the scheduler
+    public synchronized boolean isQueued() {
+        return !started && !result.isDone();
+    }
+
+    // Both are 0 until the peers have described the file
+    public int verifiedPieces() {
+        return verifiedPieces;
+    }
+
+    public int totalPieces() {
+        return totalPieces;
+    }
+
+    public boolean cancel() {
+        boolean cancelled = result.cancel(false);
+        if (cancelled) {
+            synchronized (this) {
+                if (runner != null) {
+                    runner.interrupt();
+                }
+            }
+        }
+        return cancelled;
+    }
+
+    @Override
+    public void progress(String source, int verifiedPieces, int totalPieces) {
+        // the workers of one download report concurrently, a late report must not move the count back
+        synchronized (this) {
+            if (verifiedPieces < this.verifiedPieces) {
+                return;
+            }
+            this.verifiedPieces = verifiedPieces;
+            this.totalPieces = totalPieces;
+        }
+        listener.progress(source, verifiedPieces, totalPieces);
+    }
+
+    // Called by the thread about to run the transfer, false when it was cancelled in the meantime
+    synchronized boolean begin() {
+        started = true;
+        if (result.isDone()) {
+            return false;
+        }
+        runner = Thread.currentThread();
+        return true;
+    }
+
+    synchronized void end() {
+        runner = null;
+    }
+}
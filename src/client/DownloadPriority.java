@@ -0,0 +1,5 @@
+package client;
+
+public enum DownloadPriority {
+    LOW, NORMAL, HIGH
+}
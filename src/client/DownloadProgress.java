@@ -0,0 +1,109 @@
+package client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Sidecar file next to a download: <magic><size><piece size><digest of the piece hashes><bitfield>.
+// A piece's bit is set once its content has been verified, so an interrupted download resumes
+// from the pieces that are still missing. A sidecar written for another file version is discarded.
+class DownloadProgress implements Closeable {
+    private static final String SUFFIX = ".progress";
+    private static final int MAGIC = 0x50524f47;
+    private static final int DIGEST_SIZE = 32;
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES + DIGEST_SIZE;
+
+    private final Path path;
+    private final FileChannel file;
+    private final BitSet verified;
+    private final int piecesCount;
+
+    private DownloadProgress(Path path, FileChannel file, BitSet verified, int piecesCount) {
+        this.path = path;
+        this.file = file;
+        this.verified = verified;
+        this.piecesCount = piecesCount;
+    }
+
+    static Path sidecarOf(Path destination) {
+        return destination.resolveSibling(destination.getFileName() + SUFFIX);
+    }
+
+    static DownloadProgress open(Path destination, long size, int pieceSize, byte[] hashesDigest) throws IOException {
+        Path path = sidecarOf(destination);
+        int piecesCount = PieceHashes.piecesCount(size, pieceSize);
+        int bitfieldSize = (piecesCount + Byte.SIZE - 1) / Byte.SIZE;
+        FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            file.read(header, 0);
+            header.flip();
+            if (matches(header, size, pieceSize, hashesDigest) && file.size() == HEADER_SIZE + bitfieldSize) {
+                ByteBuffer bitfield = ByteBuffer.allocate(bitfieldSize);
+                file.read(bitfield, HEADER_SIZE);
+                return new DownloadProgress(path, file, BitSet.valueOf(bitfield.array()), piecesCount);
+            }
+
+            file.truncate(0);
+            header.clear();
+            header.putInt(MAGIC).putLong(size).putInt(pieceSize).put(hashesDigest, 0, DIGEST_SIZE).flip();
+            file.write(header, 0);
+            file.write(ByteBuffer.allocate(bitfieldSize), HEADER_SIZE);
+            return new DownloadProgress(path, file, new BitSet(piecesCount), piecesCount);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private static boolean matches(ByteBuffer header, long size, int pieceSize, byte[] hashesDigest) {
+        if (header.remaining() != HEADER_SIZE || header.getInt() != MAGIC
+                || header.getLong() != size || header.getInt() != pieceSize) {
+            return false;
+        }
+        byte[] digest = new byte[DIGEST_SIZE];
+        header.get(digest);
+        return Arrays.equals(digest, 0, DIGEST_SIZE, hashesDigest, 0, DIGEST_SIZE);
+    }
+
+    synchronized boolean isVerified(int piece) {
+        return verified.get(piece);
+    }
+
+    synchronized int verifiedCount() {
+        return verified.cardinality();
+    }
+
+    boolean isComplete() {
+        return verifiedCount() == piecesCount;
+    }
+
+    synchronized void markVerified(int piece) throws IOException {
+        verified.set(piece);
+        int index = piece / Byte.SIZE;
+        int bits = 0;
+        for (int bit = 0; bit < Byte.SIZE; bit++) {
+            if (verified.get(index * Byte.SIZE + bit)) {
+                bits |= 1 << bit;
+            }
+        }
+        file.write(ByteBuffer.wrap(new byte[]{(byte) bits}), HEADER_SIZE + index);
+    }
+
+    // Removes the sidecar once the download is complete.
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
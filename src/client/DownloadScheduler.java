@@ -0,0 +1,150 @@
+package client;
+
+import interfaces.UserInterface;
+import messages.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+// Queues the downloads of a TorrentClient and starts them within a global cap and a cap per peer. The queue
+// is ordered by priority, then by the number of peers holding the file, fewest first, so a file that may soon
+// have no holder left is fetched while it still can be, then by arrival. A download whose peers are all at
+// their cap is passed over for the next one instead of holding up the queue, and starts with the peers that
+// still have room. The peers register whole files, so every piece of a file has the same holders and the
+// rarest-first order applies to the files.
+class DownloadScheduler {
+    interface Transfer {
+        Response run(List<UserInterface> peers) throws IOException;
+    }
+
+    private record Job(Download download, List<UserInterface> holders, DownloadPriority priority, long sequence, Transfer transfer) {
+    }
+
+    private static final Comparator<Job> ORDER = Comparator.comparing(Job::priority, Comparator.reverseOrder())
+            .thenComparingInt(job -> job.holders().size())
+            .thenComparingLong(Job::sequence);
+
+    private final ExecutorService executor;
+    private final int maxActiveDownloads;
+    private final int maxDownloadsPerPeer;
+    private final NavigableSet<Job> queue = new TreeSet<>(ORDER);
+    private final Map<UserInterface, Integer> activeByPeer = new HashMap<>();
+    private int active;
+    private long sequence;
+    private boolean closed;
+
+    DownloadScheduler(ExecutorService executor, int maxActiveDownloads, int maxDownloadsPerPeer) {
+        if (maxActiveDownloads < 1 || maxDownloadsPerPeer < 1) {
+            throw new IllegalArgumentException("At least one download should be allowed at a time");
+        }
+        this.executor = executor;
+        this.maxActiveDownloads = maxActiveDownloads;
+        this.maxDownloadsPerPeer = maxDownloadsPerPeer;
+    }
+
+    synchronized void submit(Download download, List<UserInterface> holders, DownloadPriority priority, Transfer transfer) {
+        if (closed) {
+            download.result().completeExceptionally(new IOException("Client is closed"));
+            return;
+        }
+        Job job = new Job(download, List.copyOf(holders), priority, sequence++, transfer);
+        queue.add(job);
+        // a cancel leaves the queue at once, the started jobs are no longer in it
+        download.result().whenComplete((response, failure) -> drop(job));
+        dispatch();
+    }
+
+    private synchronized void drop(Job job) {
+        queue.remove(job);
+    }
+
+    synchronized int queued() {
+        return queue.size();
+    }
+
+    synchronized int active() {
+        return active;
+    }
+
+    // Fails the queued downloads, the running ones are stopped with the executor
+    void close() {
+        List<Job> dropped;
+        synchronized (this) {
+            closed = true;
+            dropped = new ArrayList<>(queue);
+            queue.clear();
+        }
+        for (Job job : dropped) {
+            job.download().result().completeExceptionally(new IOException("Client is closed"));
+        }
+    }
+
+    private void dispatch() {
+        Iterator<Job> jobs = queue.iterator();
+        while (active < maxActiveDownloads && jobs.hasNext()) {
+            Job job = jobs.next();
+            // cancelled while its drop waits for the lock
+            if (job.download().isDone()) {
+                jobs.remove();
+                continue;
+            }
+            List<UserInterface> peers = new ArrayList<>();
+            for (UserInterface holder : job.holders()) {
+                if (activeByPeer.getOrDefault(holder, 0) < maxDownloadsPerPeer) {
+                    peers.add(holder);
+                }
+            }
+            // without holders the download fails on its own, it needs no peer slot
+            if (peers.isEmpty() && !job.holders().isEmpty()) {
+                continue;
+            }
+            jobs.remove();
+            start(job, peers);
+        }
+    }
+
+    private void start(Job job, List<UserInterface> peers) {
+        active++;
+        peers.forEach(peer -> activeByPeer.merge(peer, 1, Integer::sum));
+        Download download = job.download();
+        try {
+            executor.execute(() -> {
+                try {
+                    if (download.begin()) {
+                        download.result().complete(job.transfer().run(peers));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    download.result().completeExceptionally(e);
+                } finally {
+                    download.end();
+                    finish(peers);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            download.result().completeExceptionally(new IOException("Client is closed"));
+            release(peers);
+        }
+    }
+
+    // The slots are given back when the transfer stops, not when a cancel completes the result before it
+    private synchronized void finish(List<UserInterface> peers) {
+        release(peers);
+        if (!closed) {
+            dispatch();
+        }
+    }
+
+    private void release(List<UserInterface> peers) {
+        active--;
+        peers.forEach(peer -> activeByPeer.computeIfPresent(peer, (key, count) -> count == 1 ? null : count - 1));
+    }
+}
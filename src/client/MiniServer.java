@@ -1,48 +1,165 @@
 package client;
 
+import interfaces.Codec;
+import messages.WireFormat;
+import metrics.Metrics;
+import utils.Log;
+
 import java.io.*;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 public class MiniServer implements Runnable {
+    public enum ThreadingMode {
+        // a fixed pool of platform threads, further connections wait for a free thread
+        POOLED,
+        // a virtual thread per connection, limited only by the connections cap
+        VIRTUAL
+    }
+
+    public static final String THREADING_MODE_PROPERTY = "torrent.miniserver.threads";
+    public static final String MAX_CONNECTIONS_PROPERTY = "torrent.miniserver.max-connections";
+    private static final Integer MAX_EXECUTOR_THREADS = 20;
+    private static final int DEFAULT_MAX_CONNECTIONS = 10_000;
+    private static final long SHUTDOWN_GRACE_SECONDS = 5;
+
     private final String host;
     private final int port;
-    private static final Integer MAX_EXECUTOR_THREADS = 20;
+    private final Codec codec;
+    private final ThreadingMode threadingMode;
+    private final Semaphore connections;
+    private final SharedFiles sharedFiles = new SharedFiles();
+    private final PieceHashes pieceHashes = new PieceHashes();
+    private final Metrics metrics = new Metrics();
+    private final UploadThrottle throttle;
+    private volatile ServerSocketChannel serverSocket;
+    private volatile boolean running = true;
+
     public MiniServer(String host, int port) {
+        this(host, port, WireFormat.fromSystemProperty().codec());
+    }
+
+    public MiniServer(String host, int port, Codec codec) {
+        this(host, port, codec,
+                ThreadingMode.valueOf(System.getProperty(THREADING_MODE_PROPERTY, ThreadingMode.VIRTUAL.name()).toUpperCase()),
+                Integer.getInteger(MAX_CONNECTIONS_PROPERTY, DEFAULT_MAX_CONNECTIONS));
+    }
+
+    public MiniServer(String host, int port, Codec codec, ThreadingMode threadingMode, int maxConnections) {
+        this(host, port, codec, threadingMode, maxConnections,
+                Long.getLong(UploadThrottle.RATE_PROPERTY, 0), Long.getLong(UploadThrottle.PEER_RATE_PROPERTY, 0));
+    }
+
+    // Upload rates in bytes per second for all the peers together and for each of them, 0 for no limit
+    public MiniServer(String host, int port, Codec codec, ThreadingMode threadingMode, int maxConnections,
+                      long uploadBytesPerSecond, long peerUploadBytesPerSecond) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("At least one connection should be allowed");
+        }
         this.host = host;
         this.port = port;
+        this.codec = codec;
+        this.threadingMode = threadingMode;
+        this.connections = new Semaphore(maxConnections);
+        this.throttle = new UploadThrottle(uploadBytesPerSecond, peerUploadBytesPerSecond, metrics);
+        metrics.gauge("upload.connections", () -> maxConnections - connections.availablePermits());
+    }
+
+    // Nothing is served until the files registered with the tracker are shared here
+    public SharedFiles sharedFiles() {
+        return sharedFiles;
+    }
+
+    // Also answered by the stats command and dumped every torrent.stats.interval seconds while running
+    public Metrics metrics() {
+        return metrics;
     }
 
     public void start() {
-        ExecutorService executor = Executors.newFixedThreadPool(MAX_EXECUTOR_THREADS);
-        try (ServerSocket serverSocket = new ServerSocket()) {
+        ExecutorService executor = threadingMode == ThreadingMode.VIRTUAL
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(MAX_EXECUTOR_THREADS);
+        Thread dumper = metrics.dumpEvery(Metrics.dumpIntervalFromSystemProperty(),
+                dump -> Log.info("Mini server stats:" + System.lineSeparator() + dump));
+        // blocking channels rather than sockets, so files can be sent with FileChannel.transferTo
+        try (ServerSocketChannel serverSocket = ServerSocketChannel.open()) {
             serverSocket.bind(new InetSocketAddress(host, port));
+            this.serverSocket = serverSocket;
 
-            Socket clientSocket;
-
-            while (true) {
+            while (running) {
+                // Above the cap new connections stay in the accept backlog
+                connections.acquire();
 
                 // Calling accept() blocks and waits for connection request by a client
                 // When a request comes, accept() returns a socket to communicate with this
                 // client
-                clientSocket = serverSocket.accept();
+                SocketChannel clientSocket;
+                try {
+                    clientSocket = serverSocket.accept();
+                } catch (IOException e) {
+                    connections.release();
+                    throw e;
+                }
 
-                System.out.println("Accepted connection request from client " + clientSocket.getInetAddress());
+                if (Log.isEnabled(Log.Level.DEBUG)) {
+                    Log.debug("Accepted connection request from client " + clientSocket.getRemoteAddress());
+                }
 
                 // We want each client to be processed in a separate thread
                 // to keep the current thread free to accept() requests from new clients
-                ClientRequestHandler clientHandler = new ClientRequestHandler(clientSocket);
-
-                // uncomment the line below to launch a thread manually
-                // new Thread(clientHandler).start();
-                executor.execute(clientHandler); // use a thread pool to launch a thread
+                ClientRequestHandler clientHandler = new ClientRequestHandler(clientSocket, codec, sharedFiles, pieceHashes, metrics, throttle);
+                executor.execute(() -> {
+                    try {
+                        clientHandler.run();
+                    } finally {
+                        connections.release();
+                    }
+                });
             }
 
+        } catch (ClosedChannelException e) {
+            // stop() closed the server socket
         } catch (IOException e) {
             throw new RuntimeException("There is a problem with the server socket", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (dumper != null) {
+                dumper.interrupt();
+            }
+            shutdown(executor);
+        }
+    }
+
+    // Stops accepting connections, lets running downloads finish for a grace period and then interrupts
+    // the handlers, which closes their channels.
+    public void stop() {
+        running = false;
+        ServerSocketChannel channel = serverSocket;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Log.error("Error occurred while stopping mini server: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void shutdown(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_GRACE_SECONDS, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -0,0 +1,295 @@
+package client;
+
+import command.Command;
+import interfaces.Codec;
+import interfaces.UserInterface;
+import messages.Frames;
+import messages.Response;
+import messages.ResponseStatus;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Client side of the peer protocol served by ClientRequestHandler.
+// A connection from a PeerConnectionPool goes back to the pool on close(), unless an I/O failure left the
+// stream in an unknown state, which marks it broken. A peer that does not accept the connection or stops
+// answering in the middle of an exchange fails it after the timeout instead of holding the download up: a
+// shared watchdog closes the channel of an exchange that received nothing for that long, which unblocks
+// the read on any kind of thread.
+public class PeerConnection implements Closeable {
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5_000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 30_000;
+    private static final String DOWNLOAD = "download";
+    private static final String QUIT = "quit";
+    private static final String SIZE = "size";
+    private static final String PIECE = "piece";
+    private static final String HASHES = "hashes";
+
+    private static final ScheduledExecutorService WATCHDOG = newWatchdog();
+    // the most a piece transfer reads between two progress marks
+    private static final long TRANSFER_CHUNK_SIZE = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final Codec codec;
+    private final String host;
+    private final int port;
+    private final PeerConnectionPool pool;
+    private final long readTimeoutNanos;
+    // the watchdog only acts on the exchange it was armed for
+    private final AtomicLong exchanges = new AtomicLong();
+    private boolean broken;
+    private long idleSince;
+    private volatile long lastProgress;
+    private volatile ScheduledFuture<?> alarm;
+    private volatile boolean timedOut;
+
+    public PeerConnection(String host, int port, Codec codec) throws IOException {
+        this(host, port, codec, null, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    PeerConnection(String host, int port, Codec codec, PeerConnectionPool pool, int connectTimeoutMillis,
+                   int readTimeoutMillis) throws IOException {
+        this.channel = SocketChannel.open();
+        try {
+            channel.socket().connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis);
+        this.codec = codec;
+        this.host = host;
+        this.port = port;
+        this.pool = pool;
+    }
+
+    public Response download(UserInterface user, String source, String destination) throws IOException {
+        long exchange = arm();
+        try {
+            return receiveFile(user, source, destination);
+        } catch (IOException e) {
+            throw fail(e);
+        } finally {
+            disarm(exchange);
+        }
+    }
+
+    private Response receiveFile(UserInterface user, String source, String destination) throws IOException {
+        Command command = new Command(DOWNLOAD, new String[]{user.toString(), source, destination});
+        Frames.write(channel, codec.encode(command));
+        Response response = codec.decodeResponse(Frames.read(channel));
+        if (response.status() != ResponseStatus.SENDING_FILE) {
+            return response;
+        }
+
+        long size = Frames.read(channel, Long.BYTES).getLong();
+        try (FileChannel file = FileChannel.open(Path.of(destination), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            receive(file, 0, size);
+        }
+        return codec.decodeResponse(Frames.read(channel));
+    }
+
+    public long size(String source) throws IOException {
+        Response response = exchange(new Command(SIZE, new String[]{source}));
+        if (response.status() != ResponseStatus.OK) {
+            throw new FileNotFoundException(response.message());
+        }
+        return Long.parseLong(response.message());
+    }
+
+    public byte[][] hashes(String source, int pieceSize) throws IOException {
+        Response response = exchange(new Command(HASHES, new String[]{source, Integer.toString(pieceSize)}));
+        if (response.status() != ResponseStatus.OK) {
+            throw new FileNotFoundException(response.message());
+        }
+        try {
+            return PieceHashes.decode(response.message());
+        } catch (IllegalArgumentException e) {
+            broken = true;
+            throw new ProtocolException("Malformed piece hashes: " + e.getMessage());
+        }
+    }
+
+    // Writes length bytes of the source starting at offset to the same offset of the destination.
+    // The destination is only written with positional transfers, so it can be shared between connections.
+    public Response downloadPiece(String source, long offset, long length, FileChannel destination) throws IOException {
+        long exchange = arm();
+        try {
+            return receivePiece(source, offset, length, destination);
+        } catch (IOException e) {
+            throw fail(e);
+        } finally {
+            disarm(exchange);
+        }
+    }
+
+    private Response receivePiece(String source, long offset, long length, FileChannel destination) throws IOException {
+        Command command = new Command(PIECE, new String[]{source, Long.toString(offset), Long.toString(length)});
+        Frames.write(channel, codec.encode(command));
+        Response response = codec.decodeResponse(Frames.read(channel));
+        if (response.status() != ResponseStatus.SENDING_FILE) {
+            return response;
+        }
+
+        long size = Frames.read(channel, Long.BYTES).getLong();
+        if (size != length) {
+            throw new ProtocolException("Peer announced " + size + " bytes for a piece of " + length);
+        }
+        receive(destination, offset, size);
+        return codec.decodeResponse(Frames.read(channel));
+    }
+
+    private Response exchange(Command command) throws IOException {
+        long exchange = arm();
+        try {
+            Frames.write(channel, codec.encode(command));
+            return codec.decodeResponse(Frames.read(channel));
+        } catch (IOException e) {
+            throw fail(e);
+        } finally {
+            disarm(exchange);
+        }
+    }
+
+    private void receive(FileChannel file, long offset, long size) throws IOException {
+        long received = 0;
+        while (received < size) {
+            long count = file.transferFrom(channel, offset + received, Math.min(size - received, TRANSFER_CHUNK_SIZE));
+            if (count == 0) {
+                // a blocking channel only returns nothing at end of stream
+                throw new EOFException("Peer closed the connection after " + received + " of " + size + " bytes");
+            }
+            received += count;
+            lastProgress = System.nanoTime();
+        }
+    }
+
+    private long arm() {
+        long exchange = exchanges.incrementAndGet();
+        lastProgress = System.nanoTime();
+        alarm = WATCHDOG.schedule(() -> checkProgress(exchange), readTimeoutNanos, TimeUnit.NANOSECONDS);
+        return exchange;
+    }
+
+    private void disarm(long exchange) {
+        exchanges.compareAndSet(exchange, exchange + 1);
+        alarm.cancel(false);
+    }
+
+    private void checkProgress(long exchange) {
+        if (exchanges.get() != exchange) {
+            return;
+        }
+        long idle = System.nanoTime() - lastProgress;
+        if (idle < readTimeoutNanos) {
+            alarm = WATCHDOG.schedule(() -> checkProgress(exchange), readTimeoutNanos - idle, TimeUnit.NANOSECONDS);
+            return;
+        }
+        timedOut = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // the blocked read fails either way
+        }
+    }
+
+    private IOException fail(IOException e) {
+        broken = true;
+        if (timedOut) {
+            SocketTimeoutException timeout = new SocketTimeoutException("Peer " + host + ":" + port + " did not answer for "
+                    + TimeUnit.NANOSECONDS.toMillis(readTimeoutNanos) + " ms");
+            timeout.initCause(e);
+            return timeout;
+        }
+        return e;
+    }
+
+    private static ScheduledExecutorService newWatchdog() {
+        ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "peer-read-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // most exchanges end well before their check is due
+        watchdog.setRemoveOnCancelPolicy(true);
+        return watchdog;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (pool != null) {
+            pool.release(this);
+            return;
+        }
+        try (channel) {
+            Frames.write(channel, codec.encode(new Command(QUIT, new String[0])));
+        }
+    }
+
+    String host() {
+        return host;
+    }
+
+    int port() {
+        return port;
+    }
+
+    boolean isBroken() {
+        return broken;
+    }
+
+    long idleSince() {
+        return idleSince;
+    }
+
+    void idleSince(long nanos) {
+        idleSince = nanos;
+    }
+
+    // An idle connection should have nothing to read: end of stream means the peer closed it, and any
+    // bytes would be left over from an exchange that went wrong.
+    boolean isHealthy() {
+        if (broken || !channel.isOpen()) {
+            return false;
+        }
+        try {
+            channel.configureBlocking(false);
+            try {
+                return channel.read(ByteBuffer.allocate(1)) == 0;
+            } finally {
+                channel.configureBlocking(true);
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Ends the connection for good, a failure to say quit only means the peer is already gone
+    void disconnect() {
+        try (channel) {
+            if (!broken) {
+                Frames.write(channel, codec.encode(new Command(QUIT, new String[0])));
+            }
+        } catch (IOException e) {
+            // closed either way
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package client;
+
+import interfaces.Codec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Keep-alive connections to the peers, keyed by host:port. Closing a pooled PeerConnection hands it back
+// instead of sending quit, unless a failure left it in the middle of an exchange. A returned connection is
+// reused by the next download from the same peer while it has been idle for less than the idle timeout and
+// its socket still looks healthy; a background sweep closes the ones idle for longer, so they do not hold
+// a thread of the peer's MiniServer. At most maxConnectionsPerPeer connections to one peer are open at a
+// time, further acquires wait for one of them to be returned.
+public class PeerConnectionPool implements Closeable {
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_PEER = 4;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30_000;
+    private static final long ACQUIRE_TIMEOUT_MILLIS = 30_000;
+
+    private final Codec codec;
+    private final int maxConnectionsPerPeer;
+    private final long idleTimeoutNanos;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private ScheduledExecutorService sweeper;
+    private volatile boolean closed;
+
+    private static final class Peer {
+        // the most recently returned first, so the warmest connection is reused and the oldest expire
+        private final Deque<PeerConnection> idle = new ArrayDeque<>();
+        private int open;
+    }
+
+    public PeerConnectionPool(Codec codec) {
+        this(codec, DEFAULT_MAX_CONNECTIONS_PER_PEER, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    // An idle timeout of 0 closes every connection once it is returned
+    public PeerConnectionPool(Codec codec, int maxConnectionsPerPeer, long idleTimeoutMillis) {
+        this(codec, maxConnectionsPerPeer, idleTimeoutMillis, PeerConnection.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                PeerConnection.DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    public PeerConnectionPool(Codec codec, int maxConnectionsPerPeer, long idleTimeoutMillis, int connectTimeoutMillis,
+                              int readTimeoutMillis) {
+        if (maxConnectionsPerPeer < 1) {
+            throw new IllegalArgumentException("At least one connection per peer should be allowed");
+        }
+        if (idleTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Idle timeout should not be negative");
+        }
+        // 0 would mean waiting forever
+        if (connectTimeoutMillis < 1 || readTimeoutMillis < 1) {
+            throw new IllegalArgumentException("Connect and read timeouts should be positive");
+        }
+        this.codec = codec;
+        this.maxConnectionsPerPeer = maxConnectionsPerPeer;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    public PeerConnection acquire(String host, int port) throws IOException {
+        Peer peer = peers.computeIfAbsent(host + ":" + port, key -> new Peer());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ACQUIRE_TIMEOUT_MILLIS);
+        synchronized (peer) {
+            while (true) {
+                if (closed) {
+                    throw new IOException("Peer connection pool is closed");
+                }
+                PeerConnection connection = peer.idle.pollFirst();
+                if (connection != null) {
+                    if (System.nanoTime() - connection.idleSince() < idleTimeoutNanos && connection.isHealthy()) {
+                        reused.increment();
+                        return connection;
+                    }
+                    peer.open--;
+                    connection.disconnect();
+                    continue;
+                }
+                if (peer.open < maxConnectionsPerPeer) {
+                    peer.open++;
+                    break;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new IOException("Timed out waiting for a free connection to " + host + ":" + port);
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(peer, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for a connection to " + host + ":" + port, e);
+                }
+            }
+        }
+        // connecting outside the lock, the slot is already taken
+        try {
+            PeerConnection connection = new PeerConnection(host, port, codec, this, connectTimeoutMillis, readTimeoutMillis);
+            created.increment();
+            return connection;
+        } catch (IOException e) {
+            synchronized (peer) {
+                peer.open--;
+                peer.notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    // Called by PeerConnection.close()
+    void release(PeerConnection connection) {
+        Peer peer = peers.get(connection.host() + ":" + connection.port());
+        synchronized (peer) {
+            if (closed || connection.isBroken() || idleTimeoutNanos == 0) {
+                peer.open--;
+                connection.disconnect();
+            } else {
+                connection.idleSince(System.nanoTime());
+                peer.idle.addFirst(connection);
+                startSweeper();
+            }
+            peer.notifyAll();
+        }
+    }
+
+    public long createdConnections() {
+        return created.sum();
+    }
+
+    public long reusedConnections() {
+        return reused.sum();
+    }
+
+    // Closes the idle connections, the ones in use are closed when they are returned
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            if (sweeper != null) {
+                sweeper.shutdownNow();
+            }
+        }
+        for (Peer peer : peers.values()) {
+            List<PeerConnection> idle;
+            synchronized (peer) {
+                idle = new ArrayList<>(peer.idle);
+                peer.open -= idle.size();
+                peer.idle.clear();
+                peer.notifyAll();
+            }
+            idle.forEach(PeerConnection::disconnect);
+        }
+    }
+
+    private synchronized void startSweeper() {
+        if (sweeper != null || closed) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "peer-pool-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(TimeUnit.MILLISECONDS.toNanos(10), idleTimeoutNanos / 2);
+        sweeper.scheduleWithFixedDelay(this::closeExpired, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    private void closeExpired() {
+        long now = System.nanoTime();
+        for (Peer peer : peers.values()) {
+            List<PeerConnection> expired = new ArrayList<>();
+            synchronized (peer) {
+                Iterator<PeerConnection> oldestFirst = peer.idle.descendingIterator();
+                while (oldestFirst.hasNext()) {
+                    PeerConnection connection = oldestFirst.next();
+                    if (now - connection.idleSince() < idleTimeoutNanos) {
+                        break;
+                    }
+                    oldestFirst.remove();
+                    expired.add(connection);
+                }
+                peer.open -= expired.size();
+                if (!expired.isEmpty()) {
+                    peer.notifyAll();
+                }
+            }
+            expired.forEach(PeerConnection::disconnect);
+        }
+    }
+}
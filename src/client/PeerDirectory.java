@@ -0,0 +1,110 @@
+package client;
+
+import interfaces.UserInterface;
+import messages.Response;
+import messages.ResponseStatus;
+import utils.Log;
+import utils.UserUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// The users registered with the tracker as the console client knows them. A poll fetches only the users that
+// joined or left since the last known registry version, the tracker answers with a full snapshot when that
+// version is too old; the changes pushed after subscribe are applied as they come.
+// The poll also renews the session lease, so a failed one is logged and the next one still runs.
+// The users and the version change together under the directory's lock, so a resync pushed while a poll
+// is in flight is not overwritten by the older version that poll brings back.
+class PeerDirectory {
+    interface Tracker {
+        Response usersSince(long version) throws IOException;
+    }
+
+    private static final String SNAPSHOT_PREFIX = "snapshot=";
+    private static final String RESYNC_EVENT = "resync";
+
+    private final Set<UserInterface> users = new HashSet<>();
+    private long version = 0;
+    // counts the resyncs, a poll sent before the last one is dropped
+    private long resyncs = 0;
+
+    synchronized Set<UserInterface> users() {
+        return Set.copyOf(users);
+    }
+
+    synchronized long version() {
+        return version;
+    }
+
+    ScheduledFuture<?> pollEvery(ScheduledExecutorService scheduler, Tracker tracker, long period, TimeUnit unit) {
+        return scheduler.scheduleWithFixedDelay(() -> poll(tracker), 0, period, unit);
+    }
+
+    // An exception escaping a scheduled task would cancel every later poll, and with them the lease renewals
+    void poll(Tracker tracker) {
+        long since;
+        long resyncsBefore;
+        synchronized (this) {
+            since = version;
+            resyncsBefore = resyncs;
+        }
+        try {
+            Response response = tracker.usersSince(since);
+            if (response.status() != ResponseStatus.OK) {
+                Log.error("Polling the registered users failed: " + response.message());
+                return;
+            }
+            // parsed in full first, so a bad line leaves the directory as it was
+            String[] lines = response.message().split(System.lineSeparator());
+            long polledVersion = Long.parseLong(lines[0].substring(lines[0].indexOf('=') + 1));
+            List<UserInterface> changed = new ArrayList<>(lines.length - 1);
+            for (int i = 1; i < lines.length; i++) {
+                changed.add(UserUtils.processUser(lines[i].substring(1).split("-")));
+            }
+            synchronized (this) {
+                if (resyncs != resyncsBefore) {
+                    return;
+                }
+                if (lines[0].startsWith(SNAPSHOT_PREFIX)) {
+                    users.clear();
+                }
+                for (int i = 1; i < lines.length; i++) {
+                    if (lines[i].charAt(0) == '+') {
+                        users.add(changed.get(i - 1));
+                    } else {
+                        users.remove(changed.get(i - 1));
+                    }
+                }
+                version = polledVersion;
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.error("Polling the registered users failed: " + e.getMessage());
+        }
+    }
+
+    void applyEvents(String events) {
+        for (String event : events.split(System.lineSeparator())) {
+            System.out.println("Registry change: " + event);
+            String[] parts = event.split(" ");
+            synchronized (this) {
+                switch (parts[0]) {
+                    case "joined" -> users.add(UserUtils.processUser(parts[1].split("-")));
+                    case "left" -> users.remove(UserUtils.processUser(parts[1].split("-")));
+                    // too many changes were missed, the next poll fetches a snapshot
+                    case RESYNC_EVENT -> {
+                        version = -1;
+                        resyncs++;
+                    }
+                    default -> {
+                    }
+                }
+            }
+        }
+    }
+}
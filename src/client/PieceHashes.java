@@ -0,0 +1,123 @@
+package client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// SHA-256 of every piece of a file. The serving side caches them per file version,
+// since a popular file is asked for its hashes by every downloader.
+public class PieceHashes {
+    private static final String ALGORITHM = "SHA-256";
+    private static final String SEPARATOR = "\n";
+    private static final HexFormat HEX = HexFormat.of();
+    // A peer asks for any piece size, so it is held to powers of two in a range and the pieces of one
+    // answer are capped: a hashes request costs at most one piece buffer and a few megabytes of hex
+    public static final int MIN_PIECE_SIZE = 16 * 1024;
+    public static final int MAX_PIECE_SIZE = 4 * 1024 * 1024;
+    public static final int MAX_PIECES = 64 * 1024;
+
+    private final Map<FileVersion, String> cache = new ConcurrentHashMap<>();
+
+    private record FileVersion(Path path, long size, long lastModified, int pieceSize) {
+    }
+
+    // The hashes of the file's pieces in the wire format, one hex digest per line
+    public String encoded(Path path, int pieceSize) throws IOException {
+        checkPieceSize(pieceSize);
+        checkPiecesCount(Files.size(path), pieceSize);
+        FileVersion version = new FileVersion(path.toAbsolutePath(), Files.size(path),
+                Files.getLastModifiedTime(path).toMillis(), pieceSize);
+        String hashes = cache.get(version);
+        if (hashes == null) {
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+                hashes = encode(compute(file, version.size(), pieceSize));
+            }
+            cache.keySet().removeIf(cached -> cached.path().equals(version.path()));
+            cache.put(version, hashes);
+        }
+        return hashes;
+    }
+
+    public static byte[][] compute(FileChannel file, long size, int pieceSize) throws IOException {
+        int piecesCount = piecesCount(size, pieceSize);
+        byte[][] hashes = new byte[piecesCount][];
+        ByteBuffer buffer = ByteBuffer.allocate(pieceSize);
+        MessageDigest digest = newDigest();
+        for (int piece = 0; piece < piecesCount; piece++) {
+            long offset = (long) piece * pieceSize;
+            hashes[piece] = hash(file, offset, (int) Math.min(pieceSize, size - offset), buffer, digest);
+        }
+        return hashes;
+    }
+
+    // Reads length bytes at offset through the given buffer, which must be at least that large.
+    public static byte[] hash(FileChannel file, long offset, int length, ByteBuffer buffer, MessageDigest digest) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("File ended before the end of the piece at " + offset);
+            }
+        }
+        buffer.flip();
+        digest.reset();
+        digest.update(buffer);
+        return digest.digest();
+    }
+
+    public static void checkPieceSize(int pieceSize) {
+        if (pieceSize < MIN_PIECE_SIZE || pieceSize > MAX_PIECE_SIZE || Integer.bitCount(pieceSize) != 1) {
+            throw new IllegalArgumentException("Piece size should be a power of two from " + MIN_PIECE_SIZE
+                    + " to " + MAX_PIECE_SIZE + " bytes");
+        }
+    }
+
+    public static void checkPiecesCount(long size, int pieceSize) {
+        if (size > (long) MAX_PIECES * pieceSize) {
+            throw new IllegalArgumentException("A file of " + size + " bytes has more than " + MAX_PIECES
+                    + " pieces of " + pieceSize + " bytes");
+        }
+    }
+
+    public static int piecesCount(long size, int pieceSize) {
+        return (int) ((size + pieceSize - 1) / pieceSize);
+    }
+
+    public static String encode(byte[][] hashes) {
+        StringBuilder encoded = new StringBuilder(hashes.length * 65);
+        for (byte[] hash : hashes) {
+            if (!encoded.isEmpty()) {
+                encoded.append(SEPARATOR);
+            }
+            encoded.append(HEX.formatHex(hash));
+        }
+        return encoded.toString();
+    }
+
+    public static byte[][] decode(String encoded) {
+        if (encoded.isEmpty()) {
+            return new byte[0][];
+        }
+        String[] lines = encoded.split(SEPARATOR);
+        byte[][] hashes = new byte[lines.length][];
+        for (int i = 0; i < lines.length; i++) {
+            hashes[i] = HEX.parseHex(lines[i]);
+        }
+        return hashes;
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+}
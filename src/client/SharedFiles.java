@@ -0,0 +1,64 @@
+package client;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The files a MiniServer may send: those its user registered with the tracker. Paths are kept resolved,
+// so a request naming a registered file through "..", a symlink or a relative path is still served and
+// a request for anything else is refused the same way, whether the file exists or not.
+public class SharedFiles {
+    private final Set<Path> files = ConcurrentHashMap.newKeySet();
+
+    public void share(Collection<String> paths) {
+        for (String path : paths) {
+            Path file = canonical(path);
+            if (file != null) {
+                files.add(file);
+            }
+        }
+    }
+
+    public void unshare(Collection<String> paths) {
+        for (String path : paths) {
+            Path file = canonical(path);
+            if (file != null) {
+                files.remove(file);
+            }
+        }
+    }
+
+    // The shared file the peer asked for, resolved, so it is the one opened even if the requested path changes
+    Path resolve(String path) throws FileNotFoundException {
+        Path file = null;
+        try {
+            file = Paths.get(path).toRealPath();
+        } catch (InvalidPathException | IOException e) {
+            // refused below like any file that is not shared
+        }
+        if (file == null || !files.contains(file)) {
+            throw new FileNotFoundException("File " + path + " is not shared!");
+        }
+        return file;
+    }
+
+    // a file registered before it exists is matched by its absolute path once it does, null for no path at all
+    private static Path canonical(String path) {
+        Path absolute;
+        try {
+            absolute = Paths.get(path).toAbsolutePath().normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        try {
+            return absolute.toRealPath();
+        } catch (IOException e) {
+            return absolute;
+        }
+    }
+}
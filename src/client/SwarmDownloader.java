@@ -0,0 +1,190 @@
+package client;
+
+import interfaces.Codec;
+import interfaces.DownloadListener;
+import interfaces.UserInterface;
+import messages.Response;
+import messages.ResponseStatus;
+import utils.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Downloads one file from every peer that has it: the file is split into fixed-size pieces, one worker per
+// peer takes pieces from a shared queue and writes them at their offset of the preallocated destination.
+// A failing peer puts its piece back and stops, so the remaining peers pick up its share.
+// Every piece is checked against the hashes published by the peers and recorded in a DownloadProgress
+// sidecar, so a corrupt piece is fetched again on its own and an interrupted download resumes where it stopped.
+// Connections come from a PeerConnectionPool, so consecutive downloads from the same peers skip the handshake.
+public class SwarmDownloader {
+    public static final int DEFAULT_PIECE_SIZE = 1024 * 1024;
+    private static final int MAX_PEERS = 8;
+    private static final int MAX_CORRUPT_PIECES_PER_PEER = 3;
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private final PeerConnectionPool connections;
+    private final int pieceSize;
+
+    public SwarmDownloader(Codec codec) {
+        this(codec, DEFAULT_PIECE_SIZE);
+    }
+
+    // Without a shared pool every connection is closed once its download is done
+    public SwarmDownloader(Codec codec, int pieceSize) {
+        this(new PeerConnectionPool(codec, PeerConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_PEER, 0), pieceSize);
+    }
+
+    public SwarmDownloader(PeerConnectionPool connections, int pieceSize) {
+        PieceHashes.checkPieceSize(pieceSize);
+        this.connections = connections;
+        this.pieceSize = pieceSize;
+    }
+
+    private record Metadata(long size, byte[][] hashes) {
+    }
+
+    public Response download(List<UserInterface> peers, String source, Path destination) throws IOException {
+        return download(peers, source, destination, DownloadListener.NONE);
+    }
+
+    // Interrupting the calling thread stops the download, the verified pieces are kept for a resume
+    public Response download(List<UserInterface> peers, String source, Path destination, DownloadListener listener)
+            throws IOException {
+        if (peers.isEmpty()) {
+            return new Response(ResponseStatus.ERROR, "No peer has registered " + source);
+        }
+        List<UserInterface> swarm = peers.subList(0, Math.min(peers.size(), MAX_PEERS));
+        Metadata metadata = fetchMetadata(swarm, source);
+        long size = metadata.size();
+
+        try (FileChannel file = FileChannel.open(destination, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+             DownloadProgress progress = DownloadProgress.open(destination, size, pieceSize, digestOf(metadata.hashes()))) {
+            preallocate(file, size);
+            BlockingQueue<Integer> pieces = new LinkedBlockingQueue<>();
+            for (int piece = 0; piece < metadata.hashes().length; piece++) {
+                if (!progress.isVerified(piece)) {
+                    pieces.add(piece);
+                }
+            }
+            listener.progress(source, progress.verifiedCount(), metadata.hashes().length);
+
+            ExecutorService workers = Executors.newFixedThreadPool(swarm.size());
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (UserInterface peer : swarm) {
+                    futures.add(workers.submit(() -> fetchPieces(peer, source, metadata, file, pieces, progress, listener)));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (Exception e) {
+                throw new IOException("Swarm download of " + source + " was interrupted", e);
+            } finally {
+                workers.shutdownNow();
+            }
+
+            if (!progress.isComplete()) {
+                return new Response(ResponseStatus.ERROR, "Every peer failed while downloading " + source + ", "
+                        + progress.verifiedCount() + " of " + metadata.hashes().length
+                        + " pieces were received. Repeat the download to resume it.");
+            }
+            progress.delete();
+        }
+        return new Response(ResponseStatus.OK, "File " + source + " downloaded successfully from " + swarm.size() + " peers");
+    }
+
+    private Metadata fetchMetadata(List<UserInterface> peers, String source) throws IOException {
+        IOException failure = null;
+        for (UserInterface peer : peers) {
+            try (PeerConnection connection = connections.acquire(peer.getHost(), peer.getPort())) {
+                long size = connection.size(source);
+                try {
+                    PieceHashes.checkPiecesCount(size, pieceSize);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Cannot download " + source + ": " + e.getMessage(), e);
+                }
+                byte[][] hashes = connection.hashes(source, pieceSize);
+                if (hashes.length != PieceHashes.piecesCount(size, pieceSize)) {
+                    throw new IOException("Peer " + peer + " sent " + hashes.length + " hashes for a file of " + size + " bytes");
+                }
+                return new Metadata(size, hashes);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        throw new IOException("None of the peers could describe " + source, failure);
+    }
+
+    private static byte[] digestOf(byte[][] hashes) {
+        MessageDigest digest = PieceHashes.newDigest();
+        for (byte[] hash : hashes) {
+            digest.update(hash);
+        }
+        return digest.digest();
+    }
+
+    private static void preallocate(FileChannel file, long size) throws IOException {
+        if (file.size() > size) {
+            file.truncate(size);
+        } else if (file.size() < size) {
+            file.write(ByteBuffer.allocate(1), size - 1);
+        }
+    }
+
+    private void fetchPieces(UserInterface peer, String source, Metadata metadata, FileChannel file,
+                             BlockingQueue<Integer> pieces, DownloadProgress progress, DownloadListener listener) {
+        Integer piece = null;
+        int corruptPieces = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(pieceSize);
+        MessageDigest digest = PieceHashes.newDigest();
+        try (PeerConnection connection = connections.acquire(peer.getHost(), peer.getPort())) {
+            while (!progress.isComplete()) {
+                piece = pieces.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (piece == null) {
+                    // the rest is in flight on other peers, keep waiting in case one of them fails
+                    continue;
+                }
+                long offset = (long) piece * pieceSize;
+                int length = (int) Math.min(pieceSize, metadata.size() - offset);
+                Response response = connection.downloadPiece(source, offset, length, file);
+                if (response.status() != ResponseStatus.OK) {
+                    throw new IOException(response.message());
+                }
+                if (!Arrays.equals(metadata.hashes()[piece], PieceHashes.hash(file, offset, length, buffer, digest))) {
+                    pieces.add(piece);
+                    piece = null;
+                    if (++corruptPieces == MAX_CORRUPT_PIECES_PER_PEER) {
+                        throw new IOException(corruptPieces + " pieces failed verification");
+                    }
+                    continue;
+                }
+                progress.markVerified(piece);
+                piece = null;
+                listener.progress(source, progress.verifiedCount(), metadata.hashes().length);
+            }
+        } catch (IOException e) {
+            // the piece in flight goes back to the queue for the other peers, a timed out one included
+            Log.error("Peer " + peer + " failed during download of " + source + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (piece != null) {
+                pieces.add(piece);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Byte budget refilled at a fixed rate up to a burst capacity. A taker short of tokens sleeps holding the
+// fair lock, so the takers behind it queue up and are served in arrival order: uploads taking one chunk at a
+// time get turns in rotation and share the rate equally, whatever their socket could take.
+class TokenBucket {
+    private final long bytesPerSecond;
+    private final long capacity;
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final LongAdder throttled;
+    private double tokens;
+    private long refilledAt;
+
+    // throttled counts the takes that found the bucket short and had to sleep
+    TokenBucket(long bytesPerSecond, long capacity, LongAdder throttled) {
+        if (bytesPerSecond < 1 || capacity < 1) {
+            throw new IllegalArgumentException("Rate and capacity should be positive");
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        this.capacity = capacity;
+        this.throttled = throttled;
+        this.tokens = capacity;
+        this.refilledAt = System.nanoTime();
+    }
+
+    long capacity() {
+        return capacity;
+    }
+
+    // Blocks until the bytes, at most the capacity, can be taken and returns the nanoseconds spent waiting
+    long take(long bytes) throws InterruptedException {
+        if (bytes > capacity) {
+            throw new IllegalArgumentException(bytes + " bytes is over the capacity of " + capacity);
+        }
+        long started = System.nanoTime();
+        lock.lockInterruptibly();
+        try {
+            refill(System.nanoTime());
+            if (tokens < bytes) {
+                throttled.increment();
+            }
+            while (tokens < bytes) {
+                TimeUnit.NANOSECONDS.sleep(Math.max(1, (long) ((bytes - tokens) * 1e9 / bytesPerSecond)));
+                refill(System.nanoTime());
+            }
+            tokens -= bytes;
+        } finally {
+            lock.unlock();
+        }
+        return System.nanoTime() - started;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * bytesPerSecond / 1e9);
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,242 @@
+package client;
+
+import command.Command;
+import command.CommandType;
+import interfaces.Codec;
+import interfaces.DownloadListener;
+import interfaces.UserInterface;
+import messages.Response;
+import messages.ResponseStatus;
+import utils.UserUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+// Non-blocking client of the tracker and the peers. Tracker commands are queued and sent by one thread,
+// which pipelines everything queued while the previous batch was in flight, so the answers come in the
+// order the commands were issued. Downloads are queued in a DownloadScheduler and run on virtual threads
+// with connections from a shared PeerConnectionPool, so downloads from different peers proceed together
+// and never hold up the tracker commands.
+public class TorrentClient implements Closeable {
+    public static final int DEFAULT_MAX_ACTIVE_DOWNLOADS = 8;
+    public static final int DEFAULT_MAX_DOWNLOADS_PER_PEER = 2;
+    private static final int MAX_BATCH_COMMANDS = 1024;
+
+    private final TrackerConnection tracker;
+    private final PeerConnectionPool connections;
+    private final SwarmDownloader downloader;
+    private final BlockingQueue<PendingCommand> commands = new LinkedBlockingQueue<>();
+    private final Thread sender;
+    private final ExecutorService downloads = Executors.newVirtualThreadPerTaskExecutor();
+    private final DownloadScheduler scheduler;
+    private volatile boolean closed;
+
+    private record PendingCommand(Command command, CompletableFuture<Response> response) {
+    }
+
+    public TorrentClient(TrackerConnection tracker, PeerConnectionPool connections, int pieceSize) {
+        this(tracker, connections, pieceSize, DEFAULT_MAX_ACTIVE_DOWNLOADS, DEFAULT_MAX_DOWNLOADS_PER_PEER);
+    }
+
+    public TorrentClient(TrackerConnection tracker, PeerConnectionPool connections, int pieceSize,
+                         int maxActiveDownloads, int maxDownloadsPerPeer) {
+        this.tracker = tracker;
+        this.connections = connections;
+        this.downloader = new SwarmDownloader(connections, pieceSize);
+        this.scheduler = new DownloadScheduler(downloads, maxActiveDownloads, maxDownloadsPerPeer);
+        this.sender = new Thread(this::sendCommands, "tracker-sender");
+        this.sender.setDaemon(true);
+        this.sender.start();
+    }
+
+    // Registry changes pushed after subscribe are handed to the listener on the sender thread
+    public static TorrentClient connect(InetSocketAddress tracker, Codec codec, Consumer<String> events) throws IOException {
+        return new TorrentClient(TrackerConnection.open(tracker, codec, events), new PeerConnectionPool(codec),
+                SwarmDownloader.DEFAULT_PIECE_SIZE);
+    }
+
+    public CompletableFuture<Response> send(Command command) {
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        if (closed) {
+            response.completeExceptionally(new IOException("Client is closed"));
+            return response;
+        }
+        PendingCommand pending = new PendingCommand(command, response);
+        commands.add(pending);
+        // close() may have drained the queue just before the add
+        if (closed && commands.remove(pending)) {
+            response.completeExceptionally(new IOException("Client is closed"));
+        }
+        return response;
+    }
+
+    public CompletableFuture<List<Response>> batch(List<Command> batch) {
+        List<CompletableFuture<Response>> responses = new ArrayList<>(batch.size());
+        for (Command command : batch) {
+            responses.add(send(command));
+        }
+        return CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> responses.stream().map(CompletableFuture::join).toList());
+    }
+
+    public CompletableFuture<Response> register(UserInterface user, Collection<String> files) {
+        return send(userCommand(CommandType.REGISTER, user, files));
+    }
+
+    public CompletableFuture<Response> unregister(UserInterface user, Collection<String> files) {
+        return send(userCommand(CommandType.UNREGISTER, user, files));
+    }
+
+    public CompletableFuture<Response> listFiles() {
+        return send(new Command(CommandType.LIST_FILES.commandName(), new String[0]));
+    }
+
+    public CompletableFuture<Response> listUsers() {
+        return send(new Command(CommandType.LIST_USERS.commandName(), new String[0]));
+    }
+
+    // Ends the session of this connection, so the user it registered leaves the tracker
+    public CompletableFuture<Response> disconnect() {
+        return send(new Command(CommandType.DISCONNECT.commandName(), new String[0]));
+    }
+
+    // The users that registered the path, or every file with that name; fails when the tracker refuses
+    public CompletableFuture<List<UserInterface>> whoHas(String path) {
+        return send(new Command(CommandType.WHO_HAS.commandName(), new String[]{path})).thenApply(response -> {
+            if (response.status() != ResponseStatus.OK) {
+                throw new IllegalArgumentException(response.message());
+            }
+            List<UserInterface> owners = new ArrayList<>();
+            for (String owner : response.message().split(System.lineSeparator())) {
+                if (!owner.isBlank()) {
+                    owners.add(UserUtils.processUser(owner.split("-")));
+                }
+            }
+            return owners;
+        });
+    }
+
+    public Download download(List<UserInterface> peers, String source, Path destination, DownloadListener listener) {
+        return download(peers, source, destination, DownloadPriority.NORMAL, listener);
+    }
+
+    // Queued behind the downloads of a higher priority and of files with fewer holders
+    public Download download(List<UserInterface> peers, String source, Path destination, DownloadPriority priority,
+                             DownloadListener listener) {
+        Download download = new Download(source, destination, priority, listener);
+        schedule(download, peers);
+        return download;
+    }
+
+    public Download swarmDownload(UserInterface self, String source, Path destination, DownloadListener listener) {
+        return swarmDownload(self, source, destination, DownloadPriority.NORMAL, listener);
+    }
+
+    // Asks the tracker for the owners of the source and downloads it from all of them except self
+    public Download swarmDownload(UserInterface self, String source, Path destination, DownloadPriority priority,
+                                  DownloadListener listener) {
+        Download download = new Download(source, destination, priority, listener);
+        whoHas(source).whenComplete((owners, failure) -> {
+            if (failure != null) {
+                download.result().completeExceptionally(failure);
+                return;
+            }
+            schedule(download, owners.stream().filter(owner -> !owner.equals(self)).toList());
+        });
+        return download;
+    }
+
+    public int queuedDownloads() {
+        return scheduler.queued();
+    }
+
+    public int activeDownloads() {
+        return scheduler.active();
+    }
+
+    public long createdConnections() {
+        return connections.createdConnections();
+    }
+
+    public long reusedConnections() {
+        return connections.reusedConnections();
+    }
+
+    // Stops the running downloads and fails the tracker commands that were not sent yet
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        sender.interrupt();
+        scheduler.close();
+        downloads.shutdownNow();
+        List<PendingCommand> unsent = new ArrayList<>();
+        commands.drainTo(unsent);
+        for (PendingCommand pending : unsent) {
+            pending.response().completeExceptionally(new IOException("Client is closed"));
+        }
+        connections.close();
+        tracker.close();
+    }
+
+    private void schedule(Download download, List<UserInterface> holders) {
+        scheduler.submit(download, holders, download.priority(),
+                peers -> downloader.download(peers, download.source(), download.destination(), download));
+    }
+
+    private void sendCommands() {
+        List<PendingCommand> batch = new ArrayList<>();
+        List<Command> batchCommands = new ArrayList<>();
+        while (!closed) {
+            try {
+                batch.add(commands.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            commands.drainTo(batch, MAX_BATCH_COMMANDS - 1);
+            for (PendingCommand pending : batch) {
+                batchCommands.add(pending.command());
+            }
+            try {
+                List<Response> responses = tracker.batch(batchCommands);
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).response().complete(responses.get(i));
+                }
+            } catch (IOException | RuntimeException e) {
+                for (PendingCommand pending : batch) {
+                    pending.response().completeExceptionally(e);
+                }
+                // the connection refuses everything from now on, the commands queued behind the batch fail with it
+                if (tracker.isBroken()) {
+                    batch.clear();
+                    commands.drainTo(batch);
+                    for (PendingCommand pending : batch) {
+                        pending.response().completeExceptionally(new IOException("Tracker connection failed", e));
+                    }
+                }
+            }
+            batch.clear();
+            batchCommands.clear();
+        }
+    }
+
+    private static Command userCommand(CommandType type, UserInterface user, Collection<String> files) {
+        String[] arguments = new String[files.size() + 1];
+        arguments[0] = user.toString();
+        int i = 1;
+        for (String file : files) {
+            arguments[i++] = file;
+        }
+        return new Command(type.commandName(), arguments);
+    }
+}
@@ -0,0 +1,126 @@
+package client;
+
+import command.Command;
+import interfaces.Codec;
+import messages.Frames;
+import messages.Response;
+import messages.ResponseStatus;
+import utils.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Blocking connection to the tracker that pipelines commands: batch() writes them back-to-back with one
+// gathering write and only then reads the answers, which the tracker sends in the same order, so a batch
+// costs a round trip instead of one per command. Commands go out in windows small enough to fit the socket
+// buffers, as the tracker stops reading from a client that does not read its answers. Registry changes
+// pushed after subscribe may arrive between the answers and are handed to the event listener. A batch that
+// fails once its commands are on the wire leaves answers unread, so the connection is closed and refuses
+// every later batch rather than hand those answers to the wrong commands.
+public class TrackerConnection implements Closeable {
+    private static final int MAX_WINDOW_COMMANDS = 256;
+    private static final int MAX_WINDOW_BYTES = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final Codec codec;
+    private final Consumer<String> events;
+    private boolean broken;
+
+    public TrackerConnection(SocketChannel channel, Codec codec, Consumer<String> events) throws IOException {
+        this.channel = channel;
+        this.codec = codec;
+        this.events = events;
+        // a pipelined window is sent in one write, Nagle would only delay the single commands
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    public static TrackerConnection open(InetSocketAddress tracker, Codec codec, Consumer<String> events) throws IOException {
+        SocketChannel channel = SocketChannel.open(tracker);
+        try {
+            return new TrackerConnection(channel, codec, events);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Response send(Command command) throws IOException {
+        return batch(List.of(command)).get(0);
+    }
+
+    // The answers in the order of the commands
+    public synchronized List<Response> batch(List<Command> commands) throws IOException {
+        if (broken) {
+            throw new IOException("Tracker connection was closed after a failed exchange");
+        }
+        // encoded in full first, so a command that cannot be sent fails the batch before any of it is written
+        List<ByteBuffer> frames = new ArrayList<>(commands.size());
+        for (Command command : commands) {
+            frames.add(codec.encode(command));
+        }
+        List<Response> responses = new ArrayList<>(commands.size());
+        List<ByteBuffer> window = new ArrayList<>();
+        int windowBytes = 0;
+        try {
+            for (ByteBuffer frame : frames) {
+                if (!window.isEmpty() && (window.size() == MAX_WINDOW_COMMANDS || windowBytes + frame.remaining() > MAX_WINDOW_BYTES)) {
+                    exchange(window, responses);
+                    window.clear();
+                    windowBytes = 0;
+                }
+                window.add(frame);
+                windowBytes += frame.remaining();
+            }
+            if (!window.isEmpty()) {
+                exchange(window, responses);
+            }
+        } catch (IOException | RuntimeException e) {
+            broken = true;
+            try {
+                channel.close();
+            } catch (IOException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+            throw e;
+        }
+        return responses;
+    }
+
+    // Whether a failed exchange closed the connection
+    public synchronized boolean isBroken() {
+        return broken;
+    }
+
+    private void exchange(List<ByteBuffer> window, List<Response> responses) throws IOException {
+        Frames.write(channel, window.toArray(new ByteBuffer[0]));
+        for (int i = 0; i < window.size(); i++) {
+            Response response = codec.decodeResponse(Frames.read(channel));
+            while (response.status() == ResponseStatus.EVENT) {
+                publish(response.message());
+                response = codec.decodeResponse(Frames.read(channel));
+            }
+            responses.add(response);
+        }
+    }
+
+    // The answers behind the event are still to be read, whatever the listener does with it
+    private void publish(String event) {
+        try {
+            events.accept(event);
+        } catch (RuntimeException e) {
+            Log.error("Registry event listener failed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,128 @@
+package client;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Upload rate limits of a MiniServer, in bytes per second: one for all uploads together and one for each
+// remote host, however many connections it opens, 0 meaning unlimited. A limited upload is sent in chunks,
+// each one taken first from its host's bucket and then from the global one, so a host at its own limit
+// waits without holding up the global queue, and the uploads below it share the global rate in turns.
+public class UploadThrottle {
+    public static final String RATE_PROPERTY = "torrent.upload.rate";
+    public static final String PEER_RATE_PROPERTY = "torrent.upload.peer-rate";
+    public static final UploadThrottle UNLIMITED = new UploadThrottle(0, 0, new Metrics());
+    static final int MAX_CHUNK_SIZE = 64 * 1024;
+    // a tenth of a second of the rate, so a host that was idle does not get a long burst over its limit
+    private static final long BURST_DIVISOR = 10;
+
+    private final long peerBytesPerSecond;
+    private final TokenBucket global;
+    private final Map<InetAddress, PeerBucket> peers = new HashMap<>();
+    private final LongAdder globalThrottled;
+    private final LongAdder peerThrottled;
+    private final LatencyHistogram waits;
+
+    private static final class PeerBucket {
+        private final TokenBucket bucket;
+        private int connections;
+
+        private PeerBucket(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+
+    public UploadThrottle(long globalBytesPerSecond, long peerBytesPerSecond, Metrics metrics) {
+        if (globalBytesPerSecond < 0 || peerBytesPerSecond < 0) {
+            throw new IllegalArgumentException("Upload rates should not be negative");
+        }
+        this.peerBytesPerSecond = peerBytesPerSecond;
+        this.globalThrottled = metrics.counter("upload.throttle.global.waits");
+        this.peerThrottled = metrics.counter("upload.throttle.peer.waits");
+        this.waits = metrics.histogram("upload.throttle.wait.nanos");
+        this.global = globalBytesPerSecond == 0 ? null : newBucket(globalBytesPerSecond, globalThrottled);
+        metrics.gauge("upload.throttle.peers", this::peersCount);
+    }
+
+    // Held by one connection of the host while it is open
+    public Lease lease(InetAddress peer) {
+        if (peerBytesPerSecond == 0) {
+            return new Lease(peer, null);
+        }
+        synchronized (peers) {
+            PeerBucket bucket = peers.computeIfAbsent(peer, key -> new PeerBucket(newBucket(peerBytesPerSecond, peerThrottled)));
+            bucket.connections++;
+            return new Lease(peer, bucket);
+        }
+    }
+
+    private int peersCount() {
+        synchronized (peers) {
+            return peers.size();
+        }
+    }
+
+    private static TokenBucket newBucket(long bytesPerSecond, LongAdder throttled) {
+        return new TokenBucket(bytesPerSecond, Math.max(1, bytesPerSecond / BURST_DIVISOR), throttled);
+    }
+
+    public class Lease implements Closeable {
+        private final InetAddress peer;
+        private final PeerBucket peerBucket;
+        private final long maxChunk;
+
+        private Lease(InetAddress peer, PeerBucket peerBucket) {
+            this.peer = peer;
+            this.peerBucket = peerBucket;
+            long maxChunk = MAX_CHUNK_SIZE;
+            if (peerBucket != null) {
+                maxChunk = Math.min(maxChunk, peerBucket.bucket.capacity());
+            }
+            if (global != null) {
+                maxChunk = Math.min(maxChunk, global.capacity());
+            }
+            this.maxChunk = maxChunk;
+        }
+
+        // Waits until the next chunk of the upload may be sent and returns its size, all the remaining
+        // bytes when nothing is limited
+        public long acquire(long remaining) throws InterruptedIOException {
+            if (peerBucket == null && global == null) {
+                return remaining;
+            }
+            long chunk = Math.min(remaining, maxChunk);
+            try {
+                long waited = 0;
+                if (peerBucket != null) {
+                    waited += peerBucket.bucket.take(chunk);
+                }
+                if (global != null) {
+                    waited += global.take(chunk);
+                }
+                waits.record(waited);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for upload bandwidth");
+            }
+            return chunk;
+        }
+
+        @Override
+        public void close() {
+            if (peerBucket == null) {
+                return;
+            }
+            synchronized (peers) {
+                if (--peerBucket.connections == 0) {
+                    peers.remove(peer);
+                }
+            }
+        }
+    }
+}
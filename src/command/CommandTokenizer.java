@@ -0,0 +1,201 @@
+package command;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Splits a command line on the spaces outside double quotes, without copying the input: only the token
+// boundaries are recorded, the tokens are read through reusable views and turned into Strings only by
+// token()/newCommand() for the arguments that are kept. Text in a ByteBuffer is UTF-8, where space and
+// quote bytes never occur inside a multi-byte character. Not thread-safe, reset() reuses the instance.
+public class CommandTokenizer {
+    private static final int INITIAL_TOKENS = 8;
+    private static final String[] NO_ARGUMENTS = new String[0];
+
+    private CharSequence text;
+    private ByteBuffer bytes;
+    private int[] starts = new int[INITIAL_TOKENS];
+    private int[] ends = new int[INITIAL_TOKENS];
+    // tokens with quotes have to skip them when read
+    private boolean[] quoted = new boolean[INITIAL_TOKENS];
+    private int count;
+    private final TokenView view = new TokenView();
+
+    public CommandTokenizer reset(CharSequence input) {
+        text = input;
+        bytes = null;
+        tokenize(0, input.length());
+        return this;
+    }
+
+    // Tokenizes the remaining bytes of the buffer, which must not change while the tokens are read
+    public CommandTokenizer reset(ByteBuffer input) {
+        text = null;
+        bytes = input;
+        tokenize(input.position(), input.limit());
+        return this;
+    }
+
+    // The first token is the command name, so this is never less than one
+    public int tokenCount() {
+        return count;
+    }
+
+    public int argumentCount() {
+        return count - 1;
+    }
+
+    // A view of the token valid until the next reset(), without the quotes. Only ASCII bytes are read
+    // as they are from a ByteBuffer, use token() for anything else.
+    public CharSequence view(int index) {
+        checkIndex(index);
+        view.index = index;
+        return view;
+    }
+
+    public boolean tokenEquals(int index, String value) {
+        checkIndex(index);
+        if (!quoted[index] && ends[index] - starts[index] != value.length()) {
+            return false;
+        }
+        return contentEquals(view(index), value);
+    }
+
+    public String token(int index) {
+        checkIndex(index);
+        int start = starts[index];
+        int end = ends[index];
+        if (text != null) {
+            if (!quoted[index]) {
+                return text.subSequence(start, end).toString();
+            }
+            StringBuilder token = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                if (c != '"') {
+                    token.append(c);
+                }
+            }
+            return token.toString();
+        }
+        byte[] token = new byte[end - start];
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            byte b = bytes.get(i);
+            if (b != '"') {
+                token[length++] = b;
+            }
+        }
+        return new String(token, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // The command name comes from CommandType when it is a known one, so it is not allocated
+    public Command newCommand() {
+        CommandType type = CommandType.fromName(view(0));
+        String name = type == CommandType.UNKNOWN ? token(0) : type.commandName();
+        if (count == 1) {
+            return new Command(name, NO_ARGUMENTS);
+        }
+        String[] arguments = new String[count - 1];
+        for (int i = 1; i < count; i++) {
+            arguments[i - 1] = token(i);
+        }
+        return new Command(name, arguments);
+    }
+
+    private void tokenize(int from, int to) {
+        count = 0;
+        int start = from;
+        boolean insideQuote = false;
+        boolean hasQuote = false;
+        for (int i = from; i < to; i++) {
+            char c = charAt(i);
+            if (c == '"') {
+                insideQuote = !insideQuote;
+                hasQuote = true;
+            } else if (c == ' ' && !insideQuote) {
+                add(start, i, hasQuote);
+                start = i + 1;
+                hasQuote = false;
+            }
+        }
+        add(start, to, hasQuote);
+    }
+
+    private char charAt(int index) {
+        return text != null ? text.charAt(index) : (char) (bytes.get(index) & 0xFF);
+    }
+
+    private void add(int start, int end, boolean hasQuote) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+            quoted = Arrays.copyOf(quoted, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        quoted[count] = hasQuote;
+        count++;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Token " + index + " of " + count);
+        }
+    }
+
+    private static boolean contentEquals(CharSequence token, String value) {
+        if (token.length() != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (token.charAt(i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private class TokenView implements CharSequence {
+        private int index;
+
+        @Override
+        public int length() {
+            if (!quoted[index]) {
+                return ends[index] - starts[index];
+            }
+            int length = 0;
+            for (int i = starts[index]; i < ends[index]; i++) {
+                if (CommandTokenizer.this.charAt(i) != '"') {
+                    length++;
+                }
+            }
+            return length;
+        }
+
+        @Override
+        public char charAt(int position) {
+            if (!quoted[index]) {
+                return CommandTokenizer.this.charAt(starts[index] + position);
+            }
+            int remaining = position;
+            for (int i = starts[index]; i < ends[index]; i++) {
+                char c = CommandTokenizer.this.charAt(i);
+                if (c != '"' && remaining-- == 0) {
+                    return c;
+                }
+            }
+            throw new IndexOutOfBoundsException(position);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return token(index);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package command;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public enum CommandType {
+    UNKNOWN(0, null),
+    REGISTER(1, "register"),
+    UNREGISTER(2, "unregister"),
+    LIST_FILES(3, "list-files"),
+    LIST_USERS(4, "list-users"),
+    DISCONNECT(5, "disconnect"),
+    DOWNLOAD(6, "download"),
+    QUIT(7, "quit"),
+    WHO_HAS(8, "who-has"),
+    SIZE(9, "size"),
+    PIECE(10, "piece"),
+    HASHES(11, "hashes"),
+    LIST_USERS_SINCE(12, "list-users-since"),
+    SUBSCRIBE(13, "subscribe"),
+    UNSUBSCRIBE(14, "unsubscribe"),
+    STATS(15, "stats"),
+    HEARTBEAT(16, "heartbeat");
+
+    private static final CommandType[] BY_OPCODE = new CommandType[values().length];
+    private static final Map<String, CommandType> BY_NAME = new HashMap<>();
+
+    static {
+        for (CommandType type : values()) {
+            BY_OPCODE[type.opcode] = type;
+            if (type.commandName != null) {
+                BY_NAME.put(type.commandName, type);
+            }
+        }
+    }
+
+    private final byte opcode;
+    private final String commandName;
+
+    CommandType(int opcode, String commandName) {
+        this.opcode = (byte) opcode;
+        this.commandName = commandName;
+    }
+
+    public byte opcode() {
+        return opcode;
+    }
+
+    public String commandName() {
+        return commandName;
+    }
+
+    public static CommandType fromName(String name) {
+        return BY_NAME.getOrDefault(name, UNKNOWN);
+    }
+
+    // Lookup by a token view, without turning it into a String first
+    public static CommandType fromName(CharSequence name) {
+        if (name instanceof String value) {
+            return fromName(value);
+        }
+        for (int i = 1; i < BY_OPCODE.length; i++) {
+            if (CharSequence.compare(BY_OPCODE[i].commandName, name) == 0) {
+                return BY_OPCODE[i];
+            }
+        }
+        return UNKNOWN;
+    }
+
+    public static CommandType fromOpcode(byte opcode) {
+        if (opcode < 0 || opcode >= BY_OPCODE.length) {
+            throw new IllegalArgumentException("Unknown command opcode: " + opcode);
+        }
+        return BY_OPCODE[opcode];
+    }
+}
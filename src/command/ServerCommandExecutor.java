@@ -1,17 +1,31 @@
 package command;
 
+import interfaces.EventPublisher;
 import interfaces.Executor;
 import interfaces.Storage;
 import interfaces.UserInterface;
+import messages.RegistryEvent;
 import messages.Request;
 import messages.Response;
 import messages.ResponseStatus;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import storage.FileOwnerIndex;
+import storage.RegistryChangeLog;
 import utils.UserUtils;
 
 import java.nio.channels.SocketChannel;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 
 public class ServerCommandExecutor implements Executor {
     private static final String INVALID_ARGS_COUNT_MESSAGE_FORMAT =
@@ -22,23 +36,102 @@ public class ServerCommandExecutor implements Executor {
     private static final String LIST_FILES = "list-files";
     private static final String LIST_USERS = "list-users";
     private static final String DISCONNECT = "disconnect";
+    private static final String WHO_HAS = "who-has";
+    private static final String LIST_USERS_SINCE = "list-users-since";
+    private static final String SUBSCRIBE = "subscribe";
+    private static final String UNSUBSCRIBE = "unsubscribe";
+    private static final String STATS = "stats";
+    private static final String HEARTBEAT = "heartbeat";
+    private static final String LIMIT_ARGUMENT = "limit=";
+    private static final String CURSOR_ARGUMENT = "cursor=";
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int USER_LOCK_STRIPES = 256;
+    private static final Set<CommandType> SERVED = EnumSet.of(CommandType.REGISTER, CommandType.UNREGISTER,
+            CommandType.LIST_FILES, CommandType.LIST_USERS, CommandType.DISCONNECT, CommandType.WHO_HAS,
+            CommandType.LIST_USERS_SINCE, CommandType.SUBSCRIBE, CommandType.UNSUBSCRIBE, CommandType.STATS,
+            CommandType.HEARTBEAT);
 
     private final Storage<UserInterface, Set<String>> fileStorage;
     private final Storage<SocketChannel, UserInterface> sessionStorage;
+    private final Storage<String, Set<UserInterface>> ownerIndex;
+    private final RegistryChangeLog changeLog;
+    private final EventPublisher events;
+    private final Metrics metrics;
+    // indexed by CommandType ordinal
+    private final LatencyHistogram[] latencies = new LatencyHistogram[CommandType.values().length];
+    private final LongAdder[] errors = new LongAdder[CommandType.values().length];
+    // A user's membership change and the index updates that go with it are made under the user's stripe,
+    // so two reactors changing the same user cannot interleave them; readers stay lock-free.
+    private final Object[] userLocks = new Object[USER_LOCK_STRIPES];
+    // The live sessions of each user, changed under the user's stripe: a user who re-registered on a new
+    // socket stays in the registry when the lease of the old one runs out
+    private final Map<UserInterface, Set<SocketChannel>> sessionsByUser = new ConcurrentHashMap<>();
 
     public ServerCommandExecutor(Storage<UserInterface, Set<String>> fileStorage, Storage<SocketChannel, UserInterface> sessionStorage) {
+        this(fileStorage, sessionStorage, new FileOwnerIndex(), new RegistryChangeLog(), EventPublisher.NONE);
+    }
+
+    public ServerCommandExecutor(Storage<UserInterface, Set<String>> fileStorage, Storage<SocketChannel, UserInterface> sessionStorage,
+                                 Storage<String, Set<UserInterface>> ownerIndex, RegistryChangeLog changeLog,
+                                 EventPublisher events) {
+        this(fileStorage, sessionStorage, ownerIndex, changeLog, events, new Metrics());
+    }
+
+    public ServerCommandExecutor(Storage<UserInterface, Set<String>> fileStorage, Storage<SocketChannel, UserInterface> sessionStorage,
+                                 Storage<String, Set<UserInterface>> ownerIndex, RegistryChangeLog changeLog,
+                                 EventPublisher events, Metrics metrics) {
         this.fileStorage = fileStorage;
         this.sessionStorage = sessionStorage;
+        this.ownerIndex = ownerIndex;
+        this.changeLog = changeLog;
+        this.events = events;
+        this.metrics = metrics;
+        for (int i = 0; i < userLocks.length; i++) {
+            userLocks[i] = new Object();
+        }
+        // peer commands sent to the tracker are counted as unknown ones
+        for (CommandType type : CommandType.values()) {
+            String name = SERVED.contains(type) ? type.commandName() : "unknown";
+            latencies[type.ordinal()] = metrics.histogram("command." + name + ".nanos");
+            errors[type.ordinal()] = metrics.counter("command." + name + ".errors");
+        }
+        // the user count walks the skip list, which is fine for the occasional dump
+        metrics.gauge("registry.users", () -> fileStorage.getKeys().size());
+        metrics.gauge("registry.paths", () -> ownerIndex.getKeys().size());
+        metrics.gauge("registry.version", changeLog::version);
+        // storage recovered from disk comes without the derived index
+        for (UserInterface user : fileStorage.getKeys()) {
+            Set<UserInterface> owner = Set.of(user);
+            for (String file : fileStorage.listValues(user)) {
+                ownerIndex.addValues(file, owner);
+            }
+        }
     }
 
     public Response execute(Request request) {
-        Command cmd = request.command();
+        long started = System.nanoTime();
+        Response response = dispatch(request.command(), request);
+        int type = CommandType.fromName(request.command().command()).ordinal();
+        latencies[type].record(System.nanoTime() - started);
+        if (response.status() == ResponseStatus.ERROR) {
+            errors[type].increment();
+        }
+        return response;
+    }
+
+    private Response dispatch(Command cmd, Request request) {
         return switch (cmd.command()) {
             case REGISTER -> register(request);
             case UNREGISTER -> unregister(request);
             case LIST_FILES -> listFiles(request);
             case LIST_USERS -> listUsers(request);
             case DISCONNECT -> disconnect(request);
+            case WHO_HAS -> whoHas(request);
+            case LIST_USERS_SINCE -> listUsersSince(request);
+            case SUBSCRIBE -> subscribe(request);
+            case UNSUBSCRIBE -> unsubscribe(request);
+            case STATS -> stats(request);
+            case HEARTBEAT -> heartbeat(request);
             default -> new Response(ResponseStatus.ERROR, "Unknown command");
         };
     }
@@ -52,8 +145,32 @@ public class ServerCommandExecutor implements Executor {
             String[] userData = arguments[0].split("-");
             UserInterface user = UserUtils.processUser(userData);
             Set<String> files = new HashSet<>(Arrays.asList(arguments).subList(1, arguments.length));
-            fileStorage.addValues(user, files);
-            sessionStorage.addValues(request.session(), user);
+            UserInterface previous = sessionStorage.listValues(request.session());
+            // the session now speaks for another user, the one it registered before leaves with its last session
+            if (previous != null && !previous.equals(user)) {
+                synchronized (lockOf(previous)) {
+                    if (!forgetSession(previous, request.session())) {
+                        leave(previous);
+                    }
+                }
+            }
+            synchronized (lockOf(user)) {
+                boolean joined = !fileStorage.getKeys().contains(user);
+                fileStorage.addValues(user, files);
+                if (joined) {
+                    changeLog.append(RegistryChangeLog.ChangeType.JOINED, user);
+                    events.publish(new RegistryEvent(RegistryEvent.Type.USER_JOINED, user, Set.of()));
+                }
+                Set<UserInterface> owner = Set.of(user);
+                for (String file : files) {
+                    ownerIndex.addValues(file, owner);
+                }
+                events.publish(new RegistryEvent(RegistryEvent.Type.FILES_REGISTERED, user, files));
+                sessionStorage.addValues(request.session(), user);
+                if (request.session() != null) {
+                    sessionsByUser.computeIfAbsent(user, key -> new HashSet<>()).add(request.session());
+                }
+            }
             return new Response(ResponseStatus.OK, "Files are successfully registered for downloading for user: " + user);
         } catch (IllegalArgumentException exception) {
             return new Response(ResponseStatus.ERROR, exception.getMessage());
@@ -68,11 +185,18 @@ public class ServerCommandExecutor implements Executor {
             }
             String[] userData = arguments[0].split("-");
             UserInterface user = UserUtils.processUser(userData);
-            if (!fileStorage.getKeys().contains(user)) {
-                throw new IllegalArgumentException("User " + user + " does not exist");
-            }
             Set<String> files = new HashSet<>(Arrays.asList(arguments).subList(1, arguments.length));
-            fileStorage.removeValues(user, files);
+            synchronized (lockOf(user)) {
+                if (!fileStorage.getKeys().contains(user)) {
+                    throw new IllegalArgumentException("User " + user + " does not exist");
+                }
+                fileStorage.removeValues(user, files);
+                Set<UserInterface> owner = Set.of(user);
+                for (String file : files) {
+                    ownerIndex.removeValues(file, owner);
+                }
+                events.publish(new RegistryEvent(RegistryEvent.Type.FILES_UNREGISTERED, user, files));
+            }
             return new Response(ResponseStatus.OK, "Files are successfully unregistered for downloading from user: " + user);
         } catch (NumberFormatException exception) {
             return new Response(ResponseStatus.ERROR, "User data format is invalid. It should be following format: <username> - <host:port>");
@@ -84,23 +208,15 @@ public class ServerCommandExecutor implements Executor {
     private Response listFiles(Request request) {
         try {
             String[] arguments = request.command().arguments();
-            if (arguments.length != 0) {
-                throw new IllegalArgumentException(LIST_FILES + " command does not require any arguments.");
-            }
-            Set<UserInterface> users = fileStorage.getKeys();
-            StringBuilder filesLog = new StringBuilder();
-            long i = 0;
-            for (UserInterface user : users) {
-                filesLog.append(user);
-                filesLog.append(" : ");
-                Set<String> userFiles = fileStorage.listValues(user);
-                filesLog.append(userFiles);
-                if (i != users.size() - 1) {
-                    filesLog.append(System.lineSeparator());
-                }
-                i++;
+            if (arguments.length > 0 && !arguments[0].startsWith(LIMIT_ARGUMENT) && !arguments[0].startsWith(CURSOR_ARGUMENT)) {
+                return listFilesWithPrefix(arguments);
             }
-            if (users.isEmpty()) {
+            StringBuilder filesLog = listPage(LIST_FILES, arguments, (log, user) -> {
+                log.append(user);
+                log.append(" : ");
+                log.append(fileStorage.listValues(user));
+            });
+            if (filesLog.isEmpty()) {
                 filesLog.append("[]");
             }
             return new Response(ResponseStatus.OK, filesLog.toString());
@@ -109,21 +225,203 @@ public class ServerCommandExecutor implements Executor {
         }
     }
 
+    // list-files <prefix> [limit=<count>] answers with one "<path> : [owners]" line per registered path
+    // starting with the prefix, in path order.
+    private Response listFilesWithPrefix(String[] arguments) {
+        int limit = Integer.MAX_VALUE;
+        for (int i = 1; i < arguments.length; i++) {
+            if (!arguments[i].startsWith(LIMIT_ARGUMENT)) {
+                throw new IllegalArgumentException(LIST_FILES + " <prefix> command accepts only an optional "
+                        + LIMIT_ARGUMENT + "<count> argument.");
+            }
+            limit = parseLimit(arguments[i].substring(LIMIT_ARGUMENT.length()));
+        }
+        StringBuilder filesLog = new StringBuilder();
+        for (String path : ownerIndex.getKeysWithPrefix(arguments[0], limit)) {
+            if (!filesLog.isEmpty()) {
+                filesLog.append(System.lineSeparator());
+            }
+            filesLog.append(path).append(" : ").append(ownerIndex.listValues(path));
+        }
+        if (filesLog.isEmpty()) {
+            filesLog.append("[]");
+        }
+        return new Response(ResponseStatus.OK, filesLog.toString());
+    }
+
     private Response listUsers(Request request) {
+        try {
+            String[] arguments = request.command().arguments();
+            StringBuilder usersLog = listPage(LIST_USERS, arguments, StringBuilder::append);
+            return new Response(ResponseStatus.OK, usersLog.toString());
+        } catch (IllegalArgumentException exception) {
+            return new Response(ResponseStatus.ERROR, exception.getMessage());
+        }
+    }
+
+    // Appends one line per user in storage order, starting after the cursor and stopping at the limit.
+    // When users remain, the last line is the cursor=<user> argument that continues the listing.
+    private StringBuilder listPage(String command, String[] arguments, BiConsumer<StringBuilder, UserInterface> appender) {
+        int limit = Integer.MAX_VALUE;
+        UserInterface cursor = null;
+        for (String argument : arguments) {
+            if (argument.startsWith(LIMIT_ARGUMENT)) {
+                limit = parseLimit(argument.substring(LIMIT_ARGUMENT.length()));
+            } else if (argument.startsWith(CURSOR_ARGUMENT)) {
+                cursor = UserUtils.processUser(argument.substring(CURSOR_ARGUMENT.length()).split("-"));
+            } else {
+                throw new IllegalArgumentException(command + " command accepts only optional "
+                        + LIMIT_ARGUMENT + "<count> and " + CURSOR_ARGUMENT + "<user> arguments.");
+            }
+        }
+
+        // the key set is a live view, so its size may change while iterating
+        StringBuilder log = new StringBuilder();
+        UserInterface last = null;
+        int count = 0;
+        for (UserInterface user : fileStorage.getKeysAfter(cursor)) {
+            if (count == limit) {
+                log.append(System.lineSeparator()).append(CURSOR_ARGUMENT).append(last);
+                break;
+            }
+            if (!log.isEmpty()) {
+                log.append(System.lineSeparator());
+            }
+            appender.accept(log, user);
+            last = user;
+            count++;
+        }
+        return log;
+    }
+
+    private static int parseLimit(String limit) {
+        try {
+            int value = Integer.parseInt(limit);
+            if (value < 1 || value > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("Limit should be between 1 and " + MAX_PAGE_SIZE);
+            }
+            return value;
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("Limit is not integer");
+        }
+    }
+
+    private Response disconnect(Request request) {
         try {
             String[] arguments = request.command().arguments();
             if (arguments.length != 0) {
-                throw new IllegalArgumentException(LIST_USERS + " command does not require any arguments.");
+                throw new IllegalArgumentException(DISCONNECT + " command does not require any arguments.");
             }
-            Set<UserInterface> users = fileStorage.getKeys();
+            UserInterface user = endSession(request.session());
+            return new Response(ResponseStatus.OK, user + "'s session has been terminated!");
+        } catch (IllegalArgumentException exception) {
+            return new Response(ResponseStatus.ERROR, exception.getMessage());
+        }
+    }
+
+    // Only the registry is persisted, the sessions and the derived index are rebuilt after a restart
+    @Override
+    public CompletableFuture<Void> whenDurable() {
+        return fileStorage.whenDurable();
+    }
+
+    // Evicts the sessions together, e.g. all those whose leases ran out in one tick
+    @Override
+    public void disconnectAll(Collection<SocketChannel> sessions) {
+        for (SocketChannel session : sessions) {
+            endSession(session);
+        }
+    }
+
+    // Removes the session and its user with the user's owner index entries, as one step under the user's stripe
+    private UserInterface endSession(SocketChannel session) {
+        events.unsubscribe(session);
+        UserInterface user = sessionStorage.listValues(session);
+        if (user == null) {
+            sessionStorage.remove(session);
+            return null;
+        }
+        synchronized (lockOf(user)) {
+            sessionStorage.remove(session);
+            if (!forgetSession(user, session)) {
+                leave(user);
+            }
+        }
+        return user;
+    }
+
+    // Removes the user with its owner index entries; called under the user's stripe
+    private void leave(UserInterface user) {
+        Set<String> files = fileStorage.remove(user);
+        if (files != null) {
+            changeLog.append(RegistryChangeLog.ChangeType.LEFT, user);
+            events.publish(new RegistryEvent(RegistryEvent.Type.USER_LEFT, user, Set.of()));
+            Set<UserInterface> owner = Set.of(user);
+            for (String file : files) {
+                ownerIndex.removeValues(file, owner);
+            }
+        }
+    }
+
+    // Returns whether the user still has other live sessions; called under the user's stripe
+    private boolean forgetSession(UserInterface user, SocketChannel session) {
+        Set<SocketChannel> sessions = sessionsByUser.get(user);
+        if (sessions == null) {
+            return false;
+        }
+        sessions.remove(session);
+        if (sessions.isEmpty()) {
+            sessionsByUser.remove(user);
+            return false;
+        }
+        return true;
+    }
+
+    private Object lockOf(UserInterface user) {
+        return userLocks[Math.floorMod(user.hashCode(), userLocks.length)];
+    }
+
+    // Any command renews the lease of the session, this one exists for peers with nothing else to say
+    private Response heartbeat(Request request) {
+        if (request.command().arguments().length != 0) {
+            return new Response(ResponseStatus.ERROR, HEARTBEAT + " command does not require any arguments.");
+        }
+        return new Response(ResponseStatus.OK, "Lease renewed");
+    }
+
+    // First line is version=<v> followed by the +user/-user changes since the requested version, or
+    // snapshot=<v> followed by +user for everyone when those changes are no longer retained.
+    private Response listUsersSince(Request request) {
+        try {
+            String[] arguments = request.command().arguments();
+            if (arguments.length != 1) {
+                throw new IllegalArgumentException(LIST_USERS_SINCE + " command expects exactly one argument: <version>");
+            }
+            long since;
+            try {
+                since = Long.parseLong(arguments[0]);
+            } catch (NumberFormatException exception) {
+                throw new IllegalArgumentException("Version is not integer");
+            }
+
             StringBuilder usersLog = new StringBuilder();
-            long i = 0L;
-            for (UserInterface user : users) {
-                usersLog.append(user);
-                if (i != users.size() - 1) {
-                    usersLog.append(System.lineSeparator());
+            long version = changeLog.version();
+            List<RegistryChangeLog.Change> changes = changeLog.changesSince(since);
+            if (changes == null) {
+                // read before the users, so changes racing with the snapshot are sent again next time
+                usersLog.append("snapshot=").append(version);
+                for (UserInterface user : fileStorage.getKeys()) {
+                    usersLog.append(System.lineSeparator()).append('+').append(user);
                 }
-                i++;
+                return new Response(ResponseStatus.OK, usersLog.toString());
+            }
+
+            version = changes.isEmpty() ? since : changes.get(changes.size() - 1).version();
+            usersLog.append("version=").append(version);
+            for (RegistryChangeLog.Change change : changes) {
+                usersLog.append(System.lineSeparator())
+                        .append(change.type() == RegistryChangeLog.ChangeType.JOINED ? '+' : '-')
+                        .append(change.user());
             }
             return new Response(ResponseStatus.OK, usersLog.toString());
         } catch (IllegalArgumentException exception) {
@@ -131,15 +429,50 @@ public class ServerCommandExecutor implements Executor {
         }
     }
 
-    private Response disconnect(Request request) {
+    // Pushed EVENT responses follow on this session until unsubscribe or disconnect,
+    // one line per change: joined/left <user>, registered/unregistered <user> <file>... or resync.
+    private Response subscribe(Request request) {
+        try {
+            if (request.command().arguments().length != 0) {
+                throw new IllegalArgumentException(SUBSCRIBE + " command does not require any arguments.");
+            }
+            events.subscribe(request.session());
+            return new Response(ResponseStatus.OK, "Subscribed to registry changes, version=" + changeLog.version());
+        } catch (IllegalArgumentException | UnsupportedOperationException exception) {
+            return new Response(ResponseStatus.ERROR, exception.getMessage());
+        }
+    }
+
+    private Response unsubscribe(Request request) {
+        if (request.command().arguments().length != 0) {
+            return new Response(ResponseStatus.ERROR, UNSUBSCRIBE + " command does not require any arguments.");
+        }
+        events.unsubscribe(request.session());
+        return new Response(ResponseStatus.OK, "Unsubscribed from registry changes");
+    }
+
+    // One "<name> <value>" line per metric, histograms as "<name> count=.. mean=.. p50=.. p99=.. p999=.. max=..".
+    private Response stats(Request request) {
+        if (request.command().arguments().length != 0) {
+            return new Response(ResponseStatus.ERROR, STATS + " command does not require any arguments.");
+        }
+        return new Response(ResponseStatus.OK, metrics.dump());
+    }
+
+    private Response whoHas(Request request) {
         try {
             String[] arguments = request.command().arguments();
-            if (arguments.length != 0) {
-                throw new IllegalArgumentException(DISCONNECT + " command does not require any arguments.");
+            if (arguments.length != 1) {
+                throw new IllegalArgumentException(WHO_HAS + " command expects exactly one argument: <path to file or file name>");
             }
-            UserInterface user = sessionStorage.remove(request.session());
-            fileStorage.remove(user);
-            return new Response(ResponseStatus.OK, user + "'s session has been terminated!");
+            StringBuilder ownersLog = new StringBuilder();
+            for (UserInterface owner : ownerIndex.listValues(arguments[0])) {
+                if (!ownersLog.isEmpty()) {
+                    ownersLog.append(System.lineSeparator());
+                }
+                ownersLog.append(owner);
+            }
+            return new Response(ResponseStatus.OK, ownersLog.toString());
         } catch (IllegalArgumentException exception) {
             return new Response(ResponseStatus.ERROR, exception.getMessage());
         }
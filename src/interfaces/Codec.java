@@ -0,0 +1,14 @@
+package interfaces;
+
+import command.Command;
+import messages.Response;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public interface Codec {
+    ByteBuffer encode(Command command);
+    Command decodeCommand(ByteBuffer payload) throws IOException;
+    ByteBuffer encode(Response response);
+    Response decodeResponse(ByteBuffer payload) throws IOException;
+}
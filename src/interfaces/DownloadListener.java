@@ -0,0 +1,10 @@
+package interfaces;
+
+// Told about every verified piece of a download, from the threads fetching the pieces, so the calls for one
+// download may overlap and should not block.
+public interface DownloadListener {
+    DownloadListener NONE = (source, verifiedPieces, totalPieces) -> {
+    };
+
+    void progress(String source, int verifiedPieces, int totalPieces);
+}
@@ -0,0 +1,26 @@
+package interfaces;
+
+import messages.RegistryEvent;
+
+import java.nio.channels.SocketChannel;
+
+public interface EventPublisher {
+    EventPublisher NONE = new EventPublisher() {
+        @Override
+        public void subscribe(SocketChannel session) {
+            throw new UnsupportedOperationException("Subscriptions are not supported");
+        }
+
+        @Override
+        public void unsubscribe(SocketChannel session) {
+        }
+
+        @Override
+        public void publish(RegistryEvent event) {
+        }
+    };
+
+    void subscribe(SocketChannel session);
+    void unsubscribe(SocketChannel session);
+    void publish(RegistryEvent event);
+}
@@ -1,10 +1,27 @@
 package interfaces;
 
+import command.CommandCreator;
 import messages.Request;
 import messages.Response;
 
 import java.io.FileNotFoundException;
+import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 
 public interface Executor {
     Response execute(Request request) throws FileNotFoundException;
+
+    // Completes once the changes made by the commands this thread executed since its previous call are
+    // durable, null when there is nothing to wait for; the answers to those commands are held until then
+    default CompletableFuture<Void> whenDurable() {
+        return null;
+    }
+
+    // Ends the sessions as if each of them had sent disconnect
+    default void disconnectAll(Collection<SocketChannel> sessions) throws FileNotFoundException {
+        for (SocketChannel session : sessions) {
+            execute(new Request(session, CommandCreator.newCommand("disconnect")));
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package interfaces;
 
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public interface Storage<K,V> {
     Set<K> getKeys();
@@ -8,4 +9,23 @@ public interface Storage<K,V> {
     V listValues(K key);
     void addValues(K key, V value);
     void removeValues(K key, V value);
+
+    // Keys in a stable order, strictly after the given one (all keys for null)
+    default Set<K> getKeysAfter(K key) {
+        if (key == null) {
+            return getKeys();
+        }
+        throw new UnsupportedOperationException("Keys of this storage are not ordered");
+    }
+
+    // Completes once the changes the calling thread made since its previous call are durable, null when none
+    // of them is still waiting for the disk, as with a storage kept only in memory
+    default CompletableFuture<Void> whenDurable() {
+        return null;
+    }
+
+    // At most limit keys whose string form starts with the prefix
+    default Set<K> getKeysWithPrefix(String prefix, int limit) {
+        throw new UnsupportedOperationException("Keys of this storage cannot be searched by prefix");
+    }
 }
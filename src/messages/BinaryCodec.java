@@ -0,0 +1,112 @@
+package messages;
+
+import command.Command;
+import command.CommandType;
+import interfaces.Codec;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Command frame:  <opcode:1>[<name:str> if UNKNOWN]<argc:2>{<arg:str>}
+// Response frame: <status:1><message as UTF-8 up to the end of the frame>
+// where str is <length:2><UTF-8 bytes>
+public class BinaryCodec implements Codec {
+    private static final int MAX_STRING_LENGTH = 0xFFFF;
+    private static final ResponseStatus[] STATUSES = ResponseStatus.values();
+
+    @Override
+    public ByteBuffer encode(Command command) {
+        CommandType type = CommandType.fromName(command.command());
+        String[] arguments = command.arguments();
+        byte[] name = type == CommandType.UNKNOWN ? utf8(command.command()) : null;
+        byte[][] encodedArguments = new byte[arguments.length][];
+
+        int size = Byte.BYTES + Short.BYTES;
+        if (name != null) {
+            size += Short.BYTES + name.length;
+        }
+        for (int i = 0; i < arguments.length; i++) {
+            encodedArguments[i] = utf8(arguments[i]);
+            size += Short.BYTES + encodedArguments[i].length;
+        }
+
+        ByteBuffer frame = Frames.allocate(size);
+        frame.put(type.opcode());
+        if (name != null) {
+            putString(frame, name);
+        }
+        frame.putShort((short) arguments.length);
+        for (byte[] argument : encodedArguments) {
+            putString(frame, argument);
+        }
+        return frame.flip();
+    }
+
+    @Override
+    public Command decodeCommand(ByteBuffer payload) throws IOException {
+        try {
+            CommandType type = CommandType.fromOpcode(payload.get());
+            String name = type == CommandType.UNKNOWN ? getString(payload) : type.commandName();
+            String[] arguments = new String[Short.toUnsignedInt(payload.getShort())];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = getString(payload);
+            }
+            return new Command(name, arguments);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new ProtocolException("Malformed command frame: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public ByteBuffer encode(Response response) {
+        // the message runs to the end of the frame, so it is not limited like the command tokens
+        byte[] message = response.message() == null ? new byte[0] : response.message().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = Frames.allocate(Byte.BYTES + message.length);
+        frame.put((byte) response.status().ordinal());
+        frame.put(message);
+        return frame.flip();
+    }
+
+    @Override
+    public Response decodeResponse(ByteBuffer payload) throws IOException {
+        if (!payload.hasRemaining()) {
+            throw new ProtocolException("Empty response frame");
+        }
+        int status = payload.get();
+        if (status < 0 || status >= STATUSES.length) {
+            throw new ProtocolException("Unknown response status: " + status);
+        }
+        return new Response(STATUSES[status], StandardCharsets.UTF_8.decode(payload).toString());
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_LENGTH) {
+            throw new IllegalArgumentException("Command token is longer than " + MAX_STRING_LENGTH + " bytes");
+        }
+        return bytes;
+    }
+
+    private static void putString(ByteBuffer frame, byte[] value) {
+        frame.putShort((short) value.length);
+        frame.put(value);
+    }
+
+    private static String getString(ByteBuffer payload) {
+        int length = Short.toUnsignedInt(payload.getShort());
+        if (length > payload.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        if (!payload.hasArray()) {
+            byte[] bytes = new byte[length];
+            payload.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String value = new String(payload.array(), payload.arrayOffset() + payload.position(), length, StandardCharsets.UTF_8);
+        payload.position(payload.position() + length);
+        return value;
+    }
+}
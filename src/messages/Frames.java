@@ -0,0 +1,73 @@
+package messages;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+// Every message on the wire is <int length><payload>, the length excluding the header itself.
+public class Frames {
+    public static final int HEADER_SIZE = Integer.BYTES;
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    private Frames() {}
+
+    public static ByteBuffer allocate(int payloadSize) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payloadSize);
+        frame.putInt(payloadSize);
+        return frame;
+    }
+
+    public static int checkLength(int length) throws ProtocolException {
+        return checkLength(length, MAX_FRAME_SIZE);
+    }
+
+    public static int checkLength(int length, int maxLength) throws ProtocolException {
+        if (length < 0 || length > maxLength) {
+            throw new ProtocolException("Invalid frame length: " + length);
+        }
+        return length;
+    }
+
+    // Blocking read of a single frame, returns the payload ready for reading.
+    public static ByteBuffer read(ReadableByteChannel channel) throws IOException {
+        ByteBuffer header = read(channel, HEADER_SIZE);
+        return read(channel, checkLength(header.getInt()));
+    }
+
+    // Blocking read of exactly count unframed bytes.
+    public static ByteBuffer read(ReadableByteChannel channel, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(count);
+        readFully(channel, buffer);
+        return buffer.flip();
+    }
+
+    // Blocking write of an encoded frame.
+    public static void write(WritableByteChannel channel, ByteBuffer frame) throws IOException {
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+    }
+
+    // Blocking write of several encoded frames, gathered into as few writes as the channel allows.
+    public static void write(GatheringByteChannel channel, ByteBuffer... frames) throws IOException {
+        int first = 0;
+        while (first < frames.length) {
+            channel.write(frames, first, frames.length - first);
+            while (first < frames.length && !frames[first].hasRemaining()) {
+                first++;
+            }
+        }
+    }
+
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Connection closed in the middle of a frame");
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package messages;
+
+import interfaces.UserInterface;
+
+import java.util.Set;
+
+public record RegistryEvent(Type type, UserInterface user, Set<String> files) {
+    public enum Type {
+        USER_JOINED,
+        USER_LEFT,
+        FILES_REGISTERED,
+        FILES_UNREGISTERED
+    }
+}
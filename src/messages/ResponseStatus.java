@@ -3,5 +3,7 @@ package messages;
 public enum ResponseStatus {
     OK,
     ERROR,
-    SENDING_FILE;
+    SENDING_FILE,
+    // pushed to subscribed sessions, not an answer to a command
+    EVENT;
 }
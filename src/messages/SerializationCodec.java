@@ -0,0 +1,69 @@
+package messages;
+
+import command.Command;
+import command.CommandTokenizer;
+import interfaces.Codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// The original format: commands as plain text, responses through Java serialization.
+public class SerializationCodec implements Codec {
+    // the codec is shared by the reactor threads
+    private static final ThreadLocal<CommandTokenizer> TOKENIZER = ThreadLocal.withInitial(CommandTokenizer::new);
+
+    @Override
+    public ByteBuffer encode(Command command) {
+        StringBuilder text = new StringBuilder(command.command());
+        for (String argument : command.arguments()) {
+            text.append(' ');
+            if (argument.indexOf(' ') >= 0) {
+                text.append('"').append(argument).append('"');
+            } else {
+                text.append(argument);
+            }
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        return Frames.allocate(bytes.length).put(bytes).flip();
+    }
+
+    @Override
+    public Command decodeCommand(ByteBuffer payload) {
+        // tokenized straight from the frame, only the tokens become Strings
+        Command command = TOKENIZER.get().reset(payload).newCommand();
+        payload.position(payload.limit());
+        return command;
+    }
+
+    @Override
+    public ByteBuffer encode(Response response) {
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bos);
+            oos.writeObject(response);
+            oos.flush();
+            byte[] bytes = bos.toByteArray();
+            return Frames.allocate(bytes.length).put(bytes).flip();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Response could not be serialized", e);
+        }
+    }
+
+    @Override
+    public Response decodeResponse(ByteBuffer payload) throws IOException {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (Response) ois.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new InvalidObjectException("Unexpected response object: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package messages;
+
+import interfaces.Codec;
+
+public enum WireFormat {
+    BINARY(new BinaryCodec()),
+    SERIALIZATION(new SerializationCodec());
+
+    public static final String PROPERTY = "torrent.wire.format";
+
+    private final Codec codec;
+
+    WireFormat(Codec codec) {
+        this.codec = codec;
+    }
+
+    public Codec codec() {
+        return codec;
+    }
+
+    // -Dtorrent.wire.format=serialization switches both Server and Client to the old format
+    public static WireFormat fromSystemProperty() {
+        return valueOf(System.getProperty(PROPERTY, BINARY.name()).toUpperCase());
+    }
+}
@@ -0,0 +1,78 @@
+package metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+// Named counters, gauges and histograms of one process. Instrumented code looks its metrics up once and
+// keeps them, so the hot paths only pay for a LongAdder or a lock-free histogram update. Histogram names
+// carry their unit, e.g. .nanos. Dumps list every metric in name order, one per line.
+public class Metrics {
+    public static final String DUMP_INTERVAL_PROPERTY = "torrent.stats.interval";
+    public static final int DEFAULT_DUMP_INTERVAL_SECONDS = 60;
+
+    private final long started = System.nanoTime();
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    // Read only when dumped, so the value may be costly to compute
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public String dump() {
+        StringBuilder dump = new StringBuilder();
+        dump.append("uptime.seconds ").append(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started));
+        counters.forEach((name, counter) -> dump.append(System.lineSeparator()).append(name).append(' ').append(counter.sum()));
+        gauges.forEach((name, gauge) -> dump.append(System.lineSeparator()).append(name).append(' ').append(gauge.getAsLong()));
+        histograms.forEach((name, histogram) -> {
+            if (histogram.count() > 0) {
+                dump.append(System.lineSeparator()).append(name)
+                        .append(" count=").append(histogram.count())
+                        .append(" mean=").append(Math.round(histogram.mean()))
+                        .append(" p50=").append(histogram.percentile(50))
+                        .append(" p99=").append(histogram.percentile(99))
+                        .append(" p999=").append(histogram.percentile(99.9))
+                        .append(" max=").append(histogram.max());
+            }
+        });
+        return dump.toString();
+    }
+
+    // Hands a dump to the consumer every interval from a daemon thread, until it is interrupted.
+    // Returns null when the interval is not positive.
+    public Thread dumpEvery(long intervalSeconds, Consumer<String> consumer) {
+        if (intervalSeconds <= 0) {
+            return null;
+        }
+        Thread dumper = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    TimeUnit.SECONDS.sleep(intervalSeconds);
+                    consumer.accept(dump());
+                }
+            } catch (InterruptedException e) {
+                // stopped by the owner
+            }
+        }, "metrics-dump");
+        dumper.setDaemon(true);
+        dumper.start();
+        return dumper;
+    }
+
+    public static long dumpIntervalFromSystemProperty() {
+        return Long.getLong(DUMP_INTERVAL_PROPERTY, DEFAULT_DUMP_INTERVAL_SECONDS);
+    }
+}
@@ -0,0 +1,376 @@
+package server;
+
+import command.Command;
+import command.CommandCreator;
+import interfaces.Codec;
+import interfaces.Executor;
+import messages.Request;
+import messages.Response;
+import messages.ResponseStatus;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import utils.Log;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// A selector loop serving the sessions handed over by the acceptor, one thread per reactor.
+// Every session holds a lease renewed by any input from it, heartbeat included. The leases sit in a timer
+// wheel checked once per tick, and the sessions whose lease ran out are disconnected together, which also
+// catches the half-open connections and crashed peers that never deliver an end of stream.
+// The answer to a command is held until its registry change is durable; the write-ahead log's writer hands
+// the session back when the disk has caught up, and the reactor serves its other sessions in the meantime.
+class Reactor implements Runnable {
+    private static final int MAX_READS_PER_WAKEUP = 16;
+    private static final int LEASE_WHEEL_SLOTS = 512;
+    private static final long MAX_LEASE_TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MIN_LEASE_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Executor executor;
+    private final Codec codec;
+    private final Selector selector;
+    private final SubscriptionHub subscriptions;
+    private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+    private final Queue<Subscriber> pendingPushes = new ConcurrentLinkedQueue<>();
+    private final Queue<Session> pendingReleases = new ConcurrentLinkedQueue<>();
+    // shared by all reactors
+    private final LatencyHistogram loopTime;
+    private final LatencyHistogram readyKeys;
+    private final LongAdder bytesIn;
+    private final LongAdder bytesOut;
+    private final LongAdder activeSessions;
+    private final LongAdder expiredSessions;
+    // no leases when the duration is not positive
+    private final long leaseNanos;
+    private final TimerWheel<Session> leases;
+    private final List<Session> expired = new ArrayList<>();
+    private long now = System.nanoTime();
+    private volatile boolean running = true;
+
+    Reactor(Executor executor, Codec codec, SubscriptionHub subscriptions, Metrics metrics, long leaseNanos) {
+        this.executor = executor;
+        this.codec = codec;
+        this.subscriptions = subscriptions;
+        this.leaseNanos = leaseNanos;
+        // a tick of an eighth of the lease at most, so sessions are evicted at most that late
+        this.leases = leaseNanos > 0
+                ? new TimerWheel<>(LEASE_WHEEL_SLOTS, Math.max(MIN_LEASE_TICK_NANOS, Math.min(MAX_LEASE_TICK_NANOS, leaseNanos / 8)), now)
+                : null;
+        this.expiredSessions = metrics.counter("server.sessions.expired");
+        this.loopTime = metrics.histogram("reactor.loop.nanos");
+        this.readyKeys = metrics.histogram("reactor.ready-keys");
+        this.bytesIn = metrics.counter("server.bytes.in");
+        this.bytesOut = metrics.counter("server.bytes.out");
+        this.activeSessions = metrics.counter("server.sessions.active");
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to open selector", e);
+        }
+    }
+
+    // Called from the acceptor thread, the channel is registered by the reactor thread itself.
+    void register(SocketChannel channel) {
+        pendingChannels.add(channel);
+        selector.wakeup();
+    }
+
+    // Called from whichever reactor published the event, the events are written by this reactor thread.
+    void schedulePush(Subscriber subscriber) {
+        pendingPushes.add(subscriber);
+        selector.wakeup();
+    }
+
+    // Called from the write-ahead log's writer once the change a held answer waits for is durable
+    private void scheduleRelease(Session session) {
+        pendingReleases.add(session);
+        selector.wakeup();
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                if (leases == null) {
+                    selector.select();
+                } else {
+                    selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(leases.tickNanos())));
+                }
+                // the time blocked in select() is idle time, only the work after it is measured
+                now = System.nanoTime();
+                long started = now;
+                registerPendingChannels();
+                pushPendingEvents();
+                releaseDurableAnswers();
+
+                readyKeys.record(selector.selectedKeys().size());
+                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+                while (keyIterator.hasNext()) {
+                    SelectionKey key = keyIterator.next();
+                    keyIterator.remove();
+                    handle(key);
+                }
+                if (leases != null) {
+                    expireLeases();
+                }
+                loopTime.record(System.nanoTime() - started);
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            Log.error("Reactor stopped unexpectedly: " + e.getMessage());
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void registerPendingChannels() {
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            try {
+                channel.configureBlocking(false);
+                // responses are already coalesced per read, Nagle would hold back the last one of a batch
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Session session = new Session(channel, now);
+                channel.register(selector, SelectionKey.OP_READ, session);
+                if (leases != null) {
+                    session.lease(leases.schedule(session, now + leaseNanos));
+                }
+                subscriptions.attach(session, this);
+                activeSessions.increment();
+            } catch (IOException e) {
+                Log.error("Error occurred while registering client connection: " + e.getMessage());
+                close(channel);
+            }
+        }
+    }
+
+    private void pushPendingEvents() {
+        Subscriber subscriber;
+        while ((subscriber = pendingPushes.poll()) != null) {
+            Session session = subscriber.session();
+            SelectionKey key = session.channel().keyFor(selector);
+            if (key == null || !key.isValid()) {
+                continue;
+            }
+            try {
+                push(session, subscriber);
+                write(key, session);
+            } catch (IOException e) {
+                Log.error("Error occurred while pushing events to client: " + e.getMessage());
+                disconnect(key, session);
+            }
+        }
+    }
+
+    private void releaseDurableAnswers() {
+        Session session;
+        while ((session = pendingReleases.poll()) != null) {
+            SelectionKey key = session.channel().keyFor(selector);
+            if (key == null || !key.isValid()) {
+                continue;
+            }
+            try {
+                session.releaseDurable();
+                write(key, session);
+            } catch (IOException e) {
+                Log.error("Error occurred while answering client: " + e.getMessage());
+                disconnect(key, session);
+            }
+        }
+    }
+
+    // A subscriber that does not drain its output keeps coalescing events until write() catches up.
+    private void push(Session session, Subscriber subscriber) {
+        if (session.isOutputSaturated()) {
+            session.deferPush(subscriber);
+            return;
+        }
+        String events = subscriber.drain();
+        if (events != null) {
+            session.enqueue(codec.encode(new Response(ResponseStatus.EVENT, events)));
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        Session session = (Session) key.attachment();
+        try {
+            if (key.isReadable()) {
+                read(key, session);
+            }
+            if (key.isValid() && key.isWritable()) {
+                write(key, session);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            Log.error("Error occurred while processing client request: " + e.getMessage());
+            disconnect(key, session);
+        }
+    }
+
+    // Pipelined commands are executed in order and their responses written together. A session keeps
+    // reading while its buffer fills up, up to a bound so the other sessions of the reactor get their turn.
+    private void read(SelectionKey key, Session session) throws IOException {
+        int reads = 0;
+        do {
+            int read = session.read();
+            if (read < 0) {
+                disconnect(key, session);
+                return;
+            }
+            bytesIn.add(read);
+            session.renewLease(now);
+
+            ByteBuffer payload;
+            while ((payload = session.nextFrame()) != null) {
+                Command clientInput = codec.decodeCommand(payload);
+                if (Log.isEnabled(Log.Level.DEBUG)) {
+                    Log.debug(clientInput.command() + " " + String.join(" ", clientInput.arguments()));
+                }
+                Response response = executor.execute(new Request(session.channel(), clientInput));
+                CompletableFuture<Void> durable = executor.whenDurable();
+                session.enqueue(codec.encode(response), durable);
+                if (durable != null) {
+                    Session waiting = session;
+                    durable.whenComplete((ignored, failure) -> scheduleRelease(waiting));
+                }
+            }
+        } while (session.isInputFull() && !session.isOutputSaturated() && ++reads < MAX_READS_PER_WAKEUP);
+        write(key, session);
+    }
+
+    private void write(SelectionKey key, Session session) throws IOException {
+        boolean drained = flush(session);
+        Subscriber deferred = session.deferredPush();
+        if (deferred != null && !session.isOutputSaturated()) {
+            session.deferPush(null);
+            push(session, deferred);
+            drained = flush(session);
+        }
+        // a session saturated by answers held for the disk is neither read nor written until they are released
+        int interestOps = drained ? (session.isOutputSaturated() ? 0 : SelectionKey.OP_READ) : SelectionKey.OP_WRITE;
+        if (!drained && !session.isOutputSaturated()) {
+            interestOps |= SelectionKey.OP_READ;
+        }
+        key.interestOps(interestOps);
+    }
+
+    private boolean flush(Session session) throws IOException {
+        long pending = session.pendingOutput();
+        try {
+            return session.flush();
+        } finally {
+            bytesOut.add(pending - session.pendingOutput());
+        }
+    }
+
+    private void disconnect(SelectionKey key, Session session) {
+        try {
+            Response response = executor.execute(new Request(session.channel(), CommandCreator.newCommand("disconnect")));
+            // nobody waits for this answer, the change becomes durable on its own
+            executor.whenDurable();
+            Log.debug(response.toString());
+        } catch (IOException | UncheckedIOException e) {
+            Log.error("Error occurred while disconnecting client: " + e.getMessage());
+        }
+        release(key, session);
+    }
+
+    // A lease renewed since it was scheduled is moved to its new deadline, the others are collected and
+    // their sessions evicted from the registry with one call.
+    private void expireLeases() {
+        leases.advance(now, session -> {
+            long deadline = session.lastActivity() + leaseNanos;
+            if (deadline - now > 0) {
+                leases.reschedule(session.lease(), deadline);
+            } else {
+                expired.add(session);
+            }
+        });
+        if (expired.isEmpty()) {
+            return;
+        }
+        List<SocketChannel> channels = new ArrayList<>(expired.size());
+        for (Session session : expired) {
+            channels.add(session.channel());
+        }
+        try {
+            executor.disconnectAll(channels);
+            executor.whenDurable();
+        } catch (IOException | UncheckedIOException e) {
+            // the sessions evicted before the failure are gone, so only the one that failed is given up on
+            Log.error("Error occurred while evicting expired sessions: " + e.getMessage());
+            for (SocketChannel channel : channels) {
+                try {
+                    executor.disconnectAll(List.of(channel));
+                } catch (IOException | UncheckedIOException sessionFailure) {
+                    Log.error("Error occurred while evicting expired session: " + sessionFailure.getMessage());
+                }
+            }
+        }
+        for (Session session : expired) {
+            SelectionKey key = session.channel().keyFor(selector);
+            if (key != null) {
+                release(key, session);
+            }
+        }
+        Log.info("Evicted " + expired.size() + " sessions with expired leases");
+        expiredSessions.add(expired.size());
+        expired.clear();
+    }
+
+    private void release(SelectionKey key, Session session) {
+        if (leases != null) {
+            leases.cancel(session.lease());
+        }
+        subscriptions.detach(session.channel());
+        key.cancel();
+        close(session.channel());
+        activeSessions.decrement();
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            // disconnected sessions leave cancelled keys until the next select
+            if (key.isValid()) {
+                activeSessions.decrement();
+            }
+            subscriptions.detach((SocketChannel) key.channel());
+            close(key.channel());
+        }
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            close(channel);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            Log.error("Error occurred while closing selector: " + e.getMessage());
+        }
+    }
+
+    private static void close(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.error("Error occurred while closing client connection: " + e.getMessage());
+        }
+    }
+}
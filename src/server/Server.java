@@ -1,126 +1,179 @@
 package server;
 
-import command.CommandCreator;
 import command.ServerCommandExecutor;
-import messages.Request;
-import messages.Response;
+import interfaces.Codec;
+import interfaces.Storage;
+import interfaces.UserInterface;
+import messages.WireFormat;
+import metrics.Metrics;
+import storage.FileOwnerIndex;
 import storage.FileStorage;
+import storage.PathTrie;
+import storage.PersistentFileStorage;
+import storage.RegistryChangeLog;
 import storage.SessionStorage;
+import storage.UserTable;
+import utils.Log;
 
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
-import java.util.Iterator;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+// The calling thread accepts connections and spreads them round-robin across the reactor threads.
 public class Server {
-    private static final int BUFFER_SIZE = 1024;
     private static final String HOST = "localhost";
+    // Directory of the write-ahead log and snapshots, the registry is kept only in memory when not set
+    private static final String STORAGE_DIR_PROPERTY = "torrent.storage.dir";
+    // Sessions silent for this long are evicted, 0 keeps them until the connection closes
+    private static final String LEASE_PROPERTY = "torrent.lease.seconds";
+    private static final long DEFAULT_LEASE_SECONDS = 120;
     private final ServerCommandExecutor serverCommandExecutor;
+    private final Storage<UserInterface, Set<String>> fileStorage;
+    private final SubscriptionHub subscriptions = new SubscriptionHub();
+    private final Metrics metrics = new Metrics();
+    private final Codec codec;
     private final int port;
-    private ByteBuffer buffer;
+    private final int reactorsCount;
+    private final long leaseNanos = TimeUnit.SECONDS.toNanos(Long.getLong(LEASE_PROPERTY, DEFAULT_LEASE_SECONDS));
+    private Reactor[] reactors;
+    private Thread[] reactorThreads;
+    private Thread dumper;
+    private volatile ServerSocketChannel serverSocketChannel;
+    private volatile boolean running;
+
     public Server(int port) {
+        this(port, Runtime.getRuntime().availableProcessors());
+    }
+
+    public Server(int port, int reactorsCount) {
+        this(port, reactorsCount, WireFormat.fromSystemProperty().codec());
+    }
+
+    public Server(int port, int reactorsCount, Codec codec) {
+        this(port, reactorsCount, codec, new PathTrie());
+    }
+
+    // The registry and its owner index share one trie of the registered paths
+    private Server(int port, int reactorsCount, Codec codec, PathTrie paths) {
+        this(port, reactorsCount, codec, openFileStorage(paths), new FileOwnerIndex(new UserTable(), paths));
+    }
+
+    public Server(int port, int reactorsCount, Codec codec, Storage<UserInterface, Set<String>> fileStorage,
+                  Storage<String, Set<UserInterface>> ownerIndex) {
+        if (reactorsCount < 1) {
+            throw new IllegalArgumentException("At least one reactor is required");
+        }
         this.port = port;
-        this.serverCommandExecutor = new ServerCommandExecutor(new FileStorage(), new SessionStorage());
+        this.reactorsCount = reactorsCount;
+        this.codec = codec;
+        this.fileStorage = fileStorage;
+        this.serverCommandExecutor = new ServerCommandExecutor(fileStorage, new SessionStorage(),
+                ownerIndex, RegistryChangeLog.startingNow(), subscriptions, metrics);
+        metrics.gauge("server.subscribers", subscriptions::size);
+    }
+
+    // Also answered by the stats command and dumped every torrent.stats.interval seconds while running
+    public Metrics metrics() {
+        return metrics;
+    }
+
+    private static Storage<UserInterface, Set<String>> openFileStorage(PathTrie paths) {
+        String directory = System.getProperty(STORAGE_DIR_PROPERTY);
+        if (directory == null) {
+            return new FileStorage(paths);
+        }
+        try {
+            return new PersistentFileStorage(Paths.get(directory), PersistentFileStorage.DEFAULT_SNAPSHOT_INTERVAL, paths);
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to recover storage from " + directory, e);
+        }
     }
 
     public static void main(String[] args) {
-        Server server = new Server(7777);
+        int reactorsCount = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        Server server = new Server(7777, reactorsCount);
         server.start();
     }
 
     public void start() {
         try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
-            Selector selector = Selector.open();
-            configureServerSocketChannel(serverSocketChannel, selector);
-            this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
-            while (true) {
-                try {
-                    int readyChannels = selector.select();
-                    if (readyChannels == 0) {
-                        continue;
-                    }
-
-                    Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
-                    while (keyIterator.hasNext()) {
-                        SelectionKey key = keyIterator.next();
-
-                        if (key.isReadable()) {
-                            SocketChannel clientChannel = (SocketChannel) key.channel();
-                            String clientInput = getClientInput(clientChannel);
-                            System.out.println(clientInput);
-                            if (clientInput == null) {
-                                Response response = serverCommandExecutor.execute(new Request(clientChannel, CommandCreator.newCommand("disconnect")));
-                                System.out.println(response);
-                                continue;
-                            }
-
-                            Response response = serverCommandExecutor.execute(new Request(clientChannel, CommandCreator.newCommand(clientInput)));
-                            writeClientOutput(clientChannel, response);
-
-                        } else if (key.isAcceptable()) {
-                            accept(selector, key);
-                        }
-
-                        keyIterator.remove();
-                    }
-                } catch (IOException e) {
-                    System.out.println("Error occurred while processing client request: " + e.getMessage());
-                }
+            serverSocketChannel.bind(new InetSocketAddress(HOST, this.port));
+            this.serverSocketChannel = serverSocketChannel;
+            this.running = true;
+            startReactors();
+            dumper = metrics.dumpEvery(Metrics.dumpIntervalFromSystemProperty(), dump -> Log.info("Server stats:" + System.lineSeparator() + dump));
+
+            long accepted = 0;
+            while (running) {
+                SocketChannel clientChannel = serverSocketChannel.accept();
+                reactors[(int) (accepted++ % reactors.length)].register(clientChannel);
             }
+        } catch (ClosedChannelException e) {
+            // stop() closed the channel while accept() was blocked
         } catch (IOException e) {
             throw new UncheckedIOException("failed to start server", e);
+        } finally {
+            if (dumper != null) {
+                dumper.interrupt();
+            }
+            stopReactors();
+            closeFileStorage();
         }
     }
 
-    private void configureServerSocketChannel(ServerSocketChannel channel, Selector selector) throws IOException {
-        channel.bind(new InetSocketAddress(HOST, this.port));
-        channel.configureBlocking(false);
-        channel.register(selector, SelectionKey.OP_ACCEPT);
+    public void stop() {
+        running = false;
+        ServerSocketChannel channel = serverSocketChannel;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Log.error("Error occurred while stopping server: " + e.getMessage());
+            }
+        }
     }
 
-    private String getClientInput(SocketChannel clientChannel) throws IOException {
-        buffer.clear();
-
-        int readBytes = clientChannel.read(buffer);
-        if (readBytes < 0) {
-            clientChannel.close();
-            return null;
+    private void startReactors() {
+        reactors = new Reactor[reactorsCount];
+        reactorThreads = new Thread[reactorsCount];
+        for (int i = 0; i < reactorsCount; i++) {
+            reactors[i] = new Reactor(serverCommandExecutor, codec, subscriptions, metrics, leaseNanos);
+            reactorThreads[i] = new Thread(reactors[i], "reactor-" + i);
+            reactorThreads[i].start();
         }
-
-        buffer.flip();
-
-        byte[] clientInputBytes = new byte[buffer.remaining()];
-        buffer.get(clientInputBytes);
-
-        return new String(clientInputBytes, StandardCharsets.UTF_8);
     }
 
-    private void writeClientOutput(SocketChannel clientChannel, Response output) throws IOException {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(bos);
-        oos.writeObject(output);
-        oos.flush();
-        byte[] bytes = bos.toByteArray();
-        buffer.clear();
-        buffer.put(bytes);
-        buffer.flip();
-
-        clientChannel.write(buffer);
+    private void stopReactors() {
+        if (reactors != null) {
+            for (Reactor reactor : reactors) {
+                reactor.stop();
+            }
+        }
     }
 
-    private void accept(Selector selector, SelectionKey key) throws IOException {
-        ServerSocketChannel sockChannel = (ServerSocketChannel) key.channel();
-        SocketChannel accept = sockChannel.accept();
-
-        accept.configureBlocking(false);
-        accept.register(selector, SelectionKey.OP_READ);
+    // Waits for the reactors to finish their last commands, so nothing is written after the storage is closed.
+    private void closeFileStorage() {
+        if (!(fileStorage instanceof Closeable closeable)) {
+            return;
+        }
+        try {
+            if (reactorThreads != null) {
+                for (Thread thread : reactorThreads) {
+                    thread.join();
+                }
+            }
+            closeable.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            Log.error("Error occurred while closing storage: " + e.getMessage());
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,203 @@
+package server;
+
+import messages.Frames;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+
+// Per-connection state attached to the SelectionKey: the partially read input and the not yet written output.
+// The answer to a command whose change is not durable yet is held back, with every answer queued after it,
+// until the disk has caught up, so the answers still go out in the order of the commands.
+class Session {
+    private static final int READ_BUFFER_SIZE = 1024;
+    // Commands are small, a larger frame is refused before any of it is buffered
+    static final int MAX_COMMAND_FRAME_SIZE = 1024 * 1024;
+    // Stop reading from a client that does not drain its responses
+    private static final int MAX_PENDING_OUTPUT = 4 * 1024 * 1024;
+    // Responses of pipelined commands are written together, up to this many frames per write
+    private static final int MAX_GATHERED_FRAMES = 64;
+
+    private final SocketChannel channel;
+    private final Deque<ByteBuffer> outbound = new ArrayDeque<>();
+    private final Deque<Held> held = new ArrayDeque<>();
+    private final ByteBuffer[] gathered = new ByteBuffer[MAX_GATHERED_FRAMES];
+    // Kept in read mode between calls
+    private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE).flip();
+    private long pendingOutput;
+    private Subscriber deferredPush;
+    private boolean inputFull;
+    private long lastActivity;
+    private TimerWheel.Timer<Session> lease;
+
+    private record Held(ByteBuffer frame, CompletableFuture<Void> durable) {
+    }
+
+    Session(SocketChannel channel, long now) {
+        this.channel = channel;
+        this.lastActivity = now;
+    }
+
+    SocketChannel channel() {
+        return channel;
+    }
+
+    // Appends whatever is available on the channel to the read buffer, -1 on end of stream.
+    // A buffer grown for a large frame goes back to the default size once that frame is consumed.
+    int read() throws IOException {
+        if (readBuffer.capacity() > READ_BUFFER_SIZE && Math.max(readBuffer.remaining(), pendingFrameSize()) <= READ_BUFFER_SIZE) {
+            readBuffer = resized(READ_BUFFER_SIZE);
+        }
+        readBuffer.compact();
+        try {
+            return channel.read(readBuffer);
+        } finally {
+            inputFull = !readBuffer.hasRemaining();
+            readBuffer.flip();
+        }
+    }
+
+    // The last read() filled the buffer, so more pipelined input is probably waiting on the channel
+    boolean isInputFull() {
+        return inputFull;
+    }
+
+    // Returns the payload of the next complete frame or null if more bytes are needed.
+    // The payload is only valid until the next read().
+    ByteBuffer nextFrame() throws IOException {
+        if (readBuffer.remaining() < Frames.HEADER_SIZE) {
+            return null;
+        }
+        int length = Frames.checkLength(readBuffer.getInt(readBuffer.position()), MAX_COMMAND_FRAME_SIZE);
+        int frameSize = Frames.HEADER_SIZE + length;
+        if (readBuffer.remaining() < frameSize) {
+            grow(frameSize);
+            return null;
+        }
+        ByteBuffer payload = readBuffer.slice(readBuffer.position() + Frames.HEADER_SIZE, length);
+        readBuffer.position(readBuffer.position() + frameSize);
+        return payload;
+    }
+
+    void enqueue(ByteBuffer frame) {
+        outbound.addLast(frame);
+        pendingOutput += frame.remaining();
+    }
+
+    // An answer to be written once durable completes, or right away when it is null and nothing is held
+    void enqueue(ByteBuffer frame, CompletableFuture<Void> durable) {
+        if (durable == null && held.isEmpty()) {
+            enqueue(frame);
+            return;
+        }
+        held.addLast(new Held(frame, durable));
+        // held answers count as output, so a client whose changes wait for the disk stops being read
+        pendingOutput += frame.remaining();
+    }
+
+    // Moves the held answers whose changes are durable to the output, fails when a change could not be persisted
+    void releaseDurable() throws IOException {
+        Held next;
+        while ((next = held.peekFirst()) != null) {
+            if (next.durable() != null) {
+                if (!next.durable().isDone()) {
+                    return;
+                }
+                if (next.durable().isCompletedExceptionally()) {
+                    throw new IOException("Registry change could not be persisted", next.durable().exceptionNow());
+                }
+            }
+            held.removeFirst();
+            outbound.addLast(next.frame());
+        }
+    }
+
+    // Writes as much of the queued output as the socket accepts with gathering writes, true when everything
+    // has been written.
+    boolean flush() throws IOException {
+        while (!outbound.isEmpty()) {
+            int count = 0;
+            for (ByteBuffer frame : outbound) {
+                gathered[count++] = frame;
+                if (count == gathered.length) {
+                    break;
+                }
+            }
+            pendingOutput -= channel.write(gathered, 0, count);
+            Arrays.fill(gathered, 0, count, null);
+            for (int i = 0; i < count; i++) {
+                if (outbound.peekFirst().hasRemaining()) {
+                    // the socket buffer is full
+                    return false;
+                }
+                outbound.removeFirst();
+            }
+        }
+        return true;
+    }
+
+    long pendingOutput() {
+        return pendingOutput;
+    }
+
+    boolean hasPendingOutput() {
+        return !outbound.isEmpty();
+    }
+
+    // Any input from the client renews its lease, the lease timer only checks this when it fires
+    long lastActivity() {
+        return lastActivity;
+    }
+
+    void renewLease(long now) {
+        lastActivity = now;
+    }
+
+    TimerWheel.Timer<Session> lease() {
+        return lease;
+    }
+
+    void lease(TimerWheel.Timer<Session> lease) {
+        this.lease = lease;
+    }
+
+    Subscriber deferredPush() {
+        return deferredPush;
+    }
+
+    void deferPush(Subscriber subscriber) {
+        deferredPush = subscriber;
+    }
+
+    boolean isOutputSaturated() {
+        return pendingOutput > MAX_PENDING_OUTPUT;
+    }
+
+    int inputCapacity() {
+        return readBuffer.capacity();
+    }
+
+    // Doubles the buffer once the received part of the frame fills it, so a header alone never
+    // allocates the whole frame
+    private void grow(int frameSize) {
+        if (readBuffer.remaining() == readBuffer.capacity()) {
+            readBuffer = resized((int) Math.min(frameSize, 2L * readBuffer.capacity()));
+        }
+    }
+
+    // The size of the frame started in the buffer, 0 when not even its header has arrived
+    private int pendingFrameSize() {
+        if (readBuffer.remaining() < Frames.HEADER_SIZE) {
+            return 0;
+        }
+        return Frames.HEADER_SIZE + readBuffer.getInt(readBuffer.position());
+    }
+
+    private ByteBuffer resized(int capacity) {
+        return ByteBuffer.allocate(capacity).put(readBuffer).flip();
+    }
+}
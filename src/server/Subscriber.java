@@ -0,0 +1,126 @@
+package server;
+
+import interfaces.UserInterface;
+import messages.RegistryEvent;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Registry events waiting to be pushed to one session. Events are published from any reactor thread
+// and drained by the reactor owning the session, the ones for the same user are merged in between.
+class Subscriber {
+    // Distinct users with undelivered changes, a subscriber behind that is told to resynchronize instead
+    static final int MAX_PENDING_USERS = 1024;
+    static final String RESYNC = "resync";
+
+    private final Session session;
+    private final Reactor reactor;
+    private final Map<UserInterface, PendingChange> pending = new LinkedHashMap<>();
+    private boolean overflowed;
+
+    Subscriber(Session session, Reactor reactor) {
+        this.session = session;
+        this.reactor = reactor;
+    }
+
+    Session session() {
+        return session;
+    }
+
+    Reactor reactor() {
+        return reactor;
+    }
+
+    // Returns true when the subscriber had nothing pending, so the caller has to schedule a push.
+    synchronized boolean offer(RegistryEvent event) {
+        boolean wasIdle = pending.isEmpty() && !overflowed;
+        if (overflowed) {
+            return false;
+        }
+        PendingChange change = pending.get(event.user());
+        if (change == null) {
+            if (pending.size() == MAX_PENDING_USERS) {
+                pending.clear();
+                overflowed = true;
+                return wasIdle;
+            }
+            change = new PendingChange();
+            pending.put(event.user(), change);
+        }
+        change.merge(event);
+        return wasIdle;
+    }
+
+    // One line per change: joined/left <user> or registered/unregistered <user> <file>..., null when nothing is pending.
+    synchronized String drain() {
+        if (overflowed) {
+            overflowed = false;
+            return RESYNC;
+        }
+        if (pending.isEmpty()) {
+            return null;
+        }
+        StringBuilder events = new StringBuilder();
+        for (Map.Entry<UserInterface, PendingChange> entry : pending.entrySet()) {
+            entry.getValue().appendTo(events, entry.getKey());
+        }
+        pending.clear();
+        // a user that joined and left in between leaves nothing to report
+        return events.isEmpty() ? null : events.toString();
+    }
+
+    private static class PendingChange {
+        private boolean left;
+        private boolean joined;
+        private final Set<String> registered = new LinkedHashSet<>();
+        private final Set<String> unregistered = new LinkedHashSet<>();
+
+        void merge(RegistryEvent event) {
+            switch (event.type()) {
+                case USER_JOINED -> joined = true;
+                case USER_LEFT -> {
+                    // whatever the user did before leaving is gone with it
+                    left = !joined || left;
+                    joined = false;
+                    registered.clear();
+                    unregistered.clear();
+                }
+                case FILES_REGISTERED -> {
+                    registered.addAll(event.files());
+                    unregistered.removeAll(event.files());
+                }
+                case FILES_UNREGISTERED -> {
+                    unregistered.addAll(event.files());
+                    registered.removeAll(event.files());
+                }
+            }
+        }
+
+        void appendTo(StringBuilder events, UserInterface user) {
+            if (left) {
+                appendLine(events, "left", user, Set.of());
+            }
+            if (joined) {
+                appendLine(events, "joined", user, Set.of());
+            }
+            if (!registered.isEmpty()) {
+                appendLine(events, "registered", user, registered);
+            }
+            if (!unregistered.isEmpty()) {
+                appendLine(events, "unregistered", user, unregistered);
+            }
+        }
+
+        private static void appendLine(StringBuilder events, String type, UserInterface user, Set<String> files) {
+            if (!events.isEmpty()) {
+                events.append(System.lineSeparator());
+            }
+            events.append(type).append(' ').append(user);
+            for (String file : files) {
+                events.append(' ').append(file);
+            }
+        }
+    }
+}
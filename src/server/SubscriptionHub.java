@@ -0,0 +1,57 @@
+package server;
+
+import interfaces.EventPublisher;
+import messages.RegistryEvent;
+
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Fans registry events out to the subscribed sessions of every reactor. Publishing only merges the event
+// into each subscriber's pending changes, the owning reactor encodes and writes them on its own thread.
+class SubscriptionHub implements EventPublisher {
+    private final Map<SocketChannel, Subscriber> sessions = new ConcurrentHashMap<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    void attach(Session session, Reactor reactor) {
+        sessions.put(session.channel(), new Subscriber(session, reactor));
+    }
+
+    void detach(SocketChannel channel) {
+        Subscriber subscriber = sessions.remove(channel);
+        if (subscriber != null) {
+            subscribers.remove(subscriber);
+        }
+    }
+
+    int size() {
+        return subscribers.size();
+    }
+
+    @Override
+    public void subscribe(SocketChannel session) {
+        Subscriber subscriber = sessions.get(session);
+        if (subscriber == null) {
+            throw new IllegalArgumentException("Session is not connected");
+        }
+        subscribers.add(subscriber);
+    }
+
+    @Override
+    public void unsubscribe(SocketChannel session) {
+        Subscriber subscriber = sessions.get(session);
+        if (subscriber != null) {
+            subscribers.remove(subscriber);
+        }
+    }
+
+    @Override
+    public void publish(RegistryEvent event) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.offer(event)) {
+                subscriber.reactor().schedulePush(subscriber);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package server;
+
+import java.util.function.Consumer;
+
+// Hashed timing wheel: a ring of slots, one per tick, each a doubly-linked list of the timers due in it.
+// A timer more than one turn away stays in its slot until the wheel has come round enough times.
+// Scheduling and cancelling are O(1), advancing visits only the slots of the ticks that passed.
+// Not thread-safe, a wheel belongs to the reactor thread that owns the timers.
+class TimerWheel<T> {
+    static final class Timer<T> {
+        private final T value;
+        private long deadlineTick;
+        private Timer<T> previous;
+        private Timer<T> next;
+        private boolean scheduled;
+
+        private Timer(T value) {
+            this.value = value;
+        }
+
+        T value() {
+            return value;
+        }
+    }
+
+    private final Timer<T>[] slots;
+    private final long tickNanos;
+    private final long startNanos;
+    // the last tick whose slot has been visited
+    private long tick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    TimerWheel(int slots, long tickNanos, long startNanos) {
+        if (slots < 1 || tickNanos < 1) {
+            throw new IllegalArgumentException("A timer wheel needs at least one slot and a positive tick");
+        }
+        this.slots = (Timer<T>[]) new Timer<?>[slots];
+        this.tickNanos = tickNanos;
+        this.startNanos = startNanos;
+    }
+
+    long tickNanos() {
+        return tickNanos;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Timer<T> schedule(T value, long deadlineNanos) {
+        Timer<T> timer = new Timer<>(value);
+        reschedule(timer, deadlineNanos);
+        return timer;
+    }
+
+    // Moves the timer to the new deadline, scheduling it again if it has fired or was cancelled
+    void reschedule(Timer<T> timer, long deadlineNanos) {
+        cancel(timer);
+        // a deadline in a past tick fires on the next advance
+        timer.deadlineTick = Math.max(tick + 1, ceilTick(deadlineNanos));
+        int slot = slot(timer.deadlineTick);
+        timer.next = slots[slot];
+        if (timer.next != null) {
+            timer.next.previous = timer;
+        }
+        slots[slot] = timer;
+        timer.scheduled = true;
+        size++;
+    }
+
+    void cancel(Timer<T> timer) {
+        if (!timer.scheduled) {
+            return;
+        }
+        if (timer.previous != null) {
+            timer.previous.next = timer.next;
+        } else {
+            slots[slot(timer.deadlineTick)] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.previous = timer.previous;
+        }
+        timer.previous = null;
+        timer.next = null;
+        timer.scheduled = false;
+        size--;
+    }
+
+    // Removes the timers due by now and hands their values to the consumer, which may schedule timers again
+    void advance(long nowNanos, Consumer<T> expired) {
+        long target = Math.floorDiv(nowNanos - startNanos, tickNanos);
+        // after a long pause one turn visits every slot, firing whatever is due by the target tick
+        long last = Math.min(target, tick + slots.length);
+        while (tick < last) {
+            tick++;
+            expire(slot(tick), target, expired);
+        }
+        tick = Math.max(tick, target);
+    }
+
+    private void expire(int slot, long target, Consumer<T> expired) {
+        Timer<T> timer = slots[slot];
+        while (timer != null) {
+            Timer<T> next = timer.next;
+            if (timer.deadlineTick <= target) {
+                cancel(timer);
+                expired.accept(timer.value);
+            }
+            timer = next;
+        }
+    }
+
+    private long ceilTick(long nanos) {
+        return -Math.floorDiv(startNanos - nanos, tickNanos);
+    }
+
+    private int slot(long tick) {
+        return (int) Math.floorMod(tick, (long) slots.length);
+    }
+}
@@ -0,0 +1,209 @@
+package storage;
+
+import interfaces.Storage;
+import interfaces.UserInterface;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Inverted view of FileStorage: file path -> users that registered it.
+// Lookups also accept a bare file name, which resolves to everyone owning a file with that name.
+// Owners are kept as sorted arrays of UserTable ids on the PathTrie nodes, replaced on every change,
+// and resolved back to users only by the sets handed out by listValues.
+public class FileOwnerIndex implements Storage<String, Set<UserInterface>> {
+    private static final int[] NO_OWNERS = new int[0];
+
+    private final UserTable users;
+    private final PathTrie ownersByPath;
+    // the same user may register several paths with the same name, so an id repeats once per path
+    private final Map<String, int[]> ownersByName = new ConcurrentHashMap<>();
+    private final Set<String> paths = new OwnedPaths();
+
+    public FileOwnerIndex() {
+        this(new UserTable(), new PathTrie());
+    }
+
+    public FileOwnerIndex(UserTable users, PathTrie paths) {
+        this.users = users;
+        this.ownersByPath = paths;
+    }
+
+    @Override
+    public Set<String> getKeys() {
+        return paths;
+    }
+
+    // Paths starting with the prefix, collected from its subtree only
+    @Override
+    public Set<String> getKeysWithPrefix(String prefix, int limit) {
+        Set<String> matching = new LinkedHashSet<>();
+        ownersByPath.forEachOwned(prefix == null ? "" : prefix, limit, (path, owners) -> matching.add(path));
+        return matching;
+    }
+
+    @Override
+    public Set<UserInterface> remove(String path) {
+        if (path == null) {
+            return null;
+        }
+        int[] owners = ownersByPath.owners(path);
+        if (owners.length == 0) {
+            return null;
+        }
+        Set<UserInterface> removed = Set.copyOf(new OwnerSet(owners));
+        removeValues(path, removed);
+        return removed;
+    }
+
+    @Override
+    public Set<UserInterface> listValues(String pathOrName) {
+        if (pathOrName == null) {
+            return Collections.emptySet();
+        }
+        int[] owners = ownersByPath.owners(pathOrName);
+        if (owners.length == 0) {
+            owners = ownersByName.getOrDefault(pathOrName, NO_OWNERS);
+        }
+        return owners.length == 0 ? Collections.emptySet() : new OwnerSet(owners);
+    }
+
+    @Override
+    public void addValues(String path, Set<UserInterface> owners) {
+        if (path == null || owners == null) {
+            return;
+        }
+        String name = fileName(path);
+        for (UserInterface owner : owners) {
+            int id = users.acquire(owner);
+            if (!ownersByPath.addOwner(path, id)) {
+                users.release(id);
+                continue;
+            }
+            if (name != null) {
+                ownersByName.compute(name, (k, namedOwners) -> {
+                    int[] named = namedOwners == null ? NO_OWNERS : namedOwners;
+                    int position = Arrays.binarySearch(named, id);
+                    return PathTrie.insert(named, position >= 0 ? position : -position - 1, id);
+                });
+            }
+        }
+    }
+
+    @Override
+    public void removeValues(String path, Set<UserInterface> owners) {
+        if (path == null || owners == null) {
+            return;
+        }
+        String name = fileName(path);
+        for (UserInterface owner : owners) {
+            int id = users.idOf(owner);
+            if (id == UserTable.NO_ID || !ownersByPath.removeOwner(path, id)) {
+                continue;
+            }
+            if (name != null) {
+                ownersByName.computeIfPresent(name, (k, namedOwners) -> {
+                    int position = Arrays.binarySearch(namedOwners, id);
+                    int[] named = position >= 0 ? PathTrie.delete(namedOwners, position) : namedOwners;
+                    return named.length == 0 ? null : named;
+                });
+            }
+            users.release(id);
+        }
+    }
+
+    private static String fileName(String path) {
+        try {
+            Path fileName = Path.of(path).getFileName();
+            return fileName == null ? null : fileName.toString();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    private class OwnedPaths extends AbstractSet<String> {
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof String path && ownersByPath.owners(path).length > 0;
+        }
+
+        @Override
+        public int size() {
+            return ownersByPath.ownedPaths();
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return Collections.unmodifiableSet(getKeysWithPrefix("", Integer.MAX_VALUE)).iterator();
+        }
+    }
+
+    // Read-only view of one sorted id array, skipping repeated ids and users released in the meantime
+    private class OwnerSet extends AbstractSet<UserInterface> {
+        private final int[] ids;
+
+        OwnerSet(int[] ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            int id = o instanceof UserInterface user ? users.idOf(user) : UserTable.NO_ID;
+            return id != UserTable.NO_ID && Arrays.binarySearch(ids, id) >= 0;
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (UserInterface ignored : this) {
+                size++;
+            }
+            return size;
+        }
+
+        @Override
+        public Iterator<UserInterface> iterator() {
+            return new Iterator<>() {
+                private int index;
+                private UserInterface next = advance();
+
+                private UserInterface advance() {
+                    while (index < ids.length) {
+                        int id = ids[index++];
+                        while (index < ids.length && ids[index] == id) {
+                            index++;
+                        }
+                        UserInterface user = users.user(id);
+                        if (user != null) {
+                            return user;
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public UserInterface next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    UserInterface current = next;
+                    next = advance();
+                    return current;
+                }
+            };
+        }
+    }
+}
@@ -2,48 +2,165 @@ package storage;
 
 import interfaces.Storage;
 import interfaces.UserInterface;
+import utils.UserUtils;
 
-import java.util.*;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
+// Users are kept sorted so listings can be paged with a stable cursor. Files are held as nodes of the
+// PathTrie, one reference each, and turned into paths when listed. Updates of a user lock its file set,
+// so a reference is taken exactly once per stored node while other users are updated in parallel; reads
+// are lock-free views.
 public class FileStorage implements Storage<UserInterface, Set<String>> {
-    private final Map<UserInterface, Set<String>> files = new HashMap<>();
+    private final ConcurrentNavigableMap<UserInterface, UserFiles> files = new ConcurrentSkipListMap<>(UserUtils.USER_ORDER);
+    private final NavigableSet<UserInterface> users = Collections.unmodifiableNavigableSet(files.keySet());
+    private final PathTrie paths;
+
+    // Updated under its own lock; a removed instance stays unmapped, so updates that raced with the
+    // removal see the flag instead of looking the user up again
+    private static final class UserFiles {
+        private final Set<PathTrie.Node> nodes = ConcurrentHashMap.newKeySet();
+        private boolean removed;
+    }
+
+    public FileStorage() {
+        this(new PathTrie());
+    }
+
+    public FileStorage(PathTrie paths) {
+        this.paths = paths;
+    }
 
     @Override
     public Set<UserInterface> getKeys() {
-        return Set.copyOf(files.keySet());
+        return users;
+    }
+
+    @Override
+    public Set<UserInterface> getKeysAfter(UserInterface user) {
+        if (user == null) {
+            return users;
+        }
+        return users.tailSet(user, false);
     }
 
     @Override
     public Set<String> remove(UserInterface key) {
-        if (key != null) {
-            return files.remove(key);
+        UserFiles removed = key == null ? null : files.get(key);
+        if (removed == null) {
+            return null;
+        }
+        synchronized (removed) {
+            if (removed.removed) {
+                return null;
+            }
+            removed.removed = true;
+            files.remove(key);
+            // the paths are read before the nodes are released and possibly merged away
+            Set<String> removedFiles = new HashSet<>();
+            for (PathTrie.Node node : removed.nodes) {
+                removedFiles.add(paths.path(node));
+            }
+            for (PathTrie.Node node : removed.nodes) {
+                paths.release(node);
+            }
+            return removedFiles;
         }
-        return null;
     }
 
     @Override
     public Set<String> listValues(UserInterface user) {
-        if (files.get(user) == null) {
+        UserFiles userFiles = user == null ? null : files.get(user);
+        if (userFiles == null) {
             return Collections.emptySet();
         }
-        return files.get(user);
+        return new PathSet(userFiles.nodes);
     }
 
     @Override
     public void addValues(UserInterface user, Set<String> files) {
-        if (files == null) {
-            files = Collections.emptySet();
+        if (user == null) {
+            return;
         }
-        if (user != null) {
-            this.files.putIfAbsent(user, files);
+        while (true) {
+            UserFiles userFiles = this.files.computeIfAbsent(user, key -> new UserFiles());
+            synchronized (userFiles) {
+                // removed since it was looked up, the next round maps a new one
+                if (userFiles.removed) {
+                    continue;
+                }
+                if (files != null) {
+                    for (String file : files) {
+                        PathTrie.Node node = paths.acquire(file);
+                        if (!userFiles.nodes.add(node)) {
+                            paths.release(node);
+                        }
+                    }
+                }
+                return;
+            }
         }
-        this.files.get(user).addAll(files);
     }
 
     @Override
     public void removeValues(UserInterface user, Set<String> files) {
-        if (user != null && this.files.get(user) != null) {
-            this.files.get(user).removeAll(files);
+        UserFiles userFiles = user == null || files == null ? null : this.files.get(user);
+        if (userFiles == null) {
+            return;
+        }
+        synchronized (userFiles) {
+            if (userFiles.removed) {
+                return;
+            }
+            for (String file : files) {
+                PathTrie.Node node = paths.node(file);
+                if (node != null && userFiles.nodes.remove(node)) {
+                    paths.release(node);
+                }
+            }
+        }
+    }
+
+    // Read-only view of one user's files
+    private class PathSet extends AbstractSet<String> {
+        private final Set<PathTrie.Node> nodes;
+
+        PathSet(Set<PathTrie.Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            PathTrie.Node node = o instanceof String path ? paths.node(path) : null;
+            return node != null && nodes.contains(node);
+        }
+
+        @Override
+        public int size() {
+            return nodes.size();
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            Iterator<PathTrie.Node> iterator = nodes.iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    return paths.path(iterator.next());
+                }
+            };
         }
     }
 }
@@ -0,0 +1,393 @@
+package storage;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+// Radix trie of the registered paths, shared by FileStorage and FileOwnerIndex so the directories that
+// thousands of files have in common are stored once. A node is kept while FileStorage holds references
+// to it or while it has owners (UserTable ids) from the index, and merged into its only child otherwise.
+// Node handles stay valid across splits and merges, the path is rebuilt from the parents when needed.
+// The shape of the trie changes under the write lock only. Updates of a path that is already in it, the
+// common case, swap its references and owners atomically under the read lock, so they run in parallel and
+// take the write lock only to insert a path or to prune one whose last reference or owner went away.
+public class PathTrie {
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final int[] NO_OWNERS = new int[0];
+
+    private final Node root = new Node(null, "");
+    private static final VarHandle REFERENCES;
+    private static final VarHandle OWNERS;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            REFERENCES = lookup.findVarHandle(Node.class, "references", int.class);
+            OWNERS = lookup.findVarHandle(Node.class, "owners", int[].class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicInteger ownedPaths = new AtomicInteger();
+
+    public static final class Node {
+        private String label;
+        // null once the node is pruned away
+        private Node parent;
+        private Node[] children = NO_CHILDREN;
+        private volatile int[] owners = NO_OWNERS;
+        private volatile int references;
+
+        private Node(Node parent, String label) {
+            this.parent = parent;
+            this.label = label;
+        }
+    }
+
+    // Returns the node of the path, taking one reference to it
+    public Node acquire(String path) {
+        lock.readLock().lock();
+        try {
+            Node node = find(path);
+            if (node != null) {
+                REFERENCES.getAndAdd(node, 1);
+                return node;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            Node node = insert(path);
+            REFERENCES.getAndAdd(node, 1);
+            return node;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void release(Node node) {
+        int references;
+        do {
+            references = node.references;
+            if (references == 0) {
+                throw new IllegalArgumentException("Path node is not acquired");
+            }
+        } while (!REFERENCES.compareAndSet(node, references, references - 1));
+        if (references == 1) {
+            prune(node);
+        }
+    }
+
+    // Returns false when the path already had the owner
+    public boolean addOwner(String path, int owner) {
+        lock.readLock().lock();
+        try {
+            Node node = find(path);
+            if (node != null) {
+                return addOwner(node, owner);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            return addOwner(insert(path), owner);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Returns false when the path did not have the owner
+    public boolean removeOwner(String path, int owner) {
+        Node node;
+        int[] owners;
+        lock.readLock().lock();
+        try {
+            node = find(path);
+            if (node == null) {
+                return false;
+            }
+            int[] updated;
+            do {
+                owners = node.owners;
+                int index = Arrays.binarySearch(owners, owner);
+                if (index < 0) {
+                    return false;
+                }
+                updated = delete(owners, index);
+            } while (!OWNERS.compareAndSet(node, owners, updated));
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (owners.length == 1) {
+            ownedPaths.decrementAndGet();
+            prune(node);
+        }
+        return true;
+    }
+
+    private boolean addOwner(Node node, int owner) {
+        int[] owners;
+        int[] updated;
+        do {
+            owners = node.owners;
+            int index = Arrays.binarySearch(owners, owner);
+            if (index >= 0) {
+                return false;
+            }
+            updated = insert(owners, -index - 1, owner);
+        } while (!OWNERS.compareAndSet(node, owners, updated));
+        if (owners.length == 0) {
+            ownedPaths.incrementAndGet();
+        }
+        return true;
+    }
+
+    // Sorted owner ids of the path, the array is never modified afterwards
+    public int[] owners(String path) {
+        lock.readLock().lock();
+        try {
+            Node node = find(path);
+            return node == null ? NO_OWNERS : node.owners;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Node node(String path) {
+        lock.readLock().lock();
+        try {
+            Node node = find(path);
+            return node == null || node.references == 0 ? null : node;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String path(Node node) {
+        lock.readLock().lock();
+        try {
+            List<String> labels = new ArrayList<>();
+            int length = 0;
+            for (Node current = node; current != root; current = current.parent) {
+                labels.add(current.label);
+                length += current.label.length();
+            }
+            StringBuilder path = new StringBuilder(length);
+            for (int i = labels.size() - 1; i >= 0; i--) {
+                path.append(labels.get(i));
+            }
+            return path.toString();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int ownedPaths() {
+        return ownedPaths.get();
+    }
+
+    // Visits every path with owners that starts with the prefix, walking only the subtree below it.
+    // Returns early once the visitor has been called limit times.
+    public void forEachOwned(String prefix, int limit, BiConsumer<String, int[]> visitor) {
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            int matched = 0;
+            int parentLength = 0;
+            while (matched < prefix.length()) {
+                Node child = child(node, prefix.charAt(matched));
+                if (child == null) {
+                    return;
+                }
+                int common = commonPrefix(child.label, prefix, matched);
+                if (common < child.label.length() && matched + common < prefix.length()) {
+                    return;
+                }
+                parentLength = matched;
+                matched += common;
+                node = child;
+            }
+            // the prefix may end inside the label of the node, its subtree matches all the same
+            StringBuilder path = new StringBuilder(prefix.length() + 64);
+            path.append(prefix, 0, parentLength);
+            visit(node, path, new int[] {limit}, visitor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void visit(Node node, StringBuilder path, int[] remaining, BiConsumer<String, int[]> visitor) {
+        int length = path.length();
+        if (node != root) {
+            path.append(node.label);
+        }
+        if (node.owners.length > 0 && remaining[0] > 0) {
+            visitor.accept(path.toString(), node.owners);
+            remaining[0]--;
+        }
+        for (Node child : node.children) {
+            if (remaining[0] == 0) {
+                break;
+            }
+            visit(child, path, remaining, visitor);
+        }
+        path.setLength(length);
+    }
+
+    private Node insert(String path) {
+        Node node = root;
+        int position = 0;
+        while (position < path.length()) {
+            Node child = child(node, path.charAt(position));
+            if (child == null) {
+                child = new Node(node, path.substring(position));
+                node.children = insertChild(node.children, child);
+                return child;
+            }
+            int common = commonPrefix(child.label, path, position);
+            if (common < child.label.length()) {
+                // split the edge, the existing node keeps its identity below the new one
+                Node middle = new Node(node, child.label.substring(0, common));
+                replaceChild(node, child, middle);
+                child.label = child.label.substring(common);
+                child.parent = middle;
+                middle.children = new Node[] {child};
+                child = middle;
+            }
+            position += common;
+            node = child;
+        }
+        return node;
+    }
+
+    private Node find(String path) {
+        Node node = root;
+        int position = 0;
+        while (position < path.length()) {
+            Node child = child(node, path.charAt(position));
+            if (child == null || !path.startsWith(child.label, position)) {
+                return null;
+            }
+            position += child.label.length();
+            node = child;
+        }
+        return node;
+    }
+
+    // Unused since the caller dropped the last reference or owner, unless it was taken again meanwhile or
+    // another caller pruned the node first
+    private void prune(Node node) {
+        lock.writeLock().lock();
+        try {
+            while (node != root && node.parent != null && node.references == 0 && node.owners.length == 0) {
+                Node parent = node.parent;
+                if (node.children.length == 0) {
+                    parent.children = removeChild(parent.children, node);
+                    node.parent = null;
+                    node = parent;
+                } else if (node.children.length == 1) {
+                    Node child = node.children[0];
+                    child.label = node.label + child.label;
+                    child.parent = parent;
+                    replaceChild(parent, node, child);
+                    node.parent = null;
+                    return;
+                } else {
+                    return;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static Node child(Node node, char first) {
+        Node[] children = node.children;
+        int low = 0;
+        int high = children.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char label = children[middle].label.charAt(0);
+            if (label < first) {
+                low = middle + 1;
+            } else if (label > first) {
+                high = middle - 1;
+            } else {
+                return children[middle];
+            }
+        }
+        return null;
+    }
+
+    private static int commonPrefix(String label, String path, int offset) {
+        int max = Math.min(label.length(), path.length() - offset);
+        int common = 0;
+        while (common < max && label.charAt(common) == path.charAt(offset + common)) {
+            common++;
+        }
+        return common;
+    }
+
+    private static Node[] insertChild(Node[] children, Node child) {
+        char first = child.label.charAt(0);
+        int index = 0;
+        while (index < children.length && children[index].label.charAt(0) < first) {
+            index++;
+        }
+        Node[] result = new Node[children.length + 1];
+        System.arraycopy(children, 0, result, 0, index);
+        result[index] = child;
+        System.arraycopy(children, index, result, index + 1, children.length - index);
+        return result;
+    }
+
+    private static Node[] removeChild(Node[] children, Node child) {
+        if (children.length == 1) {
+            return NO_CHILDREN;
+        }
+        Node[] result = new Node[children.length - 1];
+        int next = 0;
+        for (Node existing : children) {
+            if (existing != child) {
+                result[next++] = existing;
+            }
+        }
+        return result;
+    }
+
+    // The replacement starts with the same character, so the order of the children is kept
+    private static void replaceChild(Node parent, Node existing, Node replacement) {
+        Node[] children = parent.children;
+        for (int i = 0; i < children.length; i++) {
+            if (children[i] == existing) {
+                children[i] = replacement;
+                return;
+            }
+        }
+    }
+
+    static int[] insert(int[] ids, int index, int id) {
+        int[] result = new int[ids.length + 1];
+        System.arraycopy(ids, 0, result, 0, index);
+        result[index] = id;
+        System.arraycopy(ids, index, result, index + 1, ids.length - index);
+        return result;
+    }
+
+    static int[] delete(int[] ids, int index) {
+        int[] result = new int[ids.length - 1];
+        System.arraycopy(ids, 0, result, 0, index);
+        System.arraycopy(ids, index + 1, result, index, ids.length - index - 1);
+        return result;
+    }
+}
@@ -0,0 +1,315 @@
+package storage;
+
+import interfaces.Storage;
+import interfaces.UserInterface;
+import utils.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// A FileStorage whose mutations survive a restart. Each mutation is applied in memory and appended to the
+// write-ahead log under one lock, so the log has the order the memory saw. The caller does not wait for the
+// group commit: whenDurable() gives it a future of its changes, so a reactor answers a command once its
+// change is on disk without stopping its other sessions for the fsync. Every snapshotInterval records the
+// log is rotated and a snapshot is written concurrently with new mutations; replaying the newer segments
+// over it is safe because every record sets an absolute state (file present, file absent, user absent),
+// whatever part of them the snapshot already saw.
+public class PersistentFileStorage implements Storage<UserInterface, Set<String>>, Closeable {
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 100_000;
+    private static final String SNAPSHOT = "snapshot.dat";
+    private static final String SNAPSHOT_TMP = "snapshot.tmp";
+    private static final int SNAPSHOT_MAGIC = 0x54525331;
+    private static final int SNAPSHOT_BUFFER_SIZE = 1024 * 1024;
+    private static final byte ADD_FILES = 1;
+    private static final byte REMOVE_FILES = 2;
+    private static final byte REMOVE_USER = 3;
+
+    private final FileStorage files;
+    private final Path directory;
+    private final int snapshotInterval;
+    private final WriteAheadLog log;
+    private final ExecutorService snapshots = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "storage-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Object mutationLock = new Object();
+    private final Object snapshotLock = new Object();
+    // the last record each thread appended and has not asked whenDurable() about yet, 0 for none
+    private final ThreadLocal<long[]> unawaited = ThreadLocal.withInitial(() -> new long[1]);
+    private long recordsSinceSnapshot;
+    private boolean snapshotScheduled;
+
+    public PersistentFileStorage(Path directory) throws IOException {
+        this(directory, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    public PersistentFileStorage(Path directory, int snapshotInterval) throws IOException {
+        this(directory, snapshotInterval, new PathTrie());
+    }
+
+    public PersistentFileStorage(Path directory, int snapshotInterval, PathTrie paths) throws IOException {
+        if (snapshotInterval < 1) {
+            throw new IllegalArgumentException("Snapshot interval should be positive");
+        }
+        this.files = new FileStorage(paths);
+        this.directory = Files.createDirectories(directory);
+        this.snapshotInterval = snapshotInterval;
+        this.log = new WriteAheadLog(directory, recover());
+    }
+
+    @Override
+    public Set<UserInterface> getKeys() {
+        return files.getKeys();
+    }
+
+    @Override
+    public Set<UserInterface> getKeysAfter(UserInterface user) {
+        return files.getKeysAfter(user);
+    }
+
+    @Override
+    public Set<String> listValues(UserInterface user) {
+        return files.listValues(user);
+    }
+
+    @Override
+    public Set<String> remove(UserInterface user) {
+        if (user == null) {
+            return null;
+        }
+        return commit(REMOVE_USER, user, Collections.emptySet(), () -> files.remove(user));
+    }
+
+    @Override
+    public void addValues(UserInterface user, Set<String> files) {
+        if (user == null) {
+            return;
+        }
+        Set<String> added = files == null ? Collections.emptySet() : files;
+        commit(ADD_FILES, user, added, () -> {
+            this.files.addValues(user, added);
+            return null;
+        });
+    }
+
+    @Override
+    public void removeValues(UserInterface user, Set<String> files) {
+        if (user != null && files != null) {
+            commit(REMOVE_FILES, user, files, () -> {
+                this.files.removeValues(user, files);
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> whenDurable() {
+        long[] last = unawaited.get();
+        long sequence = last[0];
+        if (sequence == 0) {
+            return null;
+        }
+        last[0] = 0;
+        return log.whenDurable(sequence);
+    }
+
+    // Rotates the log and writes the current state, the segments before the rotation are deleted afterwards.
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            int firstSegment;
+            synchronized (mutationLock) {
+                firstSegment = log.rotate();
+                recordsSinceSnapshot = 0;
+            }
+            writeSnapshot(firstSegment);
+            WriteAheadLog.deleteSegmentsBefore(directory, firstSegment);
+        }
+    }
+
+    // Takes a final snapshot so the next start has no log to replay.
+    @Override
+    public void close() throws IOException {
+        snapshots.shutdown();
+        try {
+            snapshots.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            snapshot();
+        } finally {
+            log.close();
+        }
+    }
+
+    private <T> T commit(byte operation, UserInterface user, Set<String> files, Supplier<T> mutation) {
+        ByteBuffer record = WriteAheadLog.frame(encode(operation, user, files));
+        try {
+            long sequence;
+            T result;
+            synchronized (mutationLock) {
+                sequence = log.append(record);
+                result = mutation.get();
+                if (++recordsSinceSnapshot >= snapshotInterval && !snapshotScheduled) {
+                    snapshotScheduled = true;
+                    snapshots.execute(this::backgroundSnapshot);
+                }
+            }
+            unawaited.get()[0] = sequence;
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Registry change could not be persisted", e);
+        }
+    }
+
+    private void backgroundSnapshot() {
+        try {
+            snapshot();
+        } catch (IOException e) {
+            Log.error("Error occurred while taking storage snapshot: " + e.getMessage());
+        } finally {
+            synchronized (mutationLock) {
+                snapshotScheduled = false;
+            }
+        }
+    }
+
+    // Loads the snapshot and replays the segments written after it, returns the segment to continue in.
+    private int recover() throws IOException {
+        int firstSegment = readSnapshot();
+        WriteAheadLog.deleteSegmentsBefore(directory, firstSegment);
+        List<Integer> segments = WriteAheadLog.segments(directory);
+        for (int i = 0; i < segments.size(); i++) {
+            recordsSinceSnapshot += WriteAheadLog.replay(WriteAheadLog.segmentPath(directory, segments.get(i)),
+                    i == segments.size() - 1, this::apply);
+        }
+        // a fresh segment, the replayed ones stay until the next snapshot covers them
+        return segments.isEmpty() ? firstSegment : segments.get(segments.size() - 1) + 1;
+    }
+
+    private void apply(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        try {
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+            byte operation = record.readByte();
+            UserInterface user = readUser(record);
+            Set<String> recordFiles = readFiles(record);
+            switch (operation) {
+                case ADD_FILES -> files.addValues(user, recordFiles);
+                case REMOVE_FILES -> files.removeValues(user, recordFiles);
+                case REMOVE_USER -> files.remove(user);
+                default -> throw new StreamCorruptedException("Unknown log operation " + operation);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Write-ahead log record is malformed", e);
+        }
+    }
+
+    private int readSnapshot() throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT);
+        if (!Files.exists(snapshot)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot), SNAPSHOT_BUFFER_SIZE))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new StreamCorruptedException(snapshot + " is not a storage snapshot");
+            }
+            int firstSegment = in.readInt();
+            while (in.readBoolean()) {
+                files.addValues(readUser(in), readFiles(in));
+            }
+            return firstSegment;
+        }
+    }
+
+    private void writeSnapshot(int firstSegment) throws IOException {
+        Path tmp = directory.resolve(SNAPSHOT_TMP);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), SNAPSHOT_BUFFER_SIZE));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(firstSegment);
+            for (UserInterface user : files.getKeys()) {
+                out.writeBoolean(true);
+                writeUser(out, user);
+                writeFiles(out, files.listValues(user));
+            }
+            out.writeBoolean(false);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static byte[] encode(byte operation, UserInterface user, Set<String> files) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(bytes);
+            record.writeByte(operation);
+            writeUser(record, user);
+            writeFiles(record, files);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeUser(DataOutput out, UserInterface user) throws IOException {
+        out.writeUTF(user.getUsername());
+        out.writeUTF(user.getHost());
+        out.writeInt(user.getPort());
+    }
+
+    private static UserInterface readUser(DataInput in) throws IOException {
+        return new User(in.readUTF(), in.readUTF(), in.readInt());
+    }
+
+    private static void writeFiles(DataOutput out, Set<String> files) throws IOException {
+        // a concurrent snapshot may see the set change, so the count is taken from a copy
+        String[] copy = files.toArray(new String[0]);
+        out.writeInt(copy.length);
+        for (String file : copy) {
+            out.writeUTF(file);
+        }
+    }
+
+    private static Set<String> readFiles(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new StreamCorruptedException("Negative files count");
+        }
+        Set<String> files = new HashSet<>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            files.add(in.readUTF());
+        }
+        return files;
+    }
+}
@@ -0,0 +1,77 @@
+package storage;
+
+import interfaces.UserInterface;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Bounded history of the users joining and leaving the registry. Every change gets the next version,
+// so a client that knows version V can catch up with the changes after it as long as they are retained.
+// A log starting at an epoch leaves the versions handed out before a restart behind it, so a client still
+// holding one is sent a snapshot of the recovered registry instead of changes it never saw.
+public class RegistryChangeLog {
+    public static final int DEFAULT_CAPACITY = 16 * 1024;
+
+    public enum ChangeType {
+        JOINED,
+        LEFT
+    }
+
+    public record Change(long version, ChangeType type, UserInterface user) {
+    }
+
+    private final Change[] changes;
+    private final long initialVersion;
+    private long version;
+
+    public RegistryChangeLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RegistryChangeLog(int capacity) {
+        this(capacity, 0);
+    }
+
+    public RegistryChangeLog(int capacity, long initialVersion) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity should be positive");
+        }
+        if (initialVersion < 0) {
+            throw new IllegalArgumentException("Initial version should not be negative");
+        }
+        this.changes = new Change[capacity];
+        this.initialVersion = initialVersion;
+        this.version = initialVersion;
+    }
+
+    // Microseconds since the Unix epoch, ahead of the versions of an earlier run unless it averaged
+    // over a million changes a second
+    public static RegistryChangeLog startingNow() {
+        return new RegistryChangeLog(DEFAULT_CAPACITY,
+                TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()));
+    }
+
+    public synchronized long version() {
+        return version;
+    }
+
+    public synchronized long append(ChangeType type, UserInterface user) {
+        version++;
+        changes[(int) (version % changes.length)] = new Change(version, type, user);
+        return version;
+    }
+
+    // The changes after the given version in order, or null when some of them are no longer retained
+    // (or the version is unknown) and the client needs a snapshot instead.
+    public synchronized List<Change> changesSince(long since) {
+        if (since < initialVersion || since > version || since < version - changes.length) {
+            return null;
+        }
+        List<Change> result = new ArrayList<>((int) (version - since));
+        for (long v = since + 1; v <= version; v++) {
+            result.add(changes[(int) (v % changes.length)]);
+        }
+        return result;
+    }
+}
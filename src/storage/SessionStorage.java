@@ -4,15 +4,18 @@ import interfaces.Storage;
 import interfaces.UserInterface;
 
 import java.nio.channels.SocketChannel;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SessionStorage implements Storage<SocketChannel, UserInterface> {
-    private final Map<SocketChannel, UserInterface> sessions = new HashMap<>();
+    private final Map<SocketChannel, UserInterface> sessions = new ConcurrentHashMap<>();
+    private final Set<SocketChannel> channels = Collections.unmodifiableSet(sessions.keySet());
+
     @Override
     public Set<SocketChannel> getKeys() {
-        return Set.copyOf(sessions.keySet());
+        return channels;
     }
 
     @Override
@@ -33,12 +36,15 @@ public class SessionStorage implements Storage<SocketChannel, UserInterface> {
 
     @Override
     public void addValues(SocketChannel session, UserInterface user) {
-        if (session != null) {
+        if (session != null && user != null) {
             sessions.put(session, user);
         }
     }
 
     @Override
     public void removeValues(SocketChannel session, UserInterface user) {
+        if (session != null && user != null) {
+            sessions.remove(session, user);
+        }
     }
 }
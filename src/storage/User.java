@@ -30,7 +30,10 @@ public class User implements UserInterface {
 
     @Override
     public int hashCode() {
-        return username.hashCode() + host.hashCode() + port.hashCode();
+        // a plain sum collides for swapped or shifted fields, e.g. the same host with ports a and b
+        int hash = username.hashCode();
+        hash = 31 * hash + host.hashCode();
+        return 31 * hash + port;
     }
 
     @Override
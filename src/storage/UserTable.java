@@ -0,0 +1,131 @@
+package storage;
+
+import interfaces.UserInterface;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Interns users into dense int ids so structures can store an int per user instead of a reference to one
+// of the many equal User instances built while parsing commands. Ids are reference counted by the
+// structures holding them. Each user's count changes atomically in its own map entry, so registrations of
+// different users never wait for each other. The id of a released user goes to the back of a free list
+// and is given to a later newcomer, which keeps the table as large as the most users ever registered at
+// once; being reused last, an id a racing reader still holds is far more likely to resolve to null than
+// to somebody else.
+public class UserTable {
+    public static final int NO_ID = -1;
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_IDS = Integer.MAX_VALUE - CHUNK_SIZE;
+
+    private final ConcurrentHashMap<UserInterface, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Integer> freeIds = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    // id -> canonical user, in chunks that are never moved, so a slot set in one is never lost to a resize
+    private final AtomicReference<Chunk[]> chunks = new AtomicReference<>(new Chunk[1]);
+
+    private static final class Entry {
+        private final int id;
+        private int references;
+
+        private Entry(int id) {
+            this.id = id;
+        }
+    }
+
+    private static final class Chunk {
+        private final AtomicReferenceArray<UserInterface> users = new AtomicReferenceArray<>(CHUNK_SIZE);
+    }
+
+    // Returns the id of the user, taking one reference to it
+    public int acquire(UserInterface user) {
+        return entries.compute(user, (key, entry) -> {
+            if (entry == null) {
+                entry = new Entry(newId());
+                chunk(entry.id).users.set(entry.id & (CHUNK_SIZE - 1), key);
+            }
+            entry.references++;
+            return entry;
+        }).id;
+    }
+
+    public void release(int id) {
+        UserInterface user = user(id);
+        boolean[] released = {false};
+        if (user != null) {
+            entries.computeIfPresent(user, (key, entry) -> {
+                if (entry.id != id) {
+                    return entry;
+                }
+                released[0] = true;
+                if (--entry.references > 0) {
+                    return entry;
+                }
+                // cleared before the id is free, so its next holder is never overwritten
+                chunk(id).users.set(id & (CHUNK_SIZE - 1), null);
+                freeIds.add(id);
+                return null;
+            });
+        }
+        if (!released[0]) {
+            throw new IllegalArgumentException("User id " + id + " is not acquired");
+        }
+    }
+
+    public int idOf(UserInterface user) {
+        Entry entry = user == null ? null : entries.get(user);
+        return entry == null ? NO_ID : entry.id;
+    }
+
+    // The canonical instance of the id, null while nobody holds it
+    public UserInterface user(int id) {
+        Chunk[] current = chunks.get();
+        int index = id >>> CHUNK_BITS;
+        if (id < 0 || index >= current.length || current[index] == null) {
+            return null;
+        }
+        return current[index].users.get(id & (CHUNK_SIZE - 1));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private int newId() {
+        Integer free = freeIds.poll();
+        if (free != null) {
+            return free;
+        }
+        int id = nextId.getAndIncrement();
+        if (id < 0 || id >= MAX_IDS) {
+            nextId.set(MAX_IDS);
+            throw new IllegalStateException("Too many users registered at once");
+        }
+        return id;
+    }
+
+    // The chunk of the id, added together with any missing before it by replacing the top level array
+    private Chunk chunk(int id) {
+        int index = id >>> CHUNK_BITS;
+        while (true) {
+            Chunk[] current = chunks.get();
+            if (index < current.length && current[index] != null) {
+                return current[index];
+            }
+            Chunk[] larger = Arrays.copyOf(current, index < current.length ? current.length : Math.max(index + 1, current.length * 2));
+            for (int i = 0; i <= index; i++) {
+                if (larger[i] == null) {
+                    larger[i] = new Chunk();
+                }
+            }
+            if (chunks.compareAndSet(current, larger)) {
+                return larger[index];
+            }
+        }
+    }
+}
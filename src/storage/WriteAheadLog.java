@@ -0,0 +1,269 @@
+package storage;
+
+import utils.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Append-only log split into numbered segments. Records appended by any thread are written by a single
+// writer thread, which forces everything collected since its last write with one fsync (group commit) and
+// then completes the futures of the records it made durable, so no appending thread has to wait for it.
+// Every record is <length><crc32><payload>, so a write torn by a crash is detected and dropped at recovery.
+class WriteAheadLog implements Closeable {
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int RECORD_HEADER_SIZE = 8;
+    // Marks the place in the pending records where the writer switches to the next segment
+    private static final ByteBuffer ROTATE = ByteBuffer.allocate(0);
+
+    private final Path directory;
+    private final Thread writer;
+    private List<ByteBuffer> pending = new ArrayList<>();
+    // sequences are handed to whenDurable() by many threads, not necessarily in order
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(Comparator.comparingLong(Waiter::sequence));
+    private long appended;
+    private long durable;
+    private int segment;
+    private boolean closed;
+    private IOException failure;
+    // Owned by the writer thread
+    private FileChannel channel;
+    private int writerSegment;
+
+    private record Waiter(long sequence, CompletableFuture<Void> durable) {
+    }
+
+    WriteAheadLog(Path directory, int segment) throws IOException {
+        this.directory = directory;
+        this.segment = segment;
+        this.writerSegment = segment;
+        this.channel = openSegment(segment);
+        this.writer = new Thread(this::writeLoop, "wal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    static ByteBuffer frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        return record.flip();
+    }
+
+    // Returns the sequence number to pass to whenDurable()
+    synchronized long append(ByteBuffer record) throws IOException {
+        checkOpen();
+        pending.add(record);
+        notifyAll();
+        return ++appended;
+    }
+
+    // Records appended after this call go to the returned segment
+    synchronized int rotate() throws IOException {
+        checkOpen();
+        pending.add(ROTATE);
+        notifyAll();
+        return ++segment;
+    }
+
+    // Completes once the record and all those before it are forced to disk, null when they already are
+    synchronized CompletableFuture<Void> whenDurable(long sequence) {
+        if (durable >= sequence) {
+            return null;
+        }
+        if (failure != null || !writer.isAlive()) {
+            return CompletableFuture.failedFuture(failure != null ? failure : new IOException("Write-ahead log is closed"));
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        waiters.add(new Waiter(sequence, future));
+        return future;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the log");
+        }
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    // Segment numbers present in the directory, in ascending order
+    static List<Integer> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Integer.parseInt(name, SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length(), 10))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    static Path segmentPath(Path directory, int segment) {
+        return directory.resolve(SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+    }
+
+    static void deleteSegmentsBefore(Path directory, int segment) throws IOException {
+        for (int existing : segments(directory)) {
+            if (existing < segment) {
+                Files.deleteIfExists(segmentPath(directory, existing));
+            }
+        }
+    }
+
+    // Passes the payload of every intact record to the consumer and returns their count. Only the last
+    // segment may end with a torn record, it is cut off so the segment can be replayed again later.
+    static long replay(Path segment, boolean last, Consumer<ByteBuffer> records) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            MappedByteBuffer log = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32 crc = new CRC32();
+            long count = 0;
+            while (log.remaining() >= RECORD_HEADER_SIZE) {
+                int length = log.getInt(log.position());
+                int checksum = log.getInt(log.position() + 4);
+                if (length < 0 || length > log.remaining() - RECORD_HEADER_SIZE) {
+                    break;
+                }
+                ByteBuffer payload = log.slice(log.position() + RECORD_HEADER_SIZE, length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                records.accept(payload);
+                log.position(log.position() + RECORD_HEADER_SIZE + length);
+                count++;
+            }
+            if (log.position() < size) {
+                if (!last) {
+                    throw new StreamCorruptedException("Corrupted record in " + segment + " at offset " + log.position());
+                }
+                channel.truncate(log.position());
+                channel.force(true);
+            }
+            return count;
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                List<ByteBuffer> batch;
+                long target;
+                synchronized (this) {
+                    while (pending.isEmpty() && !closed) {
+                        wait();
+                    }
+                    if (pending.isEmpty()) {
+                        break;
+                    }
+                    batch = pending;
+                    pending = new ArrayList<>();
+                    target = appended;
+                }
+                write(batch);
+                List<Waiter> completed = new ArrayList<>();
+                synchronized (this) {
+                    durable = target;
+                    while (!waiters.isEmpty() && waiters.peek().sequence() <= durable) {
+                        completed.add(waiters.poll());
+                    }
+                }
+                // outside the lock, the callbacks run on this thread
+                for (Waiter waiter : completed) {
+                    waiter.durable().complete(null);
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            failWaiters();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Log.error("Error occurred while closing write-ahead log: " + e.getMessage());
+            }
+        }
+    }
+
+    // The records of the waiters left will never be written
+    private void failWaiters() {
+        List<Waiter> failed;
+        IOException cause;
+        synchronized (this) {
+            failed = new ArrayList<>(waiters);
+            waiters.clear();
+            cause = failure != null ? failure : new IOException("Write-ahead log is closed");
+        }
+        for (Waiter waiter : failed) {
+            waiter.durable().completeExceptionally(cause);
+        }
+    }
+
+    private void write(List<ByteBuffer> batch) throws IOException {
+        int from = 0;
+        for (int i = 0; i <= batch.size(); i++) {
+            if (i < batch.size() && batch.get(i) != ROTATE) {
+                continue;
+            }
+            if (i > from) {
+                ByteBuffer[] records = batch.subList(from, i).toArray(new ByteBuffer[0]);
+                while (records[records.length - 1].hasRemaining()) {
+                    channel.write(records);
+                }
+                channel.force(false);
+            }
+            if (i < batch.size()) {
+                channel.close();
+                channel = openSegment(++writerSegment);
+            }
+            from = i + 1;
+        }
+    }
+
+    private FileChannel openSegment(int segment) throws IOException {
+        return FileChannel.open(segmentPath(directory, segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Write-ahead log is closed");
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
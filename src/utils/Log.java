@@ -0,0 +1,64 @@
+package utils;
+
+import java.util.Locale;
+
+// Console logging behind a level switch, set with -Dtorrent.log.level=off|error|info|debug or setLevel().
+// The default info level leaves out the per-command lines, which cost the reactors more than the commands.
+// Callers on the hot paths check isEnabled() before building a debug message.
+public final class Log {
+    public enum Level {
+        OFF,
+        ERROR,
+        INFO,
+        DEBUG
+    }
+
+    public static final String LEVEL_PROPERTY = "torrent.log.level";
+
+    private static volatile Level level = parseLevel(System.getProperty(LEVEL_PROPERTY));
+
+    private Log() {}
+
+    // A mistyped level must not keep the server or the client from starting
+    static Level parseLevel(String value) {
+        if (value == null) {
+            return Level.INFO;
+        }
+        try {
+            return Level.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown " + LEVEL_PROPERTY + " '" + value + "', logging at info");
+            return Level.INFO;
+        }
+    }
+
+    public static Level level() {
+        return level;
+    }
+
+    public static void setLevel(Level level) {
+        Log.level = level;
+    }
+
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel != Level.OFF && messageLevel.compareTo(level) <= 0;
+    }
+
+    public static void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    public static void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    public static void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    private static void log(Level messageLevel, String message) {
+        if (isEnabled(messageLevel)) {
+            System.out.println(message);
+        }
+    }
+}
@@ -3,7 +3,13 @@ package utils;
 import interfaces.UserInterface;
 import storage.User;
 
+import java.util.Comparator;
+
 public class UserUtils {
+    public static final Comparator<UserInterface> USER_ORDER = Comparator.comparing(UserInterface::getUsername)
+            .thenComparing(UserInterface::getHost)
+            .thenComparing(UserInterface::getPort);
+
     private UserUtils() {}
     private static boolean isInteger(String str) {
         try {
@@ -0,0 +1,86 @@
+package client;
+
+import messages.ResponseStatus;
+import messages.WireFormat;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientRequestHandlerTest {
+    private static final String HOST = "localhost";
+    private static final int PEER_PORT = 7962;
+
+    private static Path source;
+    private static Path unshared;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        MiniServer peer = new MiniServer(HOST, PEER_PORT, WireFormat.BINARY.codec());
+        Thread server = new Thread(peer);
+        server.setDaemon(true);
+        server.start();
+        source = Files.writeString(Files.createTempDirectory("handler").resolve("source.txt"), "content");
+        unshared = Files.writeString(source.resolveSibling("unshared.txt"), "secret");
+        peer.sharedFiles().share(List.of(source.toString()));
+        Thread.sleep(200);
+    }
+
+    @Test
+    void pieceOverflowingFileSizeIsRejectedTest() throws IOException {
+        Path destination = source.resolveSibling("destination.txt");
+        try (PeerConnection connection = new PeerConnection(HOST, PEER_PORT, WireFormat.BINARY.codec());
+             FileChannel file = FileChannel.open(destination, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            assertEquals(ResponseStatus.ERROR, connection.downloadPiece(source.toString(), 1, Long.MAX_VALUE, file).status());
+            assertEquals(ResponseStatus.ERROR, connection.downloadPiece(source.toString(), 8, 0, file).status());
+            // the connection is still in step after the refusals
+            assertEquals(ResponseStatus.OK, connection.downloadPiece(source.toString(), 3, 4, file).status());
+        }
+        // pieces are written at their offset in the destination
+        assertEquals("tent", Files.readString(destination).substring(3));
+    }
+
+    @Test
+    void hashesOutsidePieceSizeRangeAreRefusedTest() throws IOException {
+        try (PeerConnection connection = new PeerConnection(HOST, PEER_PORT, WireFormat.BINARY.codec())) {
+            assertThrows(IOException.class, () -> connection.hashes(source.toString(), 1));
+            assertThrows(IOException.class, () -> connection.hashes(source.toString(), PieceHashes.MIN_PIECE_SIZE + 1));
+            assertThrows(IOException.class, () -> connection.hashes(source.toString(), Integer.MAX_VALUE));
+            assertEquals(1, connection.hashes(source.toString(), PieceHashes.MIN_PIECE_SIZE).length);
+        }
+    }
+
+    @Test
+    void unsharedFilesAreRefusedTest() throws IOException {
+        Path destination = source.resolveSibling("refused.txt");
+        // the same file through a path of its own is still served
+        String sharedThroughParent = source.getParent().resolve("..").resolve(source.getParent().getFileName())
+                .resolve(source.getFileName()).toString();
+        String unsharedThroughParent = source.getParent().resolve("..").resolve(source.getParent().getFileName())
+                .resolve(unshared.getFileName()).toString();
+        try (PeerConnection connection = new PeerConnection(HOST, PEER_PORT, WireFormat.BINARY.codec());
+             FileChannel file = FileChannel.open(destination, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            assertThrows(IOException.class, () -> connection.size(unshared.toString()));
+            assertThrows(IOException.class, () -> connection.size(unsharedThroughParent));
+            assertThrows(IOException.class, () -> connection.size("/etc/passwd"));
+            assertThrows(IOException.class, () -> connection.hashes(unshared.toString(), PieceHashes.MIN_PIECE_SIZE));
+            assertEquals(ResponseStatus.ERROR, connection.downloadPiece(unshared.toString(), 0, 6, file).status());
+            assertEquals(7, connection.size(sharedThroughParent));
+        }
+        assertEquals(0, Files.size(destination));
+    }
+
+    @Test
+    void piecesCountIsCappedTest() {
+        PieceHashes.checkPiecesCount((long) PieceHashes.MAX_PIECES * PieceHashes.MIN_PIECE_SIZE, PieceHashes.MIN_PIECE_SIZE);
+        assertThrows(IllegalArgumentException.class,
+                () -> PieceHashes.checkPiecesCount((long) PieceHashes.MAX_PIECES * PieceHashes.MIN_PIECE_SIZE + 1, PieceHashes.MIN_PIECE_SIZE));
+    }
+}
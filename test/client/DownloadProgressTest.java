@@ -0,0 +1,63 @@
+package client;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownloadProgressTest {
+    private static final int PIECE_SIZE = 1024;
+    private static final long SIZE = PIECE_SIZE * 20L + 1;
+    private static final byte[] DIGEST = new byte[32];
+
+    private Path destination;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        destination = Files.createTempDirectory("progress").resolve("file.bin");
+    }
+
+    @Test
+    void verifiedPiecesSurviveReopenTest() throws IOException {
+        try (DownloadProgress progress = DownloadProgress.open(destination, SIZE, PIECE_SIZE, DIGEST)) {
+            progress.markVerified(0);
+            progress.markVerified(9);
+            progress.markVerified(20);
+        }
+        try (DownloadProgress progress = DownloadProgress.open(destination, SIZE, PIECE_SIZE, DIGEST)) {
+            assertTrue(progress.isVerified(0));
+            assertTrue(progress.isVerified(9));
+            assertTrue(progress.isVerified(20));
+            assertFalse(progress.isVerified(8));
+            assertEquals(3, progress.verifiedCount());
+            assertFalse(progress.isComplete());
+        }
+    }
+
+    @Test
+    void progressOfOtherFileVersionIsDiscardedTest() throws IOException {
+        try (DownloadProgress progress = DownloadProgress.open(destination, SIZE, PIECE_SIZE, DIGEST)) {
+            progress.markVerified(3);
+        }
+        byte[] otherDigest = new byte[32];
+        otherDigest[0] = 1;
+        try (DownloadProgress progress = DownloadProgress.open(destination, SIZE, PIECE_SIZE, otherDigest)) {
+            assertEquals(0, progress.verifiedCount());
+        }
+    }
+
+    @Test
+    void deleteRemovesSidecarTest() throws IOException {
+        DownloadProgress progress = DownloadProgress.open(destination, SIZE, PIECE_SIZE, DIGEST);
+        for (int piece = 0; piece < 21; piece++) {
+            progress.markVerified(piece);
+        }
+        assertTrue(progress.isComplete());
+        progress.delete();
+        assertFalse(Files.exists(DownloadProgress.sidecarOf(destination)));
+    }
+}
@@ -0,0 +1,144 @@
+package client;
+
+import interfaces.DownloadListener;
+import interfaces.UserInterface;
+import messages.Response;
+import messages.ResponseStatus;
+import org.junit.jupiter.api.Test;
+import storage.User;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownloadSchedulerTest {
+    private static final UserInterface FIRST_PEER = new User("first", "localhost", 1);
+    private static final UserInterface SECOND_PEER = new User("second", "localhost", 2);
+    private static final UserInterface THIRD_PEER = new User("third", "localhost", 3);
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+    private final List<List<UserInterface>> startedPeers = Collections.synchronizedList(new ArrayList<>());
+
+    // Records the start and holds the transfer until the latch opens
+    private Download submit(DownloadScheduler scheduler, String name, DownloadPriority priority, CountDownLatch release,
+                            UserInterface... holders) {
+        Download download = new Download(name, Path.of(name), priority, DownloadListener.NONE);
+        scheduler.submit(download, List.of(holders), priority, peers -> {
+            started.add(name);
+            startedPeers.add(peers);
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return new Response(ResponseStatus.OK, name);
+        });
+        return download;
+    }
+
+    private static void awaitResult(Download download) throws Exception {
+        assertEquals(ResponseStatus.OK, download.result().get(5, TimeUnit.SECONDS).status());
+        // the slot is given back right after the result completes
+        Thread.sleep(50);
+    }
+
+    @Test
+    void globalCapQueuesDownloadsTest() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(executor, 2, 10);
+        CountDownLatch first = new CountDownLatch(1);
+        CountDownLatch rest = new CountDownLatch(1);
+        Download a = submit(scheduler, "a", DownloadPriority.NORMAL, first, FIRST_PEER);
+        submit(scheduler, "b", DownloadPriority.NORMAL, rest, SECOND_PEER);
+        Download c = submit(scheduler, "c", DownloadPriority.NORMAL, rest, THIRD_PEER);
+        assertEquals(2, scheduler.active());
+        assertEquals(1, scheduler.queued());
+        assertTrue(c.isQueued());
+
+        first.countDown();
+        awaitResult(a);
+        assertFalse(c.isQueued());
+        assertEquals(2, scheduler.active());
+        assertEquals(0, scheduler.queued());
+        rest.countDown();
+        awaitResult(c);
+        assertEquals(0, scheduler.active());
+    }
+
+    @Test
+    void peerCapPassesOverBusyPeerTest() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(executor, 10, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        submit(scheduler, "first-a", DownloadPriority.NORMAL, release, FIRST_PEER);
+        Download waiting = submit(scheduler, "first-b", DownloadPriority.NORMAL, release, FIRST_PEER);
+        Download other = submit(scheduler, "second", DownloadPriority.NORMAL, release, SECOND_PEER);
+        Download shared = submit(scheduler, "shared", DownloadPriority.NORMAL, release, FIRST_PEER, THIRD_PEER);
+        Thread.sleep(100);
+        assertTrue(waiting.isQueued());
+        assertFalse(other.isQueued());
+        // starts with the holder that still has room
+        assertFalse(shared.isQueued());
+        assertEquals(List.of(THIRD_PEER), startedPeers.get(started.indexOf("shared")));
+
+        release.countDown();
+        awaitResult(waiting);
+        assertEquals(0, scheduler.active());
+    }
+
+    @Test
+    void priorityThenRarestFirstOrderTest() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(executor, 1, 10);
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(0);
+        Download running = submit(scheduler, "running", DownloadPriority.NORMAL, blocker, FIRST_PEER);
+        submit(scheduler, "low", DownloadPriority.LOW, release, FIRST_PEER);
+        submit(scheduler, "common", DownloadPriority.NORMAL, release, FIRST_PEER, SECOND_PEER, THIRD_PEER);
+        submit(scheduler, "rare", DownloadPriority.NORMAL, release, SECOND_PEER);
+        Download last = submit(scheduler, "urgent", DownloadPriority.HIGH, release, FIRST_PEER, SECOND_PEER);
+        assertEquals(4, scheduler.queued());
+
+        blocker.countDown();
+        awaitResult(running);
+        awaitResult(last);
+        Thread.sleep(200);
+        assertEquals(List.of("running", "urgent", "rare", "common", "low"), started);
+    }
+
+    @Test
+    void cancelledQueuedDownloadNeverStartsTest() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(executor, 1, 10);
+        CountDownLatch blocker = new CountDownLatch(1);
+        Download running = submit(scheduler, "running", DownloadPriority.NORMAL, blocker, FIRST_PEER);
+        Download cancelled = submit(scheduler, "cancelled", DownloadPriority.NORMAL, new CountDownLatch(0), FIRST_PEER);
+        Download next = submit(scheduler, "next", DownloadPriority.NORMAL, new CountDownLatch(0), FIRST_PEER);
+        assertEquals(2, scheduler.queued());
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.isQueued());
+        assertEquals(1, scheduler.queued());
+
+        blocker.countDown();
+        awaitResult(running);
+        awaitResult(next);
+        assertEquals(List.of("running", "next"), started);
+        assertEquals(0, scheduler.queued());
+    }
+
+    @Test
+    void closeFailsQueuedDownloadsTest() {
+        DownloadScheduler scheduler = new DownloadScheduler(executor, 1, 10);
+        submit(scheduler, "running", DownloadPriority.NORMAL, new CountDownLatch(1), FIRST_PEER);
+        Download queued = submit(scheduler, "queued", DownloadPriority.NORMAL, new CountDownLatch(0), FIRST_PEER);
+        scheduler.close();
+        assertTrue(queued.result().isCompletedExceptionally());
+        Download late = submit(scheduler, "late", DownloadPriority.NORMAL, new CountDownLatch(0), FIRST_PEER);
+        assertTrue(late.result().isCompletedExceptionally());
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,137 @@
+package client;
+
+import messages.WireFormat;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeerConnectionPoolTest {
+    private static final String HOST = "localhost";
+    private static final int PEER_PORT = 7954;
+    private static final int CLOSING_PEER_PORT = 7955;
+
+    private static Path source;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        MiniServer peer = new MiniServer(HOST, PEER_PORT, WireFormat.BINARY.codec());
+        Thread server = new Thread(peer);
+        server.setDaemon(true);
+        server.start();
+        source = Files.writeString(Files.createTempDirectory("pool").resolve("source.txt"), "pooled");
+        peer.sharedFiles().share(List.of(source.toString()));
+        Thread.sleep(200);
+    }
+
+    private static PeerConnectionPool pool(int maxConnectionsPerPeer, long idleTimeoutMillis) {
+        return new PeerConnectionPool(WireFormat.BINARY.codec(), maxConnectionsPerPeer, idleTimeoutMillis);
+    }
+
+    @Test
+    void acquireReusesReturnedConnectionTest() throws IOException {
+        try (PeerConnectionPool pool = pool(2, 10_000)) {
+            PeerConnection first = pool.acquire(HOST, PEER_PORT);
+            assertEquals(6, first.size(source.toString()));
+            first.close();
+            PeerConnection second = pool.acquire(HOST, PEER_PORT);
+            assertSame(first, second);
+            assertEquals(6, second.size(source.toString()));
+            second.close();
+            assertEquals(1, pool.createdConnections());
+            assertEquals(1, pool.reusedConnections());
+        }
+    }
+
+    @Test
+    void acquireWaitsForConnectionOverPeerCapTest() throws Exception {
+        try (PeerConnectionPool pool = pool(1, 10_000)) {
+            PeerConnection first = pool.acquire(HOST, PEER_PORT);
+            CompletableFuture<PeerConnection> waiting = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return pool.acquire(HOST, PEER_PORT);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Thread.sleep(200);
+            assertFalse(waiting.isDone());
+            first.close();
+            PeerConnection second = waiting.get(5, TimeUnit.SECONDS);
+            assertSame(first, second);
+            second.close();
+            assertEquals(1, pool.createdConnections());
+        }
+    }
+
+    @Test
+    void acquireSkipsBrokenConnectionTest() throws IOException {
+        try (PeerConnectionPool pool = pool(2, 10_000)) {
+            PeerConnection first = pool.acquire(HOST, PEER_PORT);
+            // the piece is left unread on the socket when its destination cannot be written
+            FileChannel closed = FileChannel.open(source);
+            closed.close();
+            assertThrows(IOException.class, () -> first.downloadPiece(source.toString(), 0, 6, closed));
+            first.close();
+            PeerConnection second = pool.acquire(HOST, PEER_PORT);
+            assertNotSame(first, second);
+            assertEquals(6, second.size(source.toString()));
+            second.close();
+            assertEquals(2, pool.createdConnections());
+        }
+    }
+
+    @Test
+    void acquireSkipsConnectionClosedByPeerTest() throws Exception {
+        try (ServerSocketChannel peer = ServerSocketChannel.open().bind(new InetSocketAddress(HOST, CLOSING_PEER_PORT));
+             PeerConnectionPool pool = pool(2, 10_000)) {
+            PeerConnection first = pool.acquire(HOST, CLOSING_PEER_PORT);
+            SocketChannel accepted = peer.accept();
+            first.close();
+            // the peer goes away while the connection sits idle in the pool
+            accepted.close();
+            Thread.sleep(100);
+            assertFalse(first.isHealthy());
+            PeerConnection second = pool.acquire(HOST, CLOSING_PEER_PORT);
+            assertNotSame(first, second);
+            peer.accept().close();
+            assertEquals(2, pool.createdConnections());
+            assertEquals(0, pool.reusedConnections());
+        }
+    }
+
+    @Test
+    void acquireSkipsExpiredConnectionTest() throws Exception {
+        try (PeerConnectionPool pool = pool(2, 100)) {
+            PeerConnection first = pool.acquire(HOST, PEER_PORT);
+            first.close();
+            Thread.sleep(300);
+            PeerConnection second = pool.acquire(HOST, PEER_PORT);
+            assertNotSame(first, second);
+            second.close();
+            assertEquals(0, pool.reusedConnections());
+        }
+    }
+
+    @Test
+    void poolWithoutIdleTimeoutClosesReturnedConnectionsTest() throws IOException {
+        try (PeerConnectionPool pool = pool(2, 0)) {
+            PeerConnection first = pool.acquire(HOST, PEER_PORT);
+            first.close();
+            assertFalse(first.isHealthy());
+            pool.acquire(HOST, PEER_PORT).close();
+            assertEquals(2, pool.createdConnections());
+        }
+    }
+}
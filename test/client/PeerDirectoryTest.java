@@ -0,0 +1,78 @@
+package client;
+
+import messages.Response;
+import messages.ResponseStatus;
+import org.junit.jupiter.api.Test;
+import storage.User;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeerDirectoryTest {
+    private static final String NL = System.lineSeparator();
+
+    @Test
+    void pollAppliesChangesSinceVersionTest() {
+        PeerDirectory directory = new PeerDirectory();
+        directory.poll(version -> new Response(ResponseStatus.OK, "snapshot=4" + NL + "+Pesho123-127.0.0.1:2713"
+                + NL + "+Gosho321-127.0.0.1:2314"));
+        directory.poll(version -> new Response(ResponseStatus.OK, "version=" + (version + 1) + NL + "-Gosho321-127.0.0.1:2314"));
+        assertEquals(5, directory.version());
+        assertEquals(Set.of(new User("Pesho123", "127.0.0.1", 2713)), directory.users());
+    }
+
+    @Test
+    void resyncDuringPollIsNotOverwrittenTest() {
+        PeerDirectory directory = new PeerDirectory();
+        directory.poll(version -> new Response(ResponseStatus.OK, "version=6"));
+        directory.poll(version -> {
+            // pushed while the poll was on its way back
+            directory.applyEvents("resync");
+            return new Response(ResponseStatus.OK, "version=7" + NL + "+Pesho123-127.0.0.1:2713");
+        });
+        assertEquals(-1, directory.version());
+        assertTrue(directory.users().isEmpty());
+
+        AtomicInteger asked = new AtomicInteger();
+        directory.poll(version -> {
+            asked.set((int) version);
+            return new Response(ResponseStatus.OK, "snapshot=9" + NL + "+Gosho321-127.0.0.1:2314");
+        });
+        assertEquals(-1, asked.get());
+        assertEquals(9, directory.version());
+        assertEquals(Set.of(new User("Gosho321", "127.0.0.1", 2314)), directory.users());
+    }
+
+    @Test
+    void failedPollsKeepRenewingTest() throws Exception {
+        PeerDirectory directory = new PeerDirectory();
+        AtomicInteger polls = new AtomicInteger();
+        CountDownLatch renewals = new CountDownLatch(4);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            ScheduledFuture<?> polling = directory.pollEvery(scheduler, version -> {
+                renewals.countDown();
+                return switch (polls.incrementAndGet()) {
+                    case 1 -> throw new IOException("Tracker is unreachable");
+                    // a line the client cannot parse
+                    case 2 -> new Response(ResponseStatus.OK, "version=two");
+                    default -> new Response(ResponseStatus.OK, "version=3" + NL + "+Pesho123-127.0.0.1:2713");
+                };
+            }, 10, TimeUnit.MILLISECONDS);
+            assertTrue(renewals.await(5, TimeUnit.SECONDS));
+            assertFalse(polling.isDone());
+            assertEquals(3, directory.version());
+            assertEquals(Set.of(new User("Pesho123", "127.0.0.1", 2713)), directory.users());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
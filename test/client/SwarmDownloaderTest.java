@@ -0,0 +1,136 @@
+package client;
+
+import interfaces.UserInterface;
+import messages.Response;
+import messages.ResponseStatus;
+import messages.WireFormat;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import storage.User;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SwarmDownloaderTest {
+    private static final String HOST = "localhost";
+    private static final int PIECE_SIZE = 64 * 1024;
+    private static final UserInterface FIRST_PEER = new User("first", HOST, 7951);
+    private static final UserInterface SECOND_PEER = new User("second", HOST, 7952);
+    private static final UserInterface OFFLINE_PEER = new User("offline", HOST, 7953);
+    private static final UserInterface STALLED_PEER = new User("stalled", HOST, 7963);
+
+    private static Path directory;
+    private static Path source;
+    private static byte[] content;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        directory = Files.createTempDirectory("swarm");
+        content = new byte[PIECE_SIZE * 5 + 123];
+        new Random(42).nextBytes(content);
+        source = Files.write(directory.resolve("source.bin"), content);
+        for (UserInterface peer : List.of(FIRST_PEER, SECOND_PEER)) {
+            MiniServer miniServer = new MiniServer(peer.getHost(), peer.getPort(), WireFormat.BINARY.codec());
+            miniServer.sharedFiles().share(List.of(source.toString()));
+            Thread server = new Thread(miniServer);
+            server.setDaemon(true);
+            server.start();
+        }
+        Thread.sleep(200);
+    }
+
+    private static Response download(List<UserInterface> peers, Path destination) throws IOException {
+        return new SwarmDownloader(WireFormat.BINARY.codec(), PIECE_SIZE).download(peers, source.toString(), destination);
+    }
+
+    @Test
+    void downloadFromSeveralPeersTest() throws IOException {
+        Path destination = directory.resolve("several.bin");
+        Response response = download(List.of(FIRST_PEER, SECOND_PEER), destination);
+        assertEquals(ResponseStatus.OK, response.status());
+        assertArrayEquals(content, Files.readAllBytes(destination));
+    }
+
+    @Test
+    void downloadRebalancesPiecesOfFailedPeerTest() throws IOException {
+        Path destination = directory.resolve("rebalanced.bin");
+        Response response = download(List.of(OFFLINE_PEER, FIRST_PEER), destination);
+        assertEquals(ResponseStatus.OK, response.status());
+        assertArrayEquals(content, Files.readAllBytes(destination));
+    }
+
+    @Test
+    void downloadRequeuesPieceOfTimedOutPeerTest() throws IOException {
+        Path destination = directory.resolve("stalled.bin");
+        // connections are accepted by the backlog but never answered
+        ServerSocketChannel stalled = ServerSocketChannel.open().bind(new InetSocketAddress(HOST, STALLED_PEER.getPort()));
+        try (PeerConnectionPool pool = new PeerConnectionPool(WireFormat.BINARY.codec(), 4, 0, 1000, 300)) {
+            long started = System.nanoTime();
+            Response response = new SwarmDownloader(pool, PIECE_SIZE)
+                    .download(List.of(STALLED_PEER, FIRST_PEER), source.toString(), destination);
+            assertEquals(ResponseStatus.OK, response.status());
+            assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started) < 10);
+        } finally {
+            stalled.close();
+        }
+        assertArrayEquals(content, Files.readAllBytes(destination));
+    }
+
+    @Test
+    void downloadWithoutReachablePeersTest() {
+        assertThrows(IOException.class, () -> download(List.of(OFFLINE_PEER), directory.resolve("offline.bin")));
+    }
+
+    @Test
+    void downloadWithoutPeersTest() throws IOException {
+        assertEquals(ResponseStatus.ERROR, download(List.of(), directory.resolve("none.bin")).status());
+    }
+
+    @Test
+    void downloadResumesFromVerifiedPiecesTest() throws IOException {
+        Path destination = directory.resolve("resumed.bin");
+        Files.write(destination, new byte[content.length]);
+        byte[][] hashes;
+        try (FileChannel file = FileChannel.open(source, StandardOpenOption.READ)) {
+            hashes = PieceHashes.compute(file, content.length, PIECE_SIZE);
+        }
+        MessageDigest digest = PieceHashes.newDigest();
+        for (byte[] hash : hashes) {
+            digest.update(hash);
+        }
+        try (DownloadProgress progress = DownloadProgress.open(destination, content.length, PIECE_SIZE, digest.digest())) {
+            progress.markVerified(0);
+            progress.markVerified(1);
+        }
+
+        assertEquals(ResponseStatus.OK, download(List.of(FIRST_PEER), destination).status());
+        byte[] downloaded = Files.readAllBytes(destination);
+        // pieces recorded as verified are trusted and not fetched again
+        assertArrayEquals(new byte[2 * PIECE_SIZE], Arrays.copyOfRange(downloaded, 0, 2 * PIECE_SIZE));
+        assertArrayEquals(Arrays.copyOfRange(content, 2 * PIECE_SIZE, content.length),
+                Arrays.copyOfRange(downloaded, 2 * PIECE_SIZE, content.length));
+        assertFalse(Files.exists(DownloadProgress.sidecarOf(destination)));
+    }
+
+    @Test
+    void downloadOverwritesStaleDestinationTest() throws IOException {
+        Path destination = directory.resolve("stale.bin");
+        byte[] stale = new byte[content.length * 2];
+        Arrays.fill(stale, (byte) 7);
+        Files.write(destination, stale);
+        assertEquals(ResponseStatus.OK, download(List.of(SECOND_PEER), destination).status());
+        assertArrayEquals(content, Files.readAllBytes(destination));
+    }
+}
\ No newline at end of file
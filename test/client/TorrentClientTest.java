@@ -0,0 +1,183 @@
+package client;
+
+import interfaces.DownloadListener;
+import interfaces.UserInterface;
+import messages.Frames;
+import messages.Response;
+import messages.ResponseStatus;
+import messages.WireFormat;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import server.Server;
+import storage.User;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TorrentClientTest {
+    private static final String HOST = "localhost";
+    private static final InetSocketAddress TRACKER = new InetSocketAddress(HOST, 7956);
+    private static final UserInterface FIRST_PEER = new User("first", HOST, 7957);
+    private static final UserInterface SECOND_PEER = new User("second", HOST, 7958);
+    private static final int SILENT_PEER_PORT = 7959;
+    private static final int BROKEN_TRACKER_PORT = 7965;
+    private static final int PIECE_SIZE = 16 * 1024;
+
+    private static Server server;
+    private static Path directory;
+    private static Path source;
+    private static byte[] content;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        server = new Server(TRACKER.getPort(), 1, WireFormat.BINARY.codec());
+        Thread acceptor = new Thread(server::start);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        directory = Files.createTempDirectory("torrent-client");
+        content = new byte[PIECE_SIZE * 8 + 17];
+        new Random(7).nextBytes(content);
+        source = Files.write(directory.resolve("source.bin"), content);
+        for (UserInterface peer : List.of(FIRST_PEER, SECOND_PEER)) {
+            MiniServer miniServer = new MiniServer(peer.getHost(), peer.getPort(), WireFormat.BINARY.codec());
+            miniServer.sharedFiles().share(List.of(source.toString()));
+            Thread peerServer = new Thread(miniServer);
+            peerServer.setDaemon(true);
+            peerServer.start();
+        }
+        Thread.sleep(200);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.stop();
+    }
+
+    private static TorrentClient connect() throws IOException {
+        return new TorrentClient(TrackerConnection.open(TRACKER, WireFormat.BINARY.codec(), events -> { }),
+                new PeerConnectionPool(WireFormat.BINARY.codec()), PIECE_SIZE);
+    }
+
+    @Test
+    void commandsAnswerInIssueOrderTest() throws Exception {
+        try (TorrentClient client = connect()) {
+            List<CompletableFuture<Response>> registered = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                registered.add(client.register(new User("ordered" + i, HOST, 21000 + i), List.of("/ordered/file" + i)));
+            }
+            // issued after the registrations, so it sees all of them
+            List<UserInterface> owners = client.whoHas("/ordered/file499").get(5, TimeUnit.SECONDS);
+            for (CompletableFuture<Response> response : registered) {
+                assertEquals(ResponseStatus.OK, response.get(5, TimeUnit.SECONDS).status());
+            }
+            assertEquals(List.of(new User("ordered499", HOST, 21499)), owners);
+            // each registration moved the session to the next user, so only the last one is left
+            assertTrue(client.whoHas("/ordered/file0").get(5, TimeUnit.SECONDS).isEmpty());
+            assertEquals(ResponseStatus.OK, client.unregister(new User("ordered499", HOST, 21499), List.of("/ordered/file499"))
+                    .get(5, TimeUnit.SECONDS).status());
+            assertTrue(client.whoHas("/ordered/file499").get(5, TimeUnit.SECONDS).isEmpty());
+        }
+    }
+
+    @Test
+    void disconnectEndsRegisteredSessionTest() throws Exception {
+        UserInterface leaving = new User("leaving", HOST, 22000);
+        try (TorrentClient client = connect(); TorrentClient observer = connect()) {
+            client.register(leaving, List.of("/leaving/file")).get(5, TimeUnit.SECONDS);
+            assertEquals(List.of(leaving), observer.whoHas("/leaving/file").get(5, TimeUnit.SECONDS));
+            Response response = client.disconnect().get(5, TimeUnit.SECONDS);
+            assertEquals(new Response(ResponseStatus.OK, leaving + "'s session has been terminated!"), response);
+            assertTrue(observer.whoHas("/leaving/file").get(5, TimeUnit.SECONDS).isEmpty());
+        }
+    }
+
+    @Test
+    void concurrentDownloadsFromDifferentPeersTest() throws Exception {
+        AtomicInteger lastVerified = new AtomicInteger();
+        DownloadListener listener = (downloaded, verifiedPieces, totalPieces) -> lastVerified.accumulateAndGet(verifiedPieces, Math::max);
+        try (TorrentClient client = connect()) {
+            Download first = client.download(List.of(FIRST_PEER), source.toString(), directory.resolve("first.bin"), listener);
+            Download second = client.download(List.of(SECOND_PEER), source.toString(), directory.resolve("second.bin"), listener);
+            // the tracker keeps answering while the downloads run
+            assertEquals(ResponseStatus.OK, client.listUsers().get(5, TimeUnit.SECONDS).status());
+            assertEquals(ResponseStatus.OK, first.result().get(10, TimeUnit.SECONDS).status());
+            assertEquals(ResponseStatus.OK, second.result().get(10, TimeUnit.SECONDS).status());
+            assertArrayEquals(content, Files.readAllBytes(first.destination()));
+            assertArrayEquals(content, Files.readAllBytes(second.destination()));
+            assertEquals(9, first.totalPieces());
+            assertEquals(9, first.verifiedPieces());
+            assertEquals(9, lastVerified.get());
+        }
+    }
+
+    @Test
+    void swarmDownloadSkipsSelfTest() throws Exception {
+        try (TorrentClient client = connect()) {
+            client.register(FIRST_PEER, List.of(source.toString())).get(5, TimeUnit.SECONDS);
+            client.register(SECOND_PEER, List.of(source.toString())).get(5, TimeUnit.SECONDS);
+            Download download = client.swarmDownload(FIRST_PEER, source.toString(), directory.resolve("swarm.bin"), DownloadListener.NONE);
+            Response response = download.result().get(10, TimeUnit.SECONDS);
+            assertEquals(ResponseStatus.OK, response.status());
+            assertTrue(response.message().endsWith("from 1 peers"));
+            assertArrayEquals(content, Files.readAllBytes(download.destination()));
+        }
+    }
+
+    @Test
+    void cancelStopsDownloadTest() throws Exception {
+        try (ServerSocketChannel silentPeer = ServerSocketChannel.open().bind(new InetSocketAddress(HOST, SILENT_PEER_PORT));
+             TorrentClient client = connect()) {
+            Download download = client.download(List.of(new User("silent", HOST, SILENT_PEER_PORT)), source.toString(),
+                    directory.resolve("cancelled.bin"), DownloadListener.NONE);
+            try (SocketChannel accepted = silentPeer.accept()) {
+                assertTrue(download.cancel());
+                assertThrows(CancellationException.class, () -> download.result().get(5, TimeUnit.SECONDS));
+                // the interrupted download closes its connection instead of waiting for an answer
+                ByteBuffer request = ByteBuffer.allocate(64 * 1024);
+                int read;
+                do {
+                    read = accepted.read(request.clear());
+                } while (read > 0);
+                assertEquals(-1, read);
+            }
+        }
+    }
+
+    @Test
+    void closedClientFailsCommandsTest() throws IOException {
+        TorrentClient client = connect();
+        client.close();
+        CompletableFuture<Response> response = client.listFiles();
+        assertTrue(response.isCompletedExceptionally());
+    }
+
+    @Test
+    void brokenTrackerConnectionFailsLaterCommandsTest() throws Exception {
+        try (ServerSocketChannel fake = ServerSocketChannel.open().bind(new InetSocketAddress(HOST, BROKEN_TRACKER_PORT));
+             TorrentClient client = new TorrentClient(TrackerConnection.open(new InetSocketAddress(HOST, BROKEN_TRACKER_PORT),
+                     WireFormat.BINARY.codec(), events -> { }), new PeerConnectionPool(WireFormat.BINARY.codec()), PIECE_SIZE);
+             SocketChannel accepted = fake.accept()) {
+            CompletableFuture<Response> first = client.listUsers();
+            // a frame with an unknown status, then one the next command must not take for its answer
+            Frames.write(accepted, ByteBuffer.allocate(10).putInt(1).put((byte) 99).putInt(1).put((byte) 0).flip());
+            assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+            assertThrows(ExecutionException.class, () -> client.listUsers().get(5, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package client;
+
+import command.Command;
+import command.CommandCreator;
+import messages.Frames;
+import messages.Response;
+import messages.ResponseStatus;
+import messages.WireFormat;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import server.Server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrackerConnectionTest {
+    private static final InetSocketAddress TRACKER = new InetSocketAddress("localhost", 7960);
+    private static final int FAKE_TRACKER_PORT = 7964;
+
+    private static Server server;
+
+    @BeforeAll
+    static void setUp() throws InterruptedException {
+        server = new Server(TRACKER.getPort(), 1, WireFormat.BINARY.codec());
+        Thread acceptor = new Thread(server::start);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        Thread.sleep(200);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void batchAnswersInOrderTest() throws IOException {
+        List<Command> commands = new ArrayList<>();
+        // more commands and bytes than one window, so the batch is sent in several
+        for (int i = 0; i < 2000; i++) {
+            commands.add(CommandCreator.newCommand("register batch" + i + "-127.0.0.1:" + (20000 + i)
+                    + " /home/batch/some/longer/directory/file" + i + ".txt"));
+            commands.add(CommandCreator.newCommand("who-has /home/batch/some/longer/directory/file" + i + ".txt"));
+        }
+        commands.add(CommandCreator.newCommand("list-users limit=1000000"));
+
+        try (TrackerConnection tracker = TrackerConnection.open(TRACKER, WireFormat.BINARY.codec(), events -> fail())) {
+            List<Response> responses = tracker.batch(commands);
+            assertEquals(commands.size(), responses.size());
+            for (int i = 0; i < 2000; i++) {
+                assertEquals(ResponseStatus.OK, responses.get(2 * i).status());
+                assertEquals(new Response(ResponseStatus.OK, "batch" + i + "-127.0.0.1:" + (20000 + i)), responses.get(2 * i + 1));
+            }
+            assertEquals(ResponseStatus.ERROR, responses.get(commands.size() - 1).status());
+        }
+    }
+
+    @Test
+    void unencodableCommandFailsBatchBeforeSendingTest() throws IOException {
+        List<Command> commands = new ArrayList<>();
+        // the first window would be sent before the last command is reached
+        for (int i = 0; i < 300; i++) {
+            commands.add(CommandCreator.newCommand("who-has /unencodable" + i + ".txt"));
+        }
+        commands.add(new Command("who-has", new String[]{"/" + "x".repeat(70_000)}));
+        try (TrackerConnection tracker = TrackerConnection.open(TRACKER, WireFormat.BINARY.codec(), events -> { })) {
+            assertThrows(IllegalArgumentException.class, () -> tracker.batch(commands));
+            assertFalse(tracker.isBroken());
+            // no answer of the refused batch is waiting to be read
+            assertEquals(ResponseStatus.OK, tracker.send(CommandCreator.newCommand("register unencodable-127.0.0.1:30001 /unencodable.txt")).status());
+            assertEquals(new Response(ResponseStatus.OK, "unencodable-127.0.0.1:30001"),
+                    tracker.send(CommandCreator.newCommand("who-has /unencodable.txt")));
+        }
+    }
+
+    @Test
+    void malformedAnswerBreaksConnectionTest() throws Exception {
+        try (ServerSocketChannel fake = ServerSocketChannel.open().bind(new InetSocketAddress("localhost", FAKE_TRACKER_PORT));
+             TrackerConnection tracker = TrackerConnection.open(new InetSocketAddress("localhost", FAKE_TRACKER_PORT),
+                     WireFormat.BINARY.codec(), events -> { });
+             SocketChannel accepted = fake.accept()) {
+            // an unknown status, followed by an answer that must not be taken for the next command's
+            Frames.write(accepted, ByteBuffer.allocate(10).putInt(1).put((byte) 99).putInt(1).put((byte) 0).flip());
+            assertThrows(IOException.class, () -> tracker.send(CommandCreator.newCommand("list-users")));
+            assertTrue(tracker.isBroken());
+            assertThrows(IOException.class, () -> tracker.send(CommandCreator.newCommand("list-users")));
+        }
+    }
+
+    @Test
+    void failingEventListenerKeepsAnswersInStepTest() throws IOException {
+        List<String> received = new ArrayList<>();
+        try (TrackerConnection subscriber = TrackerConnection.open(TRACKER, WireFormat.BINARY.codec(), event -> {
+                 received.add(event);
+                 throw new IllegalStateException("Listener failed");
+             });
+             TrackerConnection publisher = TrackerConnection.open(TRACKER, WireFormat.BINARY.codec(), events -> { })) {
+            assertEquals(ResponseStatus.OK, subscriber.send(CommandCreator.newCommand("subscribe")).status());
+            assertEquals(ResponseStatus.OK, publisher.send(CommandCreator.newCommand("register listened-127.0.0.1:30002 /listened.txt")).status());
+            for (int attempt = 0; attempt < 50 && received.isEmpty(); attempt++) {
+                assertEquals(new Response(ResponseStatus.OK, "listened-127.0.0.1:30002"),
+                        subscriber.send(CommandCreator.newCommand("who-has /listened.txt")));
+            }
+            assertFalse(received.isEmpty());
+            assertFalse(subscriber.isBroken());
+            assertEquals(new Response(ResponseStatus.OK, "listened-127.0.0.1:30002"),
+                    subscriber.send(CommandCreator.newCommand("who-has /listened.txt")));
+        }
+    }
+
+    @Test
+    void batchDeliversPushedEventsTest() throws IOException {
+        List<String> received = new ArrayList<>();
+        try (TrackerConnection subscriber = TrackerConnection.open(TRACKER, WireFormat.BINARY.codec(), received::add);
+             TrackerConnection publisher = TrackerConnection.open(TRACKER, WireFormat.BINARY.codec(), events -> { })) {
+            assertEquals(ResponseStatus.OK, subscriber.send(CommandCreator.newCommand("subscribe")).status());
+            assertEquals(ResponseStatus.OK, publisher.send(CommandCreator.newCommand("register pushed-127.0.0.1:30000 /pushed.txt")).status());
+            for (int attempt = 0; attempt < 50 && received.isEmpty(); attempt++) {
+                subscriber.send(CommandCreator.newCommand("who-has /pushed.txt"));
+            }
+            assertTrue(received.get(0).startsWith("joined pushed-127.0.0.1:30000"));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package client;
+
+import messages.ResponseStatus;
+import messages.WireFormat;
+import metrics.Metrics;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadThrottleTest {
+    private static final int KB = 1000;
+    private static final int RATE = 1000 * KB;
+    private static final int MINI_SERVER_PORT = 7961;
+
+    private static InetAddress host(int last) throws IOException {
+        return InetAddress.getByAddress(new byte[]{10, 0, 0, (byte) last});
+    }
+
+    private static long upload(UploadThrottle.Lease lease, long bytes) throws IOException {
+        long sent = 0;
+        while (sent < bytes) {
+            sent += lease.acquire(bytes - sent);
+        }
+        return sent;
+    }
+
+    private static long sinceMillis(long started) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    }
+
+    @Test
+    void unlimitedLeaseSendsEverythingAtOnceTest() throws IOException {
+        Metrics metrics = new Metrics();
+        UploadThrottle throttle = new UploadThrottle(0, 0, metrics);
+        try (UploadThrottle.Lease lease = throttle.lease(host(1))) {
+            assertEquals(10_000_000, lease.acquire(10_000_000));
+        }
+        assertEquals(0, metrics.histogram("upload.throttle.wait.nanos").count());
+    }
+
+    @Test
+    void globalRateLimitsUploadsTest() throws IOException {
+        Metrics metrics = new Metrics();
+        UploadThrottle throttle = new UploadThrottle(RATE, 0, metrics);
+        long started = System.nanoTime();
+        try (UploadThrottle.Lease lease = throttle.lease(host(1))) {
+            assertEquals(300 * KB, upload(lease, 300 * KB));
+        }
+        // the first tenth of a second comes from the burst
+        assertTrue(sinceMillis(started) >= 180, "took " + sinceMillis(started) + " ms");
+        assertTrue(metrics.counter("upload.throttle.global.waits").sum() > 0);
+        assertEquals(0, metrics.counter("upload.throttle.peer.waits").sum());
+    }
+
+    @Test
+    void peerRateIsSharedByConnectionsOfHostTest() throws Exception {
+        Metrics metrics = new Metrics();
+        UploadThrottle throttle = new UploadThrottle(0, RATE, metrics);
+        long started = System.nanoTime();
+        try (UploadThrottle.Lease first = throttle.lease(host(1));
+             UploadThrottle.Lease second = throttle.lease(host(1));
+             UploadThrottle.Lease other = throttle.lease(host(2))) {
+            assertTrue(metrics.dump().contains("upload.throttle.peers 2"));
+            Thread uploader = Thread.ofVirtual().start(() -> {
+                try {
+                    upload(second, 150 * KB);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            upload(first, 150 * KB);
+            uploader.join();
+            assertTrue(sinceMillis(started) >= 180, "took " + sinceMillis(started) + " ms");
+
+            // another host has a bucket of its own, a burst of it does not wait
+            long waits = metrics.counter("upload.throttle.peer.waits").sum();
+            upload(other, 100 * KB);
+            assertEquals(waits, metrics.counter("upload.throttle.peer.waits").sum());
+        }
+        assertTrue(metrics.dump().contains("upload.throttle.peers 0"));
+    }
+
+    @Test
+    void uploadsShareGlobalRateInTurnsTest() throws Exception {
+        UploadThrottle throttle = new UploadThrottle(2 * RATE, 0, new Metrics());
+        List<String> chunks = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch ready = new CountDownLatch(2);
+        List<Thread> uploaders = new ArrayList<>();
+        for (String name : List.of("a", "b")) {
+            uploaders.add(Thread.ofVirtual().start(() -> {
+                try (UploadThrottle.Lease lease = throttle.lease(host(name.equals("a") ? 1 : 2))) {
+                    ready.countDown();
+                    ready.await();
+                    for (int i = 0; i < 12; i++) {
+                        lease.acquire(UploadThrottle.MAX_CHUNK_SIZE);
+                        chunks.add(name);
+                    }
+                } catch (IOException | InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        for (Thread uploader : uploaders) {
+            uploader.join();
+        }
+        // neither upload runs ahead by more than a couple of chunks, whoever got the burst
+        List<String> firstHalf = chunks.subList(0, 12);
+        assertTrue(Collections.frequency(firstHalf, "a") >= 4, chunks.toString());
+        assertTrue(Collections.frequency(firstHalf, "b") >= 4, chunks.toString());
+    }
+
+    @Test
+    void miniServerThrottlesPeerTest() throws Exception {
+        MiniServer server = new MiniServer("localhost", MINI_SERVER_PORT, WireFormat.BINARY.codec(),
+                MiniServer.ThreadingMode.VIRTUAL, 10, 0, RATE);
+        Thread serverThread = new Thread(server);
+        serverThread.setDaemon(true);
+        serverThread.start();
+        Thread.sleep(200);
+
+        Path directory = Files.createTempDirectory("throttle");
+        Path source = Files.write(directory.resolve("source.bin"), new byte[300 * KB]);
+        server.sharedFiles().share(List.of(source.toString()));
+        long started = System.nanoTime();
+        try (PeerConnection connection = new PeerConnection("localhost", MINI_SERVER_PORT, WireFormat.BINARY.codec());
+             FileChannel destination = FileChannel.open(directory.resolve("destination.bin"),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            assertEquals(ResponseStatus.OK, connection.downloadPiece(source.toString(), 0, 300 * KB, destination).status());
+        } finally {
+            server.stop();
+        }
+        assertTrue(sinceMillis(started) >= 180, "took " + sinceMillis(started) + " ms");
+        assertTrue(server.metrics().counter("upload.throttle.peer.waits").sum() > 0);
+        assertEquals(300 * KB, Files.size(directory.resolve("destination.bin")));
+    }
+}
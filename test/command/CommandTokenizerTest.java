@@ -0,0 +1,55 @@
+package command;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandTokenizerTest {
+
+    @Test
+    void tokenizeQuotedArgumentsTest() {
+        CommandTokenizer tokenizer = new CommandTokenizer().reset("who-has \"/home/pesho/my music/song.mp3\" limit=5");
+        assertEquals(3, tokenizer.tokenCount());
+        assertEquals("/home/pesho/my music/song.mp3", tokenizer.token(1));
+        assertEquals("/home/pesho/my music/song.mp3", tokenizer.view(1).toString());
+        assertEquals('m', tokenizer.view(1).charAt(12));
+        assertTrue(tokenizer.tokenEquals(2, "limit=5"));
+        assertFalse(tokenizer.tokenEquals(2, "limit=6"));
+    }
+
+    @Test
+    void tokenizeKeepsEmptyTokensTest() {
+        Command command = new CommandTokenizer().reset("register  Pesho ").newCommand();
+        assertEquals("register", command.command());
+        assertArrayEquals(new String[] {"", "Pesho", ""}, command.arguments());
+    }
+
+    @Test
+    void newCommandReusesKnownNameTest() {
+        CommandTokenizer tokenizer = new CommandTokenizer();
+        assertSame(CommandType.LIST_USERS.commandName(), tokenizer.reset(new StringBuilder("list-users")).newCommand().command());
+        assertEquals("custom", tokenizer.reset("custom a").newCommand().command());
+    }
+
+    @Test
+    void tokenizeUtf8BufferTest() {
+        ByteBuffer payload = ByteBuffer.wrap("register Пешо-127.0.0.1:2713 \"/музика/песен 1.mp3\"".getBytes(StandardCharsets.UTF_8));
+        Command command = new CommandTokenizer().reset(payload).newCommand();
+        assertEquals("register", command.command());
+        assertArrayEquals(new String[] {"Пешо-127.0.0.1:2713", "/музика/песен 1.mp3"}, command.arguments());
+    }
+
+    @Test
+    void tokenizeManyTokensTest() {
+        StringBuilder input = new StringBuilder("register Pesho-127.0.0.1:2713");
+        for (int i = 0; i < 100; i++) {
+            input.append(" /file").append(i);
+        }
+        CommandTokenizer tokenizer = new CommandTokenizer().reset(input);
+        assertEquals(101, tokenizer.argumentCount());
+        assertEquals("/file99", tokenizer.token(101));
+    }
+}
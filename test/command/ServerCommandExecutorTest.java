@@ -11,6 +11,9 @@ import storage.FileStorage;
 import storage.SessionStorage;
 import storage.User;
 
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.List;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -79,4 +82,186 @@ class ServerCommandExecutorTest {
         Response response = commandExecutor.execute(new Request(null, CommandCreator.newCommand("list-users")));
         assertEquals(new Response(ResponseStatus.OK, ""), response);
     }
-}
\ No newline at end of file
+
+    @Test
+    void whoHasRegisteredFileTest() {
+        commandExecutor.execute(new Request(null, CommandCreator.newCommand("register Pesho123-127.0.0.1:2713 /home/hmmm/hi.txt")));
+        commandExecutor.execute(new Request(null, CommandCreator.newCommand("register Gosho321-127.0.0.1:2314 /home/other/hi.txt")));
+        Response byPath = commandExecutor.execute(new Request(null, CommandCreator.newCommand("who-has /home/hmmm/hi.txt")));
+        assertEquals(new Response(ResponseStatus.OK, "Pesho123-127.0.0.1:2713"), byPath);
+        Response byName = commandExecutor.execute(new Request(null, CommandCreator.newCommand("who-has hi.txt")));
+        assertEquals(2, byName.message().split(System.lineSeparator()).length);
+    }
+
+    @Test
+    void whoHasUnregisteredFileTest() {
+        commandExecutor.execute(new Request(null, CommandCreator.newCommand("register Pesho123-127.0.0.1:2713 /home/hmmm/hi.txt")));
+        commandExecutor.execute(new Request(null, CommandCreator.newCommand("unregister Pesho123-127.0.0.1:2713 /home/hmmm/hi.txt")));
+        Response response = commandExecutor.execute(new Request(null, CommandCreator.newCommand("who-has /home/hmmm/hi.txt")));
+        assertEquals(new Response(ResponseStatus.OK, ""), response);
+    }
+
+    @Test
+    void whoHasInvalidArgumentsCountTest() {
+        assertEquals(ResponseStatus.ERROR, commandExecutor.execute(new Request(null, CommandCreator.newCommand("who-has"))).status());
+    }
+
+    @Test
+    void listUsersPagesTest() {
+        commandExecutor.execute(new Request(null, CommandCreator.newCommand("register Gosho321-127.0.0.1:2314 /home/gosho/hi.txt")));
+        commandExecutor.execute(new Request(null, CommandCreator.newCommand("register Pesho123-127.0.0.1:2713 /home/pesho/hi.txt")));
+        commandExecutor.execute(new Request(null, CommandCreator.newCommand("register Ivan-127.0.0.1:2000 /home/ivan/hi.txt")));
+
+        Response firstPage = commandExecutor.execute(new Request(null, CommandCreator.newCommand("list-users limit=2")));
+        assertEquals(new Response(ResponseStatus.OK, String.join(System.lineSeparator(),
+                "Gosho321-127.0.0.1:2314", "Ivan-127.0.0.1:2000", "cursor=Ivan-127.0.0.1:2000")), firstPage);
+
+        Response lastPage = commandExecutor.execute(new Request(null, CommandCreator.newCommand("list-users limit=2 cursor=Ivan-127.0.0.1:2000")));
+        assertEquals(new Response(ResponseStatus.OK, "Pesho123-127.0.0.1:2713"), lastPage);
+    }
+
+    @Test
+    void listFilesPageTest() {
+        commandExecutor.execute(new Request(null, CommandCreator.newCommand("register Pesho123-127.0.0.1:2713 /home/pesho/hi.txt")));
+        commandExecutor.execute(new Request(null, CommandCreator.newCommand("register Gosho321-127.0.0.1:2314 /home/gosho/hi.txt")));
+        Response response = commandExecutor.execute(new Request(null, CommandCreator.newCommand("list-files limit=1 cursor=Gosho321-127.0.0.1:2314")));
+        assertEquals(new Response(ResponseStatus.OK, "Pesho123-127.0.0.1:2713 : [/home/pesho/hi.txt]"), response);
+    }
+
+    @Test
+    void listFilesInvalidLimitTest() {
+        assertEquals(ResponseStatus.ERROR, commandExecutor.execute(new Request(null, CommandCreator.newCommand("list-files limit=0"))).status());
+        assertEquals(ResponseStatus.ERROR, commandExecutor.execute(new Request(null, CommandCreator.newCommand("list-files /home cursor=Gosho321-127.0.0.1:2314"))).status());
+    }
+
+    @Test
+    void listFilesWithPrefixTest() {
+        commandExecutor.execute(new Request(null, CommandCreator.newCommand("register Pesho123-127.0.0.1:2713 /home/pesho/hi.txt /home/pesho/music/song.mp3")));
+        commandExecutor.execute(new Request(null, CommandCreator.newCommand("register Gosho321-127.0.0.1:2314 /home/pesho/hi.txt /home/gosho/hi.txt")));
+
+        Response response = commandExecutor.execute(new Request(null, CommandCreator.newCommand("list-files /home/pe")));
+        assertEquals(ResponseStatus.OK, response.status());
+        String[] lines = response.message().split(System.lineSeparator());
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("/home/pesho/hi.txt : ["));
+        assertTrue(lines[0].contains("Gosho321-127.0.0.1:2314") && lines[0].contains("Pesho123-127.0.0.1:2713"));
+        assertEquals("/home/pesho/music/song.mp3 : [Pesho123-127.0.0.1:2713]", lines[1]);
+
+        assertEquals(1, commandExecutor.execute(new Request(null, CommandCreator.newCommand("list-files /home limit=1"))).message().split(System.lineSeparator()).length);
+        assertEquals("[]", commandExecutor.execute(new Request(null, CommandCreator.newCommand("list-files /tmp"))).message());
+    }
+
+    @Test
+    void listUsersSinceVersionTest() {
+        commandExecutor.execute(new Request(null, CommandCreator.newCommand("register Pesho123-127.0.0.1:2713 /home/pesho/hi.txt")));
+        commandExecutor.execute(new Request(null, CommandCreator.newCommand("register Pesho123-127.0.0.1:2713 /home/pesho/hello.txt")));
+        commandExecutor.execute(new Request(null, CommandCreator.newCommand("register Gosho321-127.0.0.1:2314 /home/gosho/hi.txt")));
+
+        Response all = commandExecutor.execute(new Request(null, CommandCreator.newCommand("list-users-since 0")));
+        assertEquals(new Response(ResponseStatus.OK, String.join(System.lineSeparator(),
+                "version=2", "+Pesho123-127.0.0.1:2713", "+Gosho321-127.0.0.1:2314")), all);
+
+        Response latest = commandExecutor.execute(new Request(null, CommandCreator.newCommand("list-users-since 2")));
+        assertEquals(new Response(ResponseStatus.OK, "version=2"), latest);
+    }
+
+    @Test
+    void listUsersSinceUnknownVersionTest() {
+        commandExecutor.execute(new Request(null, CommandCreator.newCommand("register Pesho123-127.0.0.1:2713 /home/pesho/hi.txt")));
+        Response response = commandExecutor.execute(new Request(null, CommandCreator.newCommand("list-users-since 7")));
+        assertEquals(new Response(ResponseStatus.OK, String.join(System.lineSeparator(),
+                "snapshot=1", "+Pesho123-127.0.0.1:2713")), response);
+    }
+
+    @Test
+    void subscribeWithoutPublisherTest() {
+        assertEquals(ResponseStatus.ERROR, commandExecutor.execute(new Request(null, CommandCreator.newCommand("subscribe"))).status());
+        assertEquals(ResponseStatus.OK, commandExecutor.execute(new Request(null, CommandCreator.newCommand("unsubscribe"))).status());
+    }
+
+    @Test
+    void statsTest() {
+        commandExecutor.execute(new Request(null, CommandCreator.newCommand("register Pesho123-127.0.0.1:2713 /home/pesho/hi.txt /home/pesho/bye.txt")));
+        commandExecutor.execute(new Request(null, CommandCreator.newCommand("register Pesho123-127.0.0.1:2713")));
+        Response response = commandExecutor.execute(new Request(null, CommandCreator.newCommand("stats")));
+        assertEquals(ResponseStatus.OK, response.status());
+        List<String> lines = response.message().lines().toList();
+        assertTrue(lines.contains("registry.users 1"));
+        assertTrue(lines.contains("registry.paths 2"));
+        assertTrue(lines.contains("command.register.errors 1"));
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("command.register.nanos count=2 ")));
+        assertEquals(ResponseStatus.ERROR, commandExecutor.execute(new Request(null, CommandCreator.newCommand("stats now"))).status());
+    }
+
+    @Test
+    void disconnectAllTest() throws IOException {
+        try (SocketChannel first = SocketChannel.open(); SocketChannel second = SocketChannel.open();
+             SocketChannel third = SocketChannel.open()) {
+            commandExecutor.execute(new Request(first, CommandCreator.newCommand("register Pesho123-127.0.0.1:2713 /shared.txt /pesho.txt")));
+            commandExecutor.execute(new Request(second, CommandCreator.newCommand("register Gosho321-127.0.0.1:2314 /shared.txt")));
+            commandExecutor.execute(new Request(third, CommandCreator.newCommand("register Tosho-127.0.0.1:2315 /shared.txt")));
+
+            commandExecutor.disconnectAll(List.of(first, second));
+
+            assertEquals(Set.of(new User("Tosho", "127.0.0.1", 2315)), fileStorage.getKeys());
+            assertEquals(new Response(ResponseStatus.OK, "Tosho-127.0.0.1:2315"),
+                    commandExecutor.execute(new Request(null, CommandCreator.newCommand("who-has /shared.txt"))));
+            assertEquals(new Response(ResponseStatus.OK, ""),
+                    commandExecutor.execute(new Request(null, CommandCreator.newCommand("who-has /pesho.txt"))));
+            assertEquals(new Response(ResponseStatus.OK, String.join(System.lineSeparator(),
+                    "version=5", "-Pesho123-127.0.0.1:2713", "-Gosho321-127.0.0.1:2314")),
+                    commandExecutor.execute(new Request(null, CommandCreator.newCommand("list-users-since 3"))));
+        }
+    }
+
+    @Test
+    void expiredOldSessionKeepsReregisteredUserTest() throws IOException {
+        try (SocketChannel stale = SocketChannel.open(); SocketChannel live = SocketChannel.open()) {
+            commandExecutor.execute(new Request(stale, CommandCreator.newCommand("register Pesho123-127.0.0.1:2713 /pesho.txt")));
+            commandExecutor.execute(new Request(live, CommandCreator.newCommand("register Pesho123-127.0.0.1:2713 /pesho.txt")));
+
+            commandExecutor.disconnectAll(List.of(stale));
+
+            assertEquals(Set.of(new User("Pesho123", "127.0.0.1", 2713)), fileStorage.getKeys());
+            assertEquals(new Response(ResponseStatus.OK, "Pesho123-127.0.0.1:2713"),
+                    commandExecutor.execute(new Request(null, CommandCreator.newCommand("who-has /pesho.txt"))));
+
+            commandExecutor.disconnectAll(List.of(live));
+
+            assertTrue(fileStorage.getKeys().isEmpty());
+            assertEquals(new Response(ResponseStatus.OK, ""),
+                    commandExecutor.execute(new Request(null, CommandCreator.newCommand("who-has /pesho.txt"))));
+        }
+    }
+
+    @Test
+    void sessionRegisteredAsAnotherUserEndsPreviousUserTest() throws IOException {
+        try (SocketChannel session = SocketChannel.open(); SocketChannel other = SocketChannel.open()) {
+            commandExecutor.execute(new Request(session, CommandCreator.newCommand("register Pesho123-127.0.0.1:2713 /pesho.txt")));
+            commandExecutor.execute(new Request(other, CommandCreator.newCommand("register Gosho321-127.0.0.1:2314 /gosho.txt")));
+
+            // the other session was the last one of its user
+            commandExecutor.execute(new Request(other, CommandCreator.newCommand("register Pesho123-127.0.0.1:2713 /pesho.txt")));
+            assertEquals(Set.of(new User("Pesho123", "127.0.0.1", 2713)), fileStorage.getKeys());
+            assertEquals(new Response(ResponseStatus.OK, ""),
+                    commandExecutor.execute(new Request(null, CommandCreator.newCommand("who-has /gosho.txt"))));
+            assertEquals(new Response(ResponseStatus.OK, String.join(System.lineSeparator(),
+                            "version=3", "+Pesho123-127.0.0.1:2713", "+Gosho321-127.0.0.1:2314", "-Gosho321-127.0.0.1:2314")),
+                    commandExecutor.execute(new Request(null, CommandCreator.newCommand("list-users-since 0"))));
+
+            // the user still has the other session
+            commandExecutor.execute(new Request(session, CommandCreator.newCommand("register Gosho321-127.0.0.1:2314 /gosho.txt")));
+            assertEquals(Set.of(new User("Pesho123", "127.0.0.1", 2713), new User("Gosho321", "127.0.0.1", 2314)),
+                    fileStorage.getKeys());
+
+            commandExecutor.disconnectAll(List.of(session, other));
+            assertTrue(fileStorage.getKeys().isEmpty());
+        }
+    }
+
+    @Test
+    void heartbeatTest() {
+        assertEquals(ResponseStatus.OK, commandExecutor.execute(new Request(null, CommandCreator.newCommand("heartbeat"))).status());
+        assertEquals(ResponseStatus.ERROR, commandExecutor.execute(new Request(null, CommandCreator.newCommand("heartbeat now"))).status());
+    }
+}
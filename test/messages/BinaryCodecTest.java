@@ -0,0 +1,59 @@
+package messages;
+
+import command.Command;
+import command.CommandCreator;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCodecTest {
+    private final BinaryCodec codec = new BinaryCodec();
+
+    private static ByteBuffer payloadOf(ByteBuffer frame) {
+        assertEquals(frame.remaining() - Frames.HEADER_SIZE, frame.getInt());
+        return frame.slice();
+    }
+
+    @Test
+    void encodeDecodeKnownCommandTest() throws IOException {
+        Command command = CommandCreator.newCommand("register Pesho123-127.0.0.1:2713 /home/hmmm/hi.txt \"/home/hmmm/my file.txt\"");
+        Command decoded = codec.decodeCommand(payloadOf(codec.encode(command)));
+        assertEquals("register", decoded.command());
+        assertArrayEquals(command.arguments(), decoded.arguments());
+    }
+
+    @Test
+    void encodeDecodeUnknownCommandTest() throws IOException {
+        Command decoded = codec.decodeCommand(payloadOf(codec.encode(CommandCreator.newCommand("hello world"))));
+        assertEquals("hello", decoded.command());
+        assertArrayEquals(new String[]{"world"}, decoded.arguments());
+    }
+
+    @Test
+    void encodeDecodeResponseTest() throws IOException {
+        Response response = new Response(ResponseStatus.ERROR, "Грешка: файлът не съществува");
+        assertEquals(response, codec.decodeResponse(payloadOf(codec.encode(response))));
+    }
+
+    @Test
+    void encodeDecodeLongResponseTest() throws IOException {
+        Response response = new Response(ResponseStatus.OK, "/home/peer/file.dat : [peer-127.0.0.1:20000]\n".repeat(10_000));
+        assertEquals(response, codec.decodeResponse(payloadOf(codec.encode(response))));
+    }
+
+    @Test
+    void shortResponseIsCompactTest() {
+        assertEquals(Frames.HEADER_SIZE + 1 + 2, codec.encode(new Response(ResponseStatus.OK, "OK")).remaining());
+    }
+
+    @Test
+    void decodeTruncatedCommandTest() {
+        ByteBuffer payload = payloadOf(codec.encode(CommandCreator.newCommand("unregister Pesho123-127.0.0.1:2713 /home/hmmm/hi.txt")));
+        payload.limit(payload.limit() - 3);
+        assertThrows(ProtocolException.class, () -> codec.decodeCommand(payload));
+    }
+}
@@ -0,0 +1,46 @@
+package metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsAreContiguousTest() {
+        for (long value = 0; value < 1_000_000; value++) {
+            int index = LatencyHistogram.index(value);
+            assertTrue(LatencyHistogram.highestValue(index) >= value);
+            assertTrue(index == 0 || LatencyHistogram.highestValue(index - 1) < value);
+        }
+        assertTrue(LatencyHistogram.index(Long.MAX_VALUE) < (Long.SIZE - 4) * 32);
+    }
+
+    @Test
+    void percentilesTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1_000L);
+        }
+        assertEquals(10_000, histogram.count());
+        assertEquals(10_000_000, histogram.max());
+        assertEquals(5_000_500.0, histogram.mean(), 0.001);
+        assertEquals(5_000_000, histogram.percentile(50), 5_000_000 * 0.04);
+        assertEquals(9_900_000, histogram.percentile(99), 9_900_000 * 0.04);
+        assertEquals(10_000_000, histogram.percentile(100));
+    }
+
+    @Test
+    void addMergesCountsTest() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(10);
+        second.record(20);
+        second.record(30);
+        first.add(second);
+        assertEquals(3, first.count());
+        assertEquals(30, first.max());
+        assertEquals(20, first.percentile(50));
+        assertEquals(0, new LatencyHistogram().percentile(99));
+    }
+}
@@ -0,0 +1,38 @@
+package metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    @Test
+    void sameNameSameMetricTest() {
+        Metrics metrics = new Metrics();
+        assertSame(metrics.counter("requests"), metrics.counter("requests"));
+        assertSame(metrics.histogram("latency.nanos"), metrics.histogram("latency.nanos"));
+    }
+
+    @Test
+    void dumpTest() {
+        Metrics metrics = new Metrics();
+        metrics.counter("b.count").add(3);
+        metrics.counter("a.count").increment();
+        metrics.gauge("sessions", () -> 7);
+        metrics.histogram("latency.nanos").record(10);
+        metrics.histogram("latency.nanos").record(20);
+        metrics.histogram("unused.nanos");
+
+        List<String> lines = metrics.dump().lines().toList();
+        assertEquals(List.of("a.count 1", "b.count 3", "sessions 7",
+                "latency.nanos count=2 mean=15 p50=10 p99=20 p999=20 max=20"), lines.subList(1, lines.size()));
+        assertTrue(lines.get(0).startsWith("uptime.seconds "));
+    }
+
+    @Test
+    void dumpEveryDisabledTest() {
+        assertNull(new Metrics().dumpEvery(0, dump -> { }));
+    }
+}
@@ -0,0 +1,132 @@
+package server;
+
+import client.TrackerConnection;
+import command.CommandCreator;
+import interfaces.UserInterface;
+import messages.Response;
+import messages.ResponseStatus;
+import messages.WireFormat;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import storage.FileOwnerIndex;
+import storage.FileStorage;
+import storage.PathTrie;
+import storage.UserTable;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReactorTest {
+    private static final InetSocketAddress TRACKER = new InetSocketAddress("localhost", 7966);
+
+    private static final PathTrie paths = new PathTrie();
+    private static final SlowDiskStorage storage = new SlowDiskStorage(paths);
+    private static Server server;
+
+    // A registry whose changes become durable only when the test completes the pending fsync
+    private static class SlowDiskStorage extends FileStorage {
+        private final ThreadLocal<Boolean> changed = ThreadLocal.withInitial(() -> false);
+        private volatile CompletableFuture<Void> fsync = new CompletableFuture<>();
+
+        SlowDiskStorage(PathTrie paths) {
+            super(paths);
+        }
+
+        @Override
+        public void addValues(UserInterface user, Set<String> files) {
+            changed.set(true);
+            super.addValues(user, files);
+        }
+
+        @Override
+        public void removeValues(UserInterface user, Set<String> files) {
+            changed.set(true);
+            super.removeValues(user, files);
+        }
+
+        @Override
+        public Set<String> remove(UserInterface key) {
+            changed.set(true);
+            return super.remove(key);
+        }
+
+        @Override
+        public CompletableFuture<Void> whenDurable() {
+            if (!changed.get()) {
+                return null;
+            }
+            changed.set(false);
+            return fsync;
+        }
+    }
+
+    @BeforeAll
+    static void setUp() throws InterruptedException {
+        server = new Server(TRACKER.getPort(), 1, WireFormat.BINARY.codec(), storage, new FileOwnerIndex(new UserTable(), paths));
+        Thread acceptor = new Thread(server::start);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        Thread.sleep(200);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        storage.fsync.complete(null);
+        server.stop();
+    }
+
+    @Test
+    void readsAreServedWhileFsyncIsPendingTest() throws Exception {
+        CompletableFuture<Void> fsync = new CompletableFuture<>();
+        storage.fsync = fsync;
+        try (TrackerConnection writer = TrackerConnection.open(TRACKER, WireFormat.BINARY.codec(), events -> { });
+             TrackerConnection reader = TrackerConnection.open(TRACKER, WireFormat.BINARY.codec(), events -> { })) {
+            CompletableFuture<Response> registered = send(writer, "register pending-127.0.0.1:30101 /pending.txt");
+            assertThrows(TimeoutException.class, () -> registered.get(300, TimeUnit.MILLISECONDS));
+
+            // the only reactor answers the other session while the change waits for the disk
+            assertEquals(new Response(ResponseStatus.OK, "pending-127.0.0.1:30101"),
+                    send(reader, "who-has /pending.txt").get(5, TimeUnit.SECONDS));
+            assertFalse(registered.isDone());
+
+            fsync.complete(null);
+            assertEquals(ResponseStatus.OK, registered.get(5, TimeUnit.SECONDS).status());
+            assertEquals(new Response(ResponseStatus.OK, "pending-127.0.0.1:30101"),
+                    send(writer, "who-has /pending.txt").get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void failedFsyncDisconnectsSessionTest() throws Exception {
+        CompletableFuture<Void> fsync = new CompletableFuture<>();
+        storage.fsync = fsync;
+        try (TrackerConnection writer = TrackerConnection.open(TRACKER, WireFormat.BINARY.codec(), events -> { })) {
+            CompletableFuture<Response> registered = send(writer, "register unpersisted-127.0.0.1:30102 /unpersisted.txt");
+            fsync.completeExceptionally(new IOException("No space left on device"));
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> registered.get(5, TimeUnit.SECONDS));
+            assertTrue(failure.getCause() instanceof IOException);
+        }
+    }
+
+    private static CompletableFuture<Response> send(TrackerConnection tracker, String command) {
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        Thread sender = new Thread(() -> {
+            try {
+                response.complete(tracker.send(CommandCreator.newCommand(command)));
+            } catch (IOException | RuntimeException e) {
+                response.completeExceptionally(e);
+            }
+        });
+        sender.setDaemon(true);
+        sender.start();
+        return response;
+    }
+}
@@ -0,0 +1,82 @@
+package server;
+
+import messages.Frames;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionTest {
+    private SocketChannel client;
+    private SocketChannel accepted;
+    private Session session;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            client = SocketChannel.open(server.getLocalAddress());
+            accepted = server.accept();
+        }
+        accepted.configureBlocking(false);
+        session = new Session(accepted, 0);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        client.close();
+        accepted.close();
+    }
+
+    private ByteBuffer readFrame() throws IOException {
+        ByteBuffer frame;
+        while ((frame = session.nextFrame()) == null) {
+            session.read();
+        }
+        return frame;
+    }
+
+    @Test
+    void oversizedCommandFrameIsRefusedTest() throws IOException {
+        client.write(ByteBuffer.allocate(Frames.HEADER_SIZE).putInt(Session.MAX_COMMAND_FRAME_SIZE + 1).flip());
+        while (session.read() == 0) {
+            Thread.onSpinWait();
+        }
+        assertThrows(ProtocolException.class, session::nextFrame);
+    }
+
+    @Test
+    void bufferGrowsWithPayloadAndShrinksAfterFrameTest() throws Exception {
+        int length = 100 * 1024;
+        client.write(ByteBuffer.allocate(Frames.HEADER_SIZE).putInt(length).flip());
+        while (session.read() == 0) {
+            Thread.onSpinWait();
+        }
+        assertNull(session.nextFrame());
+        // the header alone does not allocate the frame
+        assertTrue(session.inputCapacity() < length);
+
+        Thread writer = Thread.ofVirtual().start(() -> {
+            try {
+                client.write(new ByteBuffer[]{ByteBuffer.allocate(length), Frames.allocate(3).put(new byte[]{1, 2, 3}).flip()});
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertEquals(length, readFrame().remaining());
+        assertTrue(session.inputCapacity() >= length);
+
+        assertEquals(3, readFrame().remaining());
+        writer.join();
+        session.read();
+        assertEquals(1024, session.inputCapacity());
+    }
+}
@@ -0,0 +1,55 @@
+package server;
+
+import messages.RegistryEvent;
+import org.junit.jupiter.api.Test;
+import storage.User;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubscriberTest {
+    private static final User PESHO = new User("Pesho123", "127.0.0.1", 2713);
+    private static final User GOSHO = new User("Gosho321", "127.0.0.1", 2314);
+
+    @Test
+    void offerSchedulesOnlyIdleSubscriberTest() {
+        Subscriber subscriber = new Subscriber(null, null);
+        assertTrue(subscriber.offer(new RegistryEvent(RegistryEvent.Type.USER_JOINED, PESHO, Set.of())));
+        assertFalse(subscriber.offer(new RegistryEvent(RegistryEvent.Type.USER_JOINED, GOSHO, Set.of())));
+        assertNotNull(subscriber.drain());
+        assertNull(subscriber.drain());
+        assertTrue(subscriber.offer(new RegistryEvent(RegistryEvent.Type.USER_LEFT, GOSHO, Set.of())));
+    }
+
+    @Test
+    void drainCoalescesChangesOfSameUserTest() {
+        Subscriber subscriber = new Subscriber(null, null);
+        subscriber.offer(new RegistryEvent(RegistryEvent.Type.USER_JOINED, PESHO, Set.of()));
+        subscriber.offer(new RegistryEvent(RegistryEvent.Type.FILES_REGISTERED, PESHO, Set.of("/a.txt")));
+        subscriber.offer(new RegistryEvent(RegistryEvent.Type.FILES_REGISTERED, GOSHO, Set.of("/b.txt")));
+        subscriber.offer(new RegistryEvent(RegistryEvent.Type.FILES_UNREGISTERED, GOSHO, Set.of("/b.txt")));
+
+        assertEquals(String.join(System.lineSeparator(),
+                "joined " + PESHO, "registered " + PESHO + " /a.txt", "unregistered " + GOSHO + " /b.txt"), subscriber.drain());
+    }
+
+    @Test
+    void drainSkipsUserThatJoinedAndLeftTest() {
+        Subscriber subscriber = new Subscriber(null, null);
+        subscriber.offer(new RegistryEvent(RegistryEvent.Type.USER_JOINED, PESHO, Set.of()));
+        subscriber.offer(new RegistryEvent(RegistryEvent.Type.FILES_REGISTERED, PESHO, Set.of("/a.txt")));
+        subscriber.offer(new RegistryEvent(RegistryEvent.Type.USER_LEFT, PESHO, Set.of()));
+        assertNull(subscriber.drain());
+    }
+
+    @Test
+    void offerBeyondCapacityRequestsResyncTest() {
+        Subscriber subscriber = new Subscriber(null, null);
+        for (int i = 0; i <= Subscriber.MAX_PENDING_USERS; i++) {
+            subscriber.offer(new RegistryEvent(RegistryEvent.Type.USER_JOINED, new User("User" + i, "127.0.0.1", 2000), Set.of()));
+        }
+        assertEquals(Subscriber.RESYNC, subscriber.drain());
+        assertNull(subscriber.drain());
+    }
+}
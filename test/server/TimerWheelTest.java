@@ -0,0 +1,91 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerWheelTest {
+    private static final long TICK = 10;
+
+    @Test
+    void firesInDeadlineOrderTest() {
+        TimerWheel<String> wheel = new TimerWheel<>(8, TICK, 0);
+        wheel.schedule("late", 55);
+        wheel.schedule("early", 15);
+        wheel.schedule("next turn", 125);
+        List<String> fired = new ArrayList<>();
+
+        wheel.advance(19, fired::add);
+        assertEquals(List.of(), fired);
+        wheel.advance(20, fired::add);
+        assertEquals(List.of("early"), fired);
+        wheel.advance(90, fired::add);
+        assertEquals(List.of("early", "late"), fired);
+        wheel.advance(130, fired::add);
+        assertEquals(List.of("early", "late", "next turn"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelAndRescheduleTest() {
+        TimerWheel<String> wheel = new TimerWheel<>(8, TICK, 0);
+        TimerWheel.Timer<String> cancelled = wheel.schedule("cancelled", 30);
+        TimerWheel.Timer<String> moved = wheel.schedule("moved", 30);
+        wheel.schedule("kept", 30);
+        wheel.cancel(cancelled);
+        wheel.reschedule(moved, 70);
+        assertEquals(2, wheel.size());
+
+        List<String> fired = new ArrayList<>();
+        wheel.advance(30, fired::add);
+        assertEquals(List.of("kept"), fired);
+        wheel.advance(70, fired::add);
+        assertEquals(List.of("kept", "moved"), fired);
+    }
+
+    @Test
+    void consumerMayRescheduleTest() {
+        TimerWheel<String> wheel = new TimerWheel<>(8, TICK, 0);
+        List<TimerWheel.Timer<String>> timers = new ArrayList<>();
+        timers.add(wheel.schedule("renewed", 20));
+        List<String> fired = new ArrayList<>();
+        wheel.advance(20, value -> {
+            fired.add(value);
+            if (fired.size() == 1) {
+                wheel.reschedule(timers.get(0), 40);
+            }
+        });
+        assertEquals(1, wheel.size());
+        wheel.advance(40, fired::add);
+        assertEquals(List.of("renewed", "renewed"), fired);
+    }
+
+    @Test
+    void longPauseFiresEverythingDueTest() {
+        TimerWheel<Integer> wheel = new TimerWheel<>(4, TICK, 0);
+        for (int i = 1; i <= 100; i++) {
+            wheel.schedule(i, i * TICK);
+        }
+        List<Integer> fired = new ArrayList<>();
+        wheel.advance(500, fired::add);
+        assertEquals(50, fired.size());
+        assertEquals(50, wheel.size());
+        wheel.advance(1000, fired::add);
+        assertEquals(100, fired.size());
+    }
+
+    @Test
+    void pastDeadlineFiresOnNextAdvanceTest() {
+        TimerWheel<String> wheel = new TimerWheel<>(8, TICK, 0);
+        wheel.advance(100, value -> fail());
+        wheel.schedule("overdue", 40);
+        List<String> fired = new ArrayList<>();
+        wheel.advance(100, fired::add);
+        assertEquals(List.of(), fired);
+        wheel.advance(110, fired::add);
+        assertEquals(List.of("overdue"), fired);
+    }
+}
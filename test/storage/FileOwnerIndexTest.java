@@ -0,0 +1,60 @@
+package storage;
+
+import interfaces.UserInterface;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileOwnerIndexTest {
+    private static final UserInterface PESHO = new User("Pesho123", "127.0.0.1", 2713);
+    private static final UserInterface GOSHO = new User("Gosho321", "127.0.0.1", 2314);
+
+    private FileOwnerIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new FileOwnerIndex();
+        index.addValues("/home/pesho/hi.txt", Set.of(PESHO));
+        index.addValues("/home/gosho/hi.txt", Set.of(GOSHO));
+    }
+
+    @Test
+    void listValuesByPathTest() {
+        assertEquals(Set.of(PESHO), index.listValues("/home/pesho/hi.txt"));
+    }
+
+    @Test
+    void listValuesByFileNameTest() {
+        assertEquals(Set.of(PESHO, GOSHO), index.listValues("hi.txt"));
+    }
+
+    @Test
+    void listValuesOfUnknownFileTest() {
+        assertTrue(index.listValues("/home/nobody/hi.txt").isEmpty());
+    }
+
+    @Test
+    void removeValuesKeepsOtherPathsWithSameNameTest() {
+        index.addValues("/home/pesho/backup/hi.txt", Set.of(PESHO));
+        index.removeValues("/home/pesho/hi.txt", Set.of(PESHO));
+        assertTrue(index.listValues("/home/pesho/hi.txt").isEmpty());
+        assertEquals(Set.of(PESHO, GOSHO), index.listValues("hi.txt"));
+    }
+
+    @Test
+    void removeLastOwnerDropsPathTest() {
+        index.removeValues("/home/gosho/hi.txt", Set.of(GOSHO));
+        assertFalse(index.getKeys().contains("/home/gosho/hi.txt"));
+        assertEquals(Set.of(PESHO), index.listValues("hi.txt"));
+    }
+
+    @Test
+    void registeringSamePathTwiceCountsOnceTest() {
+        index.addValues("/home/pesho/hi.txt", Set.of(PESHO));
+        index.removeValues("/home/pesho/hi.txt", Set.of(PESHO));
+        assertEquals(Set.of(GOSHO), index.listValues("hi.txt"));
+    }
+}
@@ -5,10 +5,16 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -83,4 +89,56 @@ class FileStorageTest {
         assertEquals(1, storage.listValues(new User("Pesho123", "127.0.0.1", 2713)).size());
         assertFalse(storage.listValues(new User("Pesho123", "127.0.0.1", 2713)).contains("/home/hmmm/hello.txt"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void concurrentAddRemoveAndListTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                UserInterface user = new User("Peer" + thread, "127.0.0.1", 3000 + thread);
+                for (int i = 0; i < 1000; i++) {
+                    storage.addValues(user, Set.of("/file" + i));
+                    for (UserInterface listed : storage.getKeys()) {
+                        storage.listValues(listed).size();
+                    }
+                    if (i % 2 == 1) {
+                        storage.removeValues(user, Set.of("/file" + i));
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertEquals(9, storage.getKeys().size());
+        assertEquals(500, storage.listValues(new User("Peer3", "127.0.0.1", 3003)).size());
+    }
+
+    @Test
+    void concurrentRemoveAndAddOfSameUserTest() throws Exception {
+        UserInterface user = new User("Racer", "127.0.0.1", 4000);
+        PathTrie paths = new PathTrie();
+        FileStorage racing = new FileStorage(paths);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    racing.addValues(user, Set.of("/race/a.txt", "/race/b.txt"));
+                    racing.remove(user);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertTrue(racing.getKeys().isEmpty());
+        // every reference the racing updates took was given back
+        assertNull(paths.node("/race/a.txt"));
+        assertNull(paths.node("/race/b.txt"));
+    }
+}
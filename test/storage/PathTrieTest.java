@@ -0,0 +1,108 @@
+package storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathTrieTest {
+
+    @Test
+    void acquiredNodesKeepTheirPathsAcrossSplitsTest() {
+        PathTrie trie = new PathTrie();
+        PathTrie.Node music = trie.acquire("/home/pesho/music/song.mp3");
+        PathTrie.Node movies = trie.acquire("/home/pesho/movies/film.mkv");
+        PathTrie.Node home = trie.acquire("/home/pesho");
+
+        assertEquals("/home/pesho/music/song.mp3", trie.path(music));
+        assertEquals("/home/pesho/movies/film.mkv", trie.path(movies));
+        assertEquals("/home/pesho", trie.path(home));
+        assertSame(music, trie.node("/home/pesho/music/song.mp3"));
+        assertNull(trie.node("/home/pesho/m"));
+    }
+
+    @Test
+    void releaseMergesUnusedNodesTest() {
+        PathTrie trie = new PathTrie();
+        PathTrie.Node music = trie.acquire("/home/pesho/music/song.mp3");
+        PathTrie.Node movies = trie.acquire("/home/pesho/movies/film.mkv");
+        trie.release(movies);
+
+        assertNull(trie.node("/home/pesho/movies/film.mkv"));
+        assertEquals("/home/pesho/music/song.mp3", trie.path(music));
+        assertSame(music, trie.node("/home/pesho/music/song.mp3"));
+        trie.release(music);
+        assertNull(trie.node("/home/pesho/music/song.mp3"));
+        assertThrows(IllegalArgumentException.class, () -> trie.release(music));
+    }
+
+    @Test
+    void ownersTest() {
+        PathTrie trie = new PathTrie();
+        assertTrue(trie.addOwner("/a/b.txt", 3));
+        assertTrue(trie.addOwner("/a/b.txt", 1));
+        assertFalse(trie.addOwner("/a/b.txt", 3));
+        assertArrayEquals(new int[] {1, 3}, trie.owners("/a/b.txt"));
+        assertEquals(0, trie.owners("/a/b").length);
+
+        assertTrue(trie.removeOwner("/a/b.txt", 1));
+        assertFalse(trie.removeOwner("/a/b.txt", 1));
+        assertEquals(1, trie.ownedPaths());
+        trie.removeOwner("/a/b.txt", 3);
+        assertEquals(0, trie.ownedPaths());
+        assertEquals(0, trie.owners("/a/b.txt").length);
+    }
+
+    @Test
+    void forEachOwnedWalksOnlyMatchingSubtreeTest() {
+        PathTrie trie = new PathTrie();
+        trie.addOwner("/home/pesho/hi.txt", 1);
+        trie.addOwner("/home/pesho/music/song.mp3", 1);
+        trie.addOwner("/home/gosho/hi.txt", 2);
+        trie.addOwner("/home/petar/hi.txt", 3);
+
+        assertEquals(List.of("/home/pesho/hi.txt", "/home/pesho/music/song.mp3"), owned(trie, "/home/pes", 10));
+        assertEquals(List.of("/home/pesho/hi.txt", "/home/pesho/music/song.mp3", "/home/petar/hi.txt"), owned(trie, "/home/pe", 10));
+        assertEquals(List.of("/home/gosho/hi.txt"), owned(trie, "/home/gosho/hi.txt", 10));
+        assertEquals(2, owned(trie, "", 2).size());
+        assertTrue(owned(trie, "/home/pesho/hi.txt.bak", 10).isEmpty());
+        assertTrue(owned(trie, "/tmp", 10).isEmpty());
+    }
+
+    @Test
+    void concurrentUpdatesPruneEveryUnusedPathTest() throws Exception {
+        PathTrie trie = new PathTrie();
+        PathTrie.Node kept = trie.acquire("/shared/kept.txt");
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int owner = t;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    String path = "/shared/" + (i % 16) + "/file.txt";
+                    PathTrie.Node node = trie.acquire(path);
+                    trie.addOwner(path, owner);
+                    assertEquals(path, trie.path(node));
+                    trie.removeOwner(path, owner);
+                    trie.release(node);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, trie.ownedPaths());
+        for (int i = 0; i < 16; i++) {
+            assertNull(trie.node("/shared/" + i + "/file.txt"));
+        }
+        assertEquals("/shared/kept.txt", trie.path(kept));
+        assertSame(kept, trie.node("/shared/kept.txt"));
+    }
+
+    private static List<String> owned(PathTrie trie, String prefix, int limit) {
+        List<String> paths = new ArrayList<>();
+        trie.forEachOwned(prefix, limit, (path, owners) -> paths.add(path));
+        return paths;
+    }
+}
@@ -0,0 +1,183 @@
+package storage;
+
+import interfaces.UserInterface;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentFileStorageTest {
+    private static final User PESHO = new User("Pesho123", "127.0.0.1", 2713);
+    private static final User GOSHO = new User("Gosho321", "127.0.0.1", 2314);
+
+    @Test
+    void recoverFromLogTest() throws IOException {
+        Path directory = Files.createTempDirectory("storage");
+        try {
+            // the first storage is never closed, as if the tracker crashed
+            PersistentFileStorage storage = new PersistentFileStorage(directory);
+            storage.addValues(PESHO, Set.of("/a.txt", "/b.txt"));
+            storage.addValues(GOSHO, Set.of("/c.txt"));
+            storage.removeValues(PESHO, Set.of("/a.txt"));
+            storage.remove(GOSHO);
+            awaitDurable(storage);
+
+            try (PersistentFileStorage recovered = new PersistentFileStorage(directory)) {
+                assertEquals(Set.of(PESHO), recovered.getKeys());
+                assertEquals(Set.of("/b.txt"), recovered.listValues(PESHO));
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void recoverFromSnapshotAndLogTailTest() throws IOException {
+        Path directory = Files.createTempDirectory("storage");
+        try {
+            PersistentFileStorage storage = new PersistentFileStorage(directory, 1000);
+            storage.addValues(PESHO, Set.of("/a.txt"));
+            storage.snapshot();
+            storage.addValues(PESHO, Set.of("/b.txt"));
+            storage.addValues(GOSHO, Set.of("/c.txt"));
+
+            try (PersistentFileStorage recovered = new PersistentFileStorage(directory)) {
+                assertEquals(Set.of("/a.txt", "/b.txt"), recovered.listValues(PESHO));
+                assertEquals(Set.of("/c.txt"), recovered.listValues(GOSHO));
+            }
+            // closing took a snapshot, so nothing is left to replay
+            assertEquals(1, WriteAheadLog.segments(directory).size());
+            try (PersistentFileStorage reopened = new PersistentFileStorage(directory)) {
+                assertEquals(Set.of(GOSHO, PESHO), reopened.getKeys());
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void recoverIgnoresTornRecordTest() throws IOException {
+        Path directory = Files.createTempDirectory("storage");
+        try {
+            PersistentFileStorage storage = new PersistentFileStorage(directory);
+            storage.addValues(PESHO, Set.of("/a.txt"));
+            awaitDurable(storage);
+            List<Integer> segments = WriteAheadLog.segments(directory);
+            Path last = WriteAheadLog.segmentPath(directory, segments.get(segments.size() - 1));
+            Files.write(last, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+            try (PersistentFileStorage recovered = new PersistentFileStorage(directory)) {
+                assertEquals(Set.of("/a.txt"), recovered.listValues(PESHO));
+                recovered.addValues(GOSHO, Set.of("/c.txt"));
+            }
+            try (PersistentFileStorage reopened = new PersistentFileStorage(directory)) {
+                assertEquals(Set.of(GOSHO, PESHO), reopened.getKeys());
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void recoveryTimeOfMillionEntriesTest() throws Exception {
+        int usersCount = 10_000;
+        int filesPerUser = 100;
+        Path directory = Files.createTempDirectory("storage");
+        try {
+            PersistentFileStorage storage = new PersistentFileStorage(directory);
+            // concurrent writers share the fsyncs of the group commit
+            ExecutorService writers = Executors.newFixedThreadPool(16);
+            List<Future<?>> writes = new ArrayList<>();
+            for (int i = 0; i < usersCount; i++) {
+                UserInterface user = new User("user" + i, "10.0.0." + (i % 250), 5000 + i);
+                Set<String> files = new HashSet<>();
+                for (int j = 0; j < filesPerUser; j++) {
+                    files.add("/shared/user" + i + "/file" + j + ".bin");
+                }
+                writes.add(writers.submit(() -> {
+                    storage.addValues(user, files);
+                    awaitDurable(storage);
+                    return null;
+                }));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+            writers.shutdown();
+
+            long start = System.nanoTime();
+            PersistentFileStorage fromLog = new PersistentFileStorage(directory);
+            long fromLogMillis = (System.nanoTime() - start) / 1_000_000;
+            assertEquals(usersCount, fromLog.getKeys().size());
+            fromLog.close();
+
+            start = System.nanoTime();
+            try (PersistentFileStorage fromSnapshot = new PersistentFileStorage(directory)) {
+                long fromSnapshotMillis = (System.nanoTime() - start) / 1_000_000;
+                assertEquals(usersCount, fromSnapshot.getKeys().size());
+                assertEquals(filesPerUser, fromSnapshot.listValues(new User("user42", "10.0.0.42", 5042)).size());
+                System.out.printf("Recovered %d file entries: %d ms from the log, %d ms from the snapshot%n",
+                        usersCount * filesPerUser, fromLogMillis, fromSnapshotMillis);
+                assertTrue(fromSnapshotMillis < 30_000, "Recovery took " + fromSnapshotMillis + " ms");
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void whenDurableCoversChangesOfCallingThreadTest() throws Exception {
+        Path directory = Files.createTempDirectory("storage");
+        try (PersistentFileStorage storage = new PersistentFileStorage(directory)) {
+            assertNull(storage.whenDurable());
+            storage.addValues(PESHO, Set.of("/a.txt"));
+            storage.addValues(GOSHO, Set.of("/c.txt"));
+            CompletableFuture<Void> durable = storage.whenDurable();
+            if (durable != null) {
+                durable.get(5, TimeUnit.SECONDS);
+            }
+            // asked once per change
+            assertNull(storage.whenDurable());
+
+            ExecutorService other = Executors.newSingleThreadExecutor();
+            try {
+                assertNull(other.submit(storage::whenDurable).get());
+            } finally {
+                other.shutdown();
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    // The storage is left unclosed, as if the tracker crashed, once its changes are on disk
+    private static void awaitDurable(PersistentFileStorage storage) {
+        CompletableFuture<Void> durable = storage.whenDurable();
+        if (durable != null) {
+            durable.join();
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
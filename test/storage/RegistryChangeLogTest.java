@@ -0,0 +1,56 @@
+package storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegistryChangeLogTest {
+    private static final User PESHO = new User("Pesho123", "127.0.0.1", 2713);
+    private static final User GOSHO = new User("Gosho321", "127.0.0.1", 2314);
+
+    @Test
+    void changesSinceVersionTest() {
+        RegistryChangeLog log = new RegistryChangeLog(4);
+        log.append(RegistryChangeLog.ChangeType.JOINED, PESHO);
+        log.append(RegistryChangeLog.ChangeType.JOINED, GOSHO);
+        log.append(RegistryChangeLog.ChangeType.LEFT, PESHO);
+
+        assertEquals(3, log.version());
+        assertEquals(List.of(new RegistryChangeLog.Change(2, RegistryChangeLog.ChangeType.JOINED, GOSHO),
+                new RegistryChangeLog.Change(3, RegistryChangeLog.ChangeType.LEFT, PESHO)), log.changesSince(1));
+        assertTrue(log.changesSince(3).isEmpty());
+    }
+
+    @Test
+    void changesSinceTrimmedVersionTest() {
+        RegistryChangeLog log = new RegistryChangeLog(2);
+        for (int i = 0; i < 5; i++) {
+            log.append(RegistryChangeLog.ChangeType.JOINED, PESHO);
+        }
+        assertNull(log.changesSince(2));
+        assertEquals(2, log.changesSince(3).size());
+    }
+
+    @Test
+    void changesSinceUnknownVersionTest() {
+        RegistryChangeLog log = new RegistryChangeLog();
+        log.append(RegistryChangeLog.ChangeType.JOINED, PESHO);
+        assertNull(log.changesSince(5));
+        assertNull(log.changesSince(-1));
+        assertEquals(1, log.changesSince(0).size());
+    }
+
+    @Test
+    void versionsBeforeInitialVersionNeedSnapshotTest() {
+        RegistryChangeLog log = new RegistryChangeLog(4, 100);
+        log.append(RegistryChangeLog.ChangeType.JOINED, PESHO);
+        assertEquals(101, log.version());
+        // a client of the run before the restart
+        assertNull(log.changesSince(99));
+        assertNull(log.changesSince(0));
+        assertEquals(List.of(new RegistryChangeLog.Change(101, RegistryChangeLog.ChangeType.JOINED, PESHO)),
+                log.changesSince(100));
+    }
+}
@@ -0,0 +1,91 @@
+package storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserTableTest {
+    private static final User PESHO = new User("Pesho123", "127.0.0.1", 2713);
+    private static final User GOSHO = new User("Gosho321", "127.0.0.1", 2314);
+
+    @Test
+    void acquireGivesDenseIdsTest() {
+        UserTable table = new UserTable();
+        assertEquals(0, table.acquire(PESHO));
+        assertEquals(1, table.acquire(GOSHO));
+        assertEquals(0, table.acquire(new User("Pesho123", "127.0.0.1", 2713)));
+        assertSame(PESHO, table.user(0));
+        assertEquals(1, table.idOf(GOSHO));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    void releaseLastReferenceFreesIdTest() {
+        UserTable table = new UserTable();
+        int id = table.acquire(PESHO);
+        table.acquire(PESHO);
+        table.release(id);
+        assertSame(PESHO, table.user(id));
+        table.release(id);
+        assertNull(table.user(id));
+        assertEquals(UserTable.NO_ID, table.idOf(PESHO));
+        assertEquals(0, table.size());
+        assertThrows(IllegalArgumentException.class, () -> table.release(id));
+    }
+
+    @Test
+    void releasedIdsAreReusedInReleaseOrderTest() {
+        UserTable table = new UserTable();
+        int pesho = table.acquire(PESHO);
+        int gosho = table.acquire(GOSHO);
+        table.release(gosho);
+        table.release(pesho);
+        assertEquals(gosho, table.acquire(new User("user1", "127.0.0.1", 2000)));
+        assertEquals(pesho, table.acquire(new User("user2", "127.0.0.1", 2000)));
+        assertEquals(2, table.acquire(PESHO));
+        assertSame(PESHO, table.user(2));
+    }
+
+    @Test
+    void churnKeepsTableAtPeakSizeTest() throws InterruptedException {
+        UserTable table = new UserTable();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    User user = new User("churn" + thread + "-" + i, "127.0.0.1", 2000);
+                    int id = table.acquire(user);
+                    assertEquals(id, table.acquire(user));
+                    assertSame(user, table.user(id));
+                    table.release(id);
+                    table.release(id);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, table.size());
+        // at most one id per thread was ever held at once
+        assertEquals(UserTable.NO_ID, table.idOf(PESHO));
+        assertTrue(table.acquire(PESHO) < 4);
+    }
+
+    @Test
+    void acquireBeyondInitialCapacityTest() {
+        UserTable table = new UserTable();
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, table.acquire(new User("user" + i, "127.0.0.1", 2000)));
+        }
+        assertEquals(new User("user4321", "127.0.0.1", 2000), table.user(4321));
+    }
+
+    @Test
+    void hashCodeSeparatesFieldsTest() {
+        assertNotEquals(new User("ab", "c", 1).hashCode(), new User("c", "ab", 1).hashCode());
+    }
+}
@@ -0,0 +1,21 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogTest {
+
+    @Test
+    void parseLevelIgnoresCaseTest() {
+        assertEquals(Log.Level.DEBUG, Log.parseLevel("debug"));
+        assertEquals(Log.Level.OFF, Log.parseLevel(" Off "));
+    }
+
+    @Test
+    void parseLevelFallsBackToInfoTest() {
+        assertEquals(Log.Level.INFO, Log.parseLevel(null));
+        assertEquals(Log.Level.INFO, Log.parseLevel("verbose"));
+        assertEquals(Log.Level.INFO, Log.parseLevel(""));
+    }
+}